@@ -0,0 +1,24 @@
+target triple = "x86_64-pc-linux-gnu"
+
+@.str_1 = private constant [4 x i8] c"%d\0A\00"	; "%d\0A\00"
+declare i32 @printf(i8*, ...)
+define i32 @_nvylang_fib_3fib_3(i32 %n) {
+entry:
+	%0 = icmp slt i32 %n, 2
+	br i1 %0, label %iftrue0, label %iffalse0
+iftrue0:
+	ret i32 %n
+iffalse0:
+	%1 = sub i32 %n, 1
+	%2 = call i32 @_nvylang_fib_3fib_3(i32 %1)
+	%3 = sub i32 %n, 2
+	%4 = call i32 @_nvylang_fib_3fib_3(i32 %3)
+	%5 = add i32 %2, %4
+	ret i32 %5
+}
+define i32 @main() {
+	%1 = call i32 @_nvylang_fib_3fib_3(i32 32)
+	%.str_1 = getelementptr [4 x i8], [4 x i8]* @.str_1, i32 0, i32 0	;"%d\0A\00"
+	%2 = call i32 (i8*, ...) @printf(i8* %.str_1, i32 %1)
+	ret i32 0
+}
@@ -0,0 +1,73 @@
+target triple = "x86_64-pc-linux-gnu"
+
+@.str_1 = private constant [4 x i8] c"%d\0A\00"	; "%d\0A\00"
+declare i32 @printf(i8*, ...)
+define i32 @main() {
+entry:
+	%a = alloca [16384 x i32]
+	%b = alloca [16384 x i32]
+	%c = alloca [16384 x i32]
+	br label %loop_condition0
+loop_condition0:
+	%i.loop_condition0 = phi i32 [ 0, %entry ], [ %4, %loop_body0 ]
+	%0 = icmp slt i32 %i.loop_condition0, 16384
+	br i1 %0, label %loop_body0, label %loop_exit0
+loop_body0:
+	%1 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %i.loop_condition0
+	store i32 %i.loop_condition0, i32* %1
+	%2 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %i.loop_condition0
+	store i32 2, i32* %2
+	%3 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 %i.loop_condition0
+	store i32 0, i32* %3
+	%4 = add i32 %i.loop_condition0, 1
+	br label %loop_condition0
+loop_exit0:
+	br label %loop_condition1
+loop_condition1:
+	%row.loop_condition1 = phi i32 [ 0, %loop_exit0 ], [ %23, %loop_exit2 ]
+	%5 = icmp slt i32 %row.loop_condition1, 128
+	br i1 %5, label %loop_body1, label %loop_exit1
+loop_body1:
+	br label %loop_condition2
+loop_condition2:
+	%col.loop_condition2 = phi i32 [ 0, %loop_body1 ], [ %22, %loop_exit3 ]
+	%6 = icmp slt i32 %col.loop_condition2, 128
+	br i1 %6, label %loop_body2, label %loop_exit2
+loop_body2:
+	br label %loop_condition3
+loop_condition3:
+	%sum.loop_condition3 = phi i32 [ 0, %loop_body2 ], [ %17, %loop_body3 ]
+	%k.loop_condition3 = phi i32 [ 0, %loop_body2 ], [ %18, %loop_body3 ]
+	%7 = icmp slt i32 %k.loop_condition3, 128
+	br i1 %7, label %loop_body3, label %loop_exit3
+loop_body3:
+	%8 = mul i32 %row.loop_condition1, 128
+	%9 = add i32 %8, %k.loop_condition3
+	%10 = mul i32 %k.loop_condition3, 128
+	%11 = add i32 %10, %col.loop_condition2
+	%12 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %9
+	%13 = load i32, i32* %12
+	%14 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %11
+	%15 = load i32, i32* %14
+	%16 = mul i32 %13, %15
+	%17 = add i32 %sum.loop_condition3, %16
+	%18 = add i32 %k.loop_condition3, 1
+	br label %loop_condition3
+loop_exit3:
+	%19 = mul i32 %row.loop_condition1, 128
+	%20 = add i32 %19, %col.loop_condition2
+	%21 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 %20
+	store i32 %sum.loop_condition3, i32* %21
+	%22 = add i32 %col.loop_condition2, 1
+	br label %loop_condition2
+loop_exit2:
+	%23 = add i32 %row.loop_condition1, 1
+	br label %loop_condition1
+loop_exit1:
+	%24 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 16383
+	%25 = load i32, i32* %24
+	%.str_1 = getelementptr [4 x i8], [4 x i8]* @.str_1, i32 0, i32 0	;"%d\0A\00"
+	%promote_reg47_to_i64 = sext i32 %25 to i64
+	%26 = call i32 (i8*, ...) @printf(i8* %.str_1, i64 %promote_reg47_to_i64)
+	ret i32 0
+}
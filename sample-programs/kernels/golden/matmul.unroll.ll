@@ -0,0 +1,136 @@
+target triple = "x86_64-pc-linux-gnu"
+
+@.str_1 = private constant [4 x i8] c"%d\0A\00"	; "%d\0A\00"
+declare i32 @printf(i8*, ...)
+define i32 @main() {
+entry:
+	%a = alloca [16384 x i32]
+	%b = alloca [16384 x i32]
+	%c = alloca [16384 x i32]
+	br label %loop_condition0
+loop_condition0:
+	%i.loop_condition0 = phi i32 [ 0, %entry ], [ %16, %loop_body0.u.2 ]
+	%0 = icmp slt i32 %i.loop_condition0, 16384
+	br i1 %0, label %loop_body0, label %loop_exit0
+loop_body0:
+	%1 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %i.loop_condition0
+	store i32 %i.loop_condition0, i32* %1
+	%2 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %i.loop_condition0
+	store i32 2, i32* %2
+	%3 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 %i.loop_condition0
+	store i32 0, i32* %3
+	%4 = add i32 %i.loop_condition0, 1
+	br label %loop_body0.u
+loop_body0.u:
+	%5 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %4
+	store i32 %4, i32* %5
+	%6 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %4
+	store i32 2, i32* %6
+	%7 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 %4
+	store i32 0, i32* %7
+	%8 = add i32 %4, 1
+	br label %loop_body0.u.1
+loop_body0.u.1:
+	%9 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %8
+	store i32 %8, i32* %9
+	%10 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %8
+	store i32 2, i32* %10
+	%11 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 %8
+	store i32 0, i32* %11
+	%12 = add i32 %8, 1
+	br label %loop_body0.u.2
+loop_body0.u.2:
+	%13 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %12
+	store i32 %12, i32* %13
+	%14 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %12
+	store i32 2, i32* %14
+	%15 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 %12
+	store i32 0, i32* %15
+	%16 = add i32 %12, 1
+	br label %loop_condition0
+loop_exit0:
+	br label %loop_condition1
+loop_condition1:
+	%row.loop_condition1 = phi i32 [ 0, %loop_exit0 ], [ %65, %loop_exit2 ]
+	%17 = icmp slt i32 %row.loop_condition1, 128
+	br i1 %17, label %loop_body1, label %loop_exit1
+loop_body1:
+	%18 = mul i32 %row.loop_condition1, 128
+	%19 = mul i32 %row.loop_condition1, 128
+	br label %loop_condition2
+loop_condition2:
+	%col.loop_condition2 = phi i32 [ 0, %loop_body1 ], [ %64, %loop_exit3 ]
+	%20 = icmp slt i32 %col.loop_condition2, 128
+	br i1 %20, label %loop_body2, label %loop_exit2
+loop_body2:
+	br label %loop_condition3
+loop_condition3:
+	%sum.loop_condition3 = phi i32 [ 0, %loop_body2 ], [ %60, %loop_body3.u.2 ]
+	%k.loop_condition3 = phi i32 [ 0, %loop_body2 ], [ %61, %loop_body3.u.2 ]
+	%21 = icmp slt i32 %k.loop_condition3, 128
+	br i1 %21, label %loop_body3, label %loop_exit3
+loop_body3:
+	%22 = add i32 %18, %k.loop_condition3
+	%23 = mul i32 %k.loop_condition3, 128
+	%24 = add i32 %23, %col.loop_condition2
+	%25 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %22
+	%26 = load i32, i32* %25
+	%27 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %24
+	%28 = load i32, i32* %27
+	%29 = mul i32 %26, %28
+	%30 = add i32 %sum.loop_condition3, %29
+	%31 = add i32 %k.loop_condition3, 1
+	br label %loop_body3.u
+loop_body3.u:
+	%32 = add i32 %18, %31
+	%33 = mul i32 %31, 128
+	%34 = add i32 %33, %col.loop_condition2
+	%35 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %32
+	%36 = load i32, i32* %35
+	%37 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %34
+	%38 = load i32, i32* %37
+	%39 = mul i32 %36, %38
+	%40 = add i32 %30, %39
+	%41 = add i32 %31, 1
+	br label %loop_body3.u.1
+loop_body3.u.1:
+	%42 = add i32 %18, %41
+	%43 = mul i32 %41, 128
+	%44 = add i32 %43, %col.loop_condition2
+	%45 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %42
+	%46 = load i32, i32* %45
+	%47 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %44
+	%48 = load i32, i32* %47
+	%49 = mul i32 %46, %48
+	%50 = add i32 %40, %49
+	%51 = add i32 %41, 1
+	br label %loop_body3.u.2
+loop_body3.u.2:
+	%52 = add i32 %18, %51
+	%53 = mul i32 %51, 128
+	%54 = add i32 %53, %col.loop_condition2
+	%55 = getelementptr [16384 x i32], [16384 x i32]* %a, i32 0, i32 %52
+	%56 = load i32, i32* %55
+	%57 = getelementptr [16384 x i32], [16384 x i32]* %b, i32 0, i32 %54
+	%58 = load i32, i32* %57
+	%59 = mul i32 %56, %58
+	%60 = add i32 %50, %59
+	%61 = add i32 %51, 1
+	br label %loop_condition3
+loop_exit3:
+	%62 = add i32 %19, %col.loop_condition2
+	%63 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 %62
+	store i32 %sum.loop_condition3, i32* %63
+	%64 = add i32 %col.loop_condition2, 1
+	br label %loop_condition2
+loop_exit2:
+	%65 = add i32 %row.loop_condition1, 1
+	br label %loop_condition1
+loop_exit1:
+	%66 = getelementptr [16384 x i32], [16384 x i32]* %c, i32 0, i32 16383
+	%67 = load i32, i32* %66
+	%.str_1 = getelementptr [4 x i8], [4 x i8]* @.str_1, i32 0, i32 0	;"%d\0A\00"
+	%promote_reg47_to_i64 = sext i32 %67 to i64
+	%68 = call i32 (i8*, ...) @printf(i8* %.str_1, i64 %promote_reg47_to_i64)
+	ret i32 0
+}
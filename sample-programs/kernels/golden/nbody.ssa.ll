@@ -0,0 +1,61 @@
+target triple = "x86_64-pc-linux-gnu"
+
+@.str_1 = private constant [4 x i8] c"%f\0A\00"	; "%f\0A\00"
+@global_inttof32_7 = private global i32 1148846080	; 1000.0
+@global_inttof32_6 = private global i32 1082130432	; 4.0
+@global_inttof32_5 = private global i32 1065353216	; 1.0
+@global_inttof32_4 = private global i32 981668463	; 0.001
+@global_inttof32_3 = private global i32 0	; 0.0
+@global_inttof32_2 = private global i32 0	; 0.0
+@global_inttof32_1 = private global i32 1069547520	; 1.5
+@global_inttof32_0 = private global i32 0	; 0.0
+declare i32 @printf(i8*, ...)
+define i32 @main() {
+entry:
+	%0 = load i32, i32* @global_inttof32_0
+	%inttof32_0 = bitcast i32 %0 to float
+	%1 = load i32, i32* @global_inttof32_1
+	%inttof32_1 = bitcast i32 %1 to float
+	%2 = load i32, i32* @global_inttof32_2
+	%inttof32_2 = bitcast i32 %2 to float
+	%3 = load i32, i32* @global_inttof32_3
+	%inttof32_3 = bitcast i32 %3 to float
+	%4 = load i32, i32* @global_inttof32_4
+	%inttof32_4 = bitcast i32 %4 to float
+	br label %loop_condition0
+loop_condition0:
+	%x1.loop_condition0 = phi float [ %inttof32_0, %entry ], [ %16, %loop_body0 ]
+	%x2.loop_condition0 = phi float [ %inttof32_1, %entry ], [ %18, %loop_body0 ]
+	%v1.loop_condition0 = phi float [ %inttof32_2, %entry ], [ %12, %loop_body0 ]
+	%v2.loop_condition0 = phi float [ %inttof32_3, %entry ], [ %14, %loop_body0 ]
+	%step.loop_condition0 = phi i32 [ 0, %entry ], [ %19, %loop_body0 ]
+	%5 = icmp slt i32 %step.loop_condition0, 10000000
+	br i1 %5, label %loop_body0, label %loop_exit0
+loop_body0:
+	%6 = fsub float %x2.loop_condition0, %x1.loop_condition0
+	%7 = load i32, i32* @global_inttof32_5
+	%inttof32_5 = bitcast i32 %7 to float
+	%8 = fsub float %6, %inttof32_5
+	%9 = load i32, i32* @global_inttof32_6
+	%inttof32_6 = bitcast i32 %9 to float
+	%10 = fmul float %8, %inttof32_6
+	%11 = fmul float %10, %inttof32_4
+	%12 = fadd float %v1.loop_condition0, %11
+	%13 = fmul float %10, %inttof32_4
+	%14 = fsub float %v2.loop_condition0, %13
+	%15 = fmul float %12, %inttof32_4
+	%16 = fadd float %x1.loop_condition0, %15
+	%17 = fmul float %14, %inttof32_4
+	%18 = fadd float %x2.loop_condition0, %17
+	%19 = add i32 %step.loop_condition0, 1
+	br label %loop_condition0
+loop_exit0:
+	%20 = fsub float %x2.loop_condition0, %x1.loop_condition0
+	%21 = load i32, i32* @global_inttof32_7
+	%inttof32_7 = bitcast i32 %21 to float
+	%22 = fmul float %20, %inttof32_7
+	%.str_1 = getelementptr [4 x i8], [4 x i8]* @.str_1, i32 0, i32 0	;"%f\0A\00"
+	%promote_reg31_to_double = fpext float %22 to double
+	%23 = call i32 (i8*, ...) @printf(i8* %.str_1, double %promote_reg31_to_double)
+	ret i32 0
+}
@@ -0,0 +1,54 @@
+target triple = "x86_64-pc-linux-gnu"
+
+@.str_1 = private constant [4 x i8] c"%d\0A\00"	; "%d\0A\00"
+declare i32 @printf(i8*, ...)
+define i32 @main() {
+entry:
+	%flags = alloca [1000000 x i32]
+	br label %loop_condition0
+loop_condition0:
+	%i.loop_condition0 = phi i32 [ 0, %entry ], [ %2, %loop_body0 ]
+	%0 = icmp slt i32 %i.loop_condition0, 1000000
+	br i1 %0, label %loop_body0, label %loop_exit0
+loop_body0:
+	%1 = getelementptr [1000000 x i32], [1000000 x i32]* %flags, i32 0, i32 %i.loop_condition0
+	store i32 1, i32* %1
+	%2 = add i32 %i.loop_condition0, 1
+	br label %loop_condition0
+loop_exit0:
+	br label %loop_condition1
+loop_condition1:
+	%count.loop_condition1 = phi i32 [ 0, %loop_exit0 ], [ %count.iffalse0, %iffalse0 ]
+	%n.loop_condition1 = phi i32 [ 2, %loop_exit0 ], [ %12, %iffalse0 ]
+	%3 = icmp slt i32 %n.loop_condition1, 1000000
+	br i1 %3, label %loop_body1, label %loop_exit1
+loop_body1:
+	%4 = getelementptr [1000000 x i32], [1000000 x i32]* %flags, i32 0, i32 %n.loop_condition1
+	%5 = load i32, i32* %4
+	%6 = icmp eq i32 %5, 1
+	br i1 %6, label %iftrue0, label %iffalse0
+iftrue0:
+	%7 = add i32 %count.loop_condition1, 1
+	%8 = add i32 %n.loop_condition1, %n.loop_condition1
+	br label %loop_condition2
+loop_condition2:
+	%j.loop_condition2 = phi i32 [ %8, %iftrue0 ], [ %11, %loop_body2 ]
+	%9 = icmp slt i32 %j.loop_condition2, 1000000
+	br i1 %9, label %loop_body2, label %loop_exit2
+loop_body2:
+	%10 = getelementptr [1000000 x i32], [1000000 x i32]* %flags, i32 0, i32 %j.loop_condition2
+	store i32 0, i32* %10
+	%11 = add i32 %j.loop_condition2, %n.loop_condition1
+	br label %loop_condition2
+loop_exit2:
+	br label %iffalse0
+iffalse0:
+	%count.iffalse0 = phi i32 [ %count.loop_condition1, %loop_body1 ], [ %7, %loop_exit2 ]
+	%12 = add i32 %n.loop_condition1, 1
+	br label %loop_condition1
+loop_exit1:
+	%.str_1 = getelementptr [4 x i8], [4 x i8]* @.str_1, i32 0, i32 0	;"%d\0A\00"
+	%promote_reg24_to_i64 = sext i32 %count.loop_condition1 to i64
+	%13 = call i32 (i8*, ...) @printf(i8* %.str_1, i64 %promote_reg24_to_i64)
+	ret i32 0
+}
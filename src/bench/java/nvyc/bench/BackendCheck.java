@@ -0,0 +1,168 @@
+package nvyc.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BackendCheck {
+
+    /*
+
+        Runs every program in sample-programs and its kernels on each backend and compares what it printed and
+        its exit code with <directory>/expected/<program>.out, the output followed by an "exit <code>" line.
+            interp      --run
+            interp -O2  --run -O2, the program after the tree passes
+            jvm         --run=jvm
+            llvm -O0    the .ll nvyc writes at -O0, built with the local clang and run
+            llvm -O2    the same at -O2, so the tree and mid-level IR passes are covered
+        Every backend has to give the expected output, so they all agree with each other too.
+        Without clang only the interpreter and the JVM backend are checked.
+        Any difference fails the run (exit 1). --update writes the expected files from the interpreter.
+
+        Usage: BackendCheck [--update], run from the repository root
+
+     */
+
+    private static final Map<String, List<String>> BACKENDS = new LinkedHashMap<>();
+    private static final String[] LLVM_LEVELS = {"-O0", "-O2"};
+    private static final long TIMEOUT_SECONDS = 120;
+    private static final String LOG = "run.log";
+
+    static {
+        BACKENDS.put("interp", List.of("--run"));
+        BACKENDS.put("interp -O2", List.of("--run", "-O2"));
+        BACKENDS.put("jvm", List.of("--run=jvm"));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean update = args.length > 0 && args[0].equals("--update");
+        boolean clang = available("clang", "--version");
+        if(!clang) System.err.println("clang not found on PATH, only checking the interpreter and the JVM backend");
+
+        Path samples = Path.of("sample-programs").toAbsolutePath();
+        Path work = Files.createTempDirectory("nvyc-backends");
+        Path log = work.resolve(LOG);
+        List<String> programs = new ArrayList<>();
+        programs.addAll(programs(samples, ""));
+        programs.addAll(programs(samples, "kernels/"));
+
+        // nvyc runs from sample-programs so its imports resolve, the classpath has to survive the change of directory
+        String classpath = Stream.of(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Path.of(entry).toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+
+        List<String> failures = new ArrayList<>();
+        for(String program : programs) {
+            Path expected = expected(samples, program);
+            if(update) {
+                String output = run(samples, log, "java", "-cp", classpath, "nvyc.internal.Test", program, work.resolve("out").toString(), "--run");
+                if(output == null) {
+                    failures.add(program + " interp: did not finish");
+                    continue;
+                }
+                Files.createDirectories(expected.getParent());
+                Files.writeString(expected, output);
+                continue;
+            }
+            if(!Files.exists(expected)) {
+                failures.add(program + ": no expected output at " + expected + ", run with --update");
+                continue;
+            }
+
+            String wanted = Files.readString(expected);
+            for(Map.Entry<String, List<String>> backend : BACKENDS.entrySet()) {
+                List<String> command = new ArrayList<>(List.of("java", "-cp", classpath, "nvyc.internal.Test", program, work.resolve("out").toString()));
+                command.addAll(backend.getValue());
+                String output = run(samples, log, command.toArray(new String[0]));
+                String problem = compare(wanted, output);
+                if(problem != null) failures.add(program + " " + backend.getKey() + ": " + problem);
+            }
+
+            for(String level : clang ? LLVM_LEVELS : new String[0]) {
+                Path ll = work.resolve("out_nvy_tmp.ll");
+                Path binary = work.resolve("out" + level);
+                Files.deleteIfExists(ll);
+                String problem;
+                if(!succeeded(run(samples, log, "java", "-cp", classpath, "nvyc.internal.Test", program, work.resolve("out").toString(), level))) {
+                    problem = "nvyc failed";
+                } else if(!succeeded(run(work, log, "clang", "-Wno-override-module", ll.toString(), "-o", binary.toString()))) {
+                    problem = "clang rejected the IR";
+                } else {
+                    problem = compare(wanted, run(work, log, binary.toString()));
+                }
+                if(problem != null) failures.add(program + " llvm " + level + ": " + problem);
+            }
+        }
+
+        List<String> backends = new ArrayList<>(BACKENDS.keySet());
+        if(clang) for(String level : LLVM_LEVELS) backends.add("llvm " + level);
+        System.out.printf("%d programs %s on %s%n", programs.size(), update ? "recorded" : "checked", update ? "interp" : String.join(", ", backends));
+        for(String failure : failures) {
+            System.out.println("FAIL " + failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    // Null if the output is the expected one, otherwise the first line where it isn't
+    private static String compare(String wanted, String output) {
+        if(output == null) return "did not finish";
+        if(output.equals(wanted)) return null;
+
+        String[] before = wanted.split("\n", -1);
+        String[] after = output.split("\n", -1);
+        for(int i = 0; i < Math.min(before.length, after.length); i++) {
+            if(!before[i].equals(after[i])) return "line " + (i + 1) + " is '" + after[i] + "', expected '" + before[i] + "'";
+        }
+        return after.length + " lines, expected " + before.length;
+    }
+
+    private static Path expected(Path samples, String program) {
+        Path path = samples.resolve(program);
+        String name = path.getFileName().toString();
+        return path.resolveSibling("expected").resolve(name.substring(0, name.length() - 4) + ".out");
+    }
+
+    private static List<String> programs(Path samples, String directory) throws IOException {
+        try(Stream<Path> files = Files.list(samples.resolve(directory.isEmpty() ? "." : directory))) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(".nvy"))
+                    .sorted()
+                    .map(name -> directory + name)
+                    .toList();
+        }
+    }
+
+    // What the command printed followed by its exit code, null if it didn't finish in time
+    private static String run(Path directory, Path log, String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        if(!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            return null;
+        }
+        return Files.readString(log) + "exit " + process.exitValue() + "\n";
+    }
+
+    private static boolean succeeded(String output) {
+        return output != null && output.endsWith("exit 0\n");
+    }
+
+    private static boolean available(String... command) {
+        try {
+            return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package nvyc.bench;
+
+import nvyc.data.FunctionData;
+import nvyc.data.NASTNode;
+import nvyc.generation.IncrementalFrontend;
+import nvyc.utils.NvyError;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+public class IncrementalBenchmark {
+
+    /*
+
+        Re-analysis time of the incremental front end after a keystroke-sized edit, on a generated program.
+        Each edit appends " + 1" to the first statement of one function, the next one takes it out again.
+
+        Every edit is checked as well, any failure fails the run (exit 1):
+            reparsed        only the chunk of the edited function is parsed again
+            unchanged       every other declaration keeps its NASTNode, the same object as before the edit
+            parameters      the edited function still has its 2 parameters registered in FunctionData
+        The median edit has to stay under TARGET_MS, and NvyError.WATCHING must be left as it was found.
+
+        Usage: IncrementalBenchmark [lines] [edits], default 10000 lines and 2000 edits
+
+     */
+
+    private static final int WARMUP_EDITS = 500;
+    private static final double TARGET_MS = 1.0;
+    private static final long SEED = 42;
+    private static final String EDIT = " + 1";
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        ProgramGenerator.Shape shape = ProgramGenerator.Shape.standard(100);
+        double linesPerFunction = new ProgramGenerator(shape, SEED).source().size() / 100.0;
+        int functions = Math.max(1, (int) (size / linesPerFunction));
+        List<String> program = new ProgramGenerator(shape.withFunctions(functions), SEED).source();
+
+        IncrementalFrontend frontend = new IncrementalFrontend();
+        long start = System.nanoTime();
+        frontend.load(String.join("\n", program));
+        double loadMs = (System.nanoTime() - start) / 1e6;
+
+        for(int i = 0; i < WARMUP_EDITS; i++) {
+            edit(frontend, program, i, null);
+        }
+
+        double[] times = new double[edits];
+        int failures = 0;
+        for(int i = 0; i < edits; i++) {
+            String failure = edit(frontend, program, i, times);
+            if(failure != null) {
+                System.out.println("FAIL edit " + i + ": " + failure);
+                failures++;
+            }
+        }
+
+        Arrays.sort(times);
+        double median = times[edits / 2];
+        System.out.printf("%d lines, %d functions, %d declarations%n", program.size(), functions, frontend.getDeclarations().size());
+        System.out.printf("%-12s %10.3f ms%n", "full load", loadMs);
+        System.out.printf("%-12s %10.3f ms%n", "edit median", median);
+        System.out.printf("%-12s %10.3f ms%n", "edit p99", times[(int) (edits * 0.99)]);
+        System.out.printf("%-12s %10.3f ms%n", "edit max", times[edits - 1]);
+
+        if(NvyError.WATCHING) {
+            System.out.println("FAIL the front end left NvyError.WATCHING set");
+            failures++;
+        }
+        if(median >= TARGET_MS) {
+            System.out.printf("FAIL median edit %.3f ms, target is under %.1f ms%n", median, TARGET_MS);
+            failures++;
+        }
+        if(failures > 0) System.exit(1);
+        System.out.println("All edits reparsed one chunk and kept every other tree");
+    }
+
+    // Applies edit i, timing it into times when given. Returns what went wrong, null if nothing did
+    private static String edit(IncrementalFrontend frontend, List<String> program, int i, double[] times) {
+        // Pairs of edits on the same function, the first adds the operand and the second removes it
+        int functions = (int) program.stream().filter(line -> line.startsWith("func f")).count();
+        int function = (i / 2 * 7919) % functions;
+        String name = "f" + function;
+        int line = program.indexOf(program.stream().filter(l -> l.startsWith("func " + name + "(")).findFirst().orElseThrow()) + 1;
+
+        List<String> lines = Arrays.asList(frontend.getSource().split("\n", -1));
+        int offset = 0;
+        for(int l = 0; l < line; l++) offset += lines.get(l).length() + 1;
+        offset += lines.get(line).indexOf(';');
+
+        Set<NASTNode> before = Collections.newSetFromMap(new IdentityHashMap<>());
+        before.addAll(frontend.getDeclarations());
+
+        long start = System.nanoTime();
+        if(i % 2 == 0) frontend.edit(offset, 0, EDIT);
+        else frontend.edit(offset - EDIT.length(), EDIT.length(), "");
+        if(times != null) times[i] = (System.nanoTime() - start) / 1e6;
+
+        if(frontend.getReparsed() != 1) return "reparsed " + frontend.getReparsed() + " chunks";
+        List<NASTNode> after = frontend.getDeclarations();
+        long kept = after.stream().filter(before::contains).count();
+        if(after.size() != before.size() || kept != after.size() - 1) {
+            return "kept " + kept + " of " + (after.size() - 1) + " unchanged declarations";
+        }
+        List<?> parameters = FunctionData.getInstance().getParameters(name);
+        if(parameters == null || parameters.size() != 2) {
+            return name + " has " + (parameters == null ? 0 : parameters.size()) + " parameters registered";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,162 @@
+package nvyc.bench;
+
+import nvyc.mir.MirFunction;
+import nvyc.mir.MirModule;
+import nvyc.mir.MirPass;
+import nvyc.mir.MirPipeline;
+import nvyc.mir.MirVerifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class MirCheck {
+
+    /*
+
+        Checks the mid-level IR on sample-programs and its kernels, any failure fails the run (exit 1):
+            round trip      the .ll of every program at -O0 and -O2 is lifted, every function is marked changed
+                            and printed back from the model, which has to give the same text. Every function
+                            has to be lifted and pass MirVerifier
+            goldens         every kernel is compiled at -O2 with --verify-passes, stopping after each pass of the
+                            -O2 pipeline in turn, and the .ll has to match kernels/golden/<kernel>.<pass>.ll
+
+        A golden that changes on purpose is rewritten with --update, its diff is the review of the change.
+
+        Usage: MirCheck [--update], run from the repository root
+
+     */
+
+    private static final String[] PIPELINE = {"ssa", "cse", "licm", "indvars", "unroll"};
+    private static final long TIMEOUT_SECONDS = 120;
+
+    // Changes nothing, but marks every function changed so it prints from the model instead of its text
+    private static class Reprint implements MirPass {
+        @Override
+        public String getName() {
+            return "reprint";
+        }
+
+        @Override
+        public int run(MirFunction function) {
+            return 1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean update = args.length > 0 && args[0].equals("--update");
+
+        Path samples = Path.of("sample-programs").toAbsolutePath();
+        Path goldens = samples.resolve("kernels").resolve("golden");
+        Path work = Files.createTempDirectory("nvyc-mir");
+        if(update) Files.createDirectories(goldens);
+
+        List<String> programs = new ArrayList<>();
+        programs.addAll(programs(samples, ""));
+        programs.addAll(programs(samples, "kernels/"));
+
+        // nvyc runs from sample-programs so its imports resolve, the classpath has to survive the change of directory
+        String classpath = Stream.of(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Path.of(entry).toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+
+        List<String> failures = new ArrayList<>();
+        int goldensChecked = 0;
+        for(String program : programs) {
+            for(String level : new String[]{"-O0", "-O2"}) {
+                String ll = compile(samples, classpath, work, program, level);
+                if(ll == null) {
+                    failures.add(program + " " + level + ": nvyc failed");
+                    continue;
+                }
+                String problem = roundTrip(ll);
+                if(problem != null) failures.add(program + " " + level + ": " + problem);
+            }
+
+            if(!program.startsWith("kernels/")) continue;
+            String kernel = program.substring("kernels/".length(), program.length() - 4);
+            for(int i = 0; i < PIPELINE.length; i++) {
+                String passes = String.join(",", List.of(PIPELINE).subList(0, i + 1));
+                String ll = compile(samples, classpath, work, program, "-O2", "--mir-passes=" + passes, "--verify-passes");
+                if(ll == null) {
+                    failures.add(kernel + " after " + PIPELINE[i] + ": nvyc failed or the verifier rejected the IR");
+                    continue;
+                }
+
+                Path golden = goldens.resolve(kernel + "." + PIPELINE[i] + ".ll");
+                if(update) {
+                    Files.writeString(golden, ll);
+                } else if(!Files.exists(golden)) {
+                    failures.add(kernel + " after " + PIPELINE[i] + ": no golden at " + golden + ", run with --update");
+                } else if(!Files.readString(golden).equals(ll)) {
+                    failures.add(kernel + " after " + PIPELINE[i] + ": differs from " + golden);
+                }
+                goldensChecked++;
+            }
+        }
+
+        System.out.printf("%d programs round tripped at -O0 and -O2, %d goldens %s%n", programs.size(), goldensChecked, update ? "written" : "checked");
+        for(String failure : failures) {
+            System.out.println("FAIL " + failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    // Null if printing every function back from the model gives the text it was lifted from
+    private static String roundTrip(String ll) {
+        MirModule module = MirModule.lift(List.of(ll));
+        if(!module.getSkipped().isEmpty()) return "functions that couldn't be lifted " + module.getSkipped();
+        MirVerifier verifier = new MirVerifier();
+        for(MirFunction function : module.getFunctions()) {
+            String problem = verifier.verify(function);
+            if(problem != null) return "lifted " + function.getName() + " is invalid: " + problem;
+        }
+
+        new MirPipeline(List.of(new Reprint())).run(module);
+        String lowered = String.join("", module.lower());
+        if(lowered.equals(ll)) return null;
+
+        String[] before = ll.split("\n", -1);
+        String[] after = lowered.split("\n", -1);
+        for(int i = 0; i < Math.min(before.length, after.length); i++) {
+            if(!before[i].equals(after[i])) return "line " + (i + 1) + " printed back as '" + after[i].strip() + "', was '" + before[i].strip() + "'";
+        }
+        return "printed back as " + after.length + " lines, was " + before.length;
+    }
+
+    private static List<String> programs(Path samples, String directory) throws IOException {
+        try(Stream<Path> files = Files.list(samples.resolve(directory.isEmpty() ? "." : directory))) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(".nvy"))
+                    .sorted()
+                    .map(name -> directory + name)
+                    .toList();
+        }
+    }
+
+    // The .ll nvyc writes for the program, null if it didn't exit cleanly
+    private static String compile(Path samples, String classpath, Path work, String program, String... flags) throws IOException, InterruptedException {
+        Path output = work.resolve("out");
+        Path ll = work.resolve("out_nvy_tmp.ll");
+        Files.deleteIfExists(ll);
+
+        List<String> command = new ArrayList<>(List.of("java", "-cp", classpath, "nvyc.internal.Test", program, output.toString()));
+        command.addAll(List.of(flags));
+        Process process = new ProcessBuilder(command)
+                .directory(samples.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if(!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            return null;
+        }
+        return process.exitValue() == 0 && Files.exists(ll) ? Files.readString(ll) : null;
+    }
+}
@@ -0,0 +1,265 @@
+package nvyc.bench;
+
+import nvyc.data.FunctionData;
+import nvyc.data.NASTNode;
+import nvyc.data.NodeStream;
+import nvyc.data.ScopeData;
+import nvyc.data.VariableData;
+import nvyc.generation.LLVMGenerator;
+import nvyc.generation.Lexer;
+import nvyc.generation.Parser;
+import nvyc.processing.ErrorChecker;
+import nvyc.processing.Preprocess;
+import nvyc.utils.LLVMUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class PhaseBenchmark {
+
+    /*
+
+        Throughput and allocation of every compiler phase on its own, over generated programs of several sizes.
+        Each invocation gets fresh input from the phases before it, built outside the measurement,
+        since lexing, preprocessing and parsing all rewrite the stream they are handed.
+
+        Measured the way JMH runs a benchmark in average time mode:
+            forks           every phase and size runs in FORKS fresh JVMs, so one phase's JIT profile can't
+                            shape another's code
+            iterations      warmup iterations are dropped, the measurement iterations of all forks are pooled
+            sink            every result is consumed like a Blackhole would, so the JIT can't drop the work
+            error           half width of the 99.9% confidence interval over the pooled iterations, as JMH prints
+        Allocation is read from the thread's allocated byte counter, the same number JMH's gc profiler
+        reports as gc.alloc.rate.norm.
+
+        Usage: PhaseBenchmark [--forks=<n>] [sizes...], sizes are function counts, default 10 100 500
+
+     */
+
+    private static final int FORKS = 2;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200_000_000L;
+    private static final long TIMEOUT_SECONDS = 600;
+    private static final long SEED = 42;
+
+    private static final String ITERATION = "Iteration: ";
+    private static final String LOG = "phase-bench.log";
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Written with every result, volatile so the JIT has to compute what goes in
+    private static volatile int sink;
+
+    private record Phase<T>(String name, Supplier<T> setup, Function<T, Object> run) {}
+
+    private record Result(double nanosPerOp, double bytesPerOp) {}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length > 0 && args[0].equals("--child")) {
+            child(args[1], Integer.parseInt(args[2]));
+            return;
+        }
+
+        int forks = FORKS;
+        List<Integer> sizes = new ArrayList<>();
+        for(String arg : args) {
+            if(arg.startsWith("--forks=")) forks = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            else sizes.add(Integer.parseInt(arg));
+        }
+        if(sizes.isEmpty()) sizes = List.of(10, 100, 500);
+
+        System.out.printf("%-16s %6s %12s %12s %10s %14s %12s%n", "phase", "size", "ops/s", "ms/op", "error", "alloc B/op", "alloc MB/s");
+        for(int size : sizes) {
+            for(Phase<?> phase : phases(List.of())) {
+                List<Result> iterations = new ArrayList<>();
+                for(int fork = 0; fork < forks; fork++) {
+                    List<Result> forked = fork(phase.name(), size);
+                    if(forked == null) {
+                        System.out.printf("%-16s %6d fork %d failed or took over %d s%n", phase.name(), size, fork + 1, TIMEOUT_SECONDS);
+                        System.exit(1);
+                    }
+                    iterations.addAll(forked);
+                }
+
+                double nanos = iterations.stream().mapToDouble(Result::nanosPerOp).average().orElse(0);
+                double bytes = iterations.stream().mapToDouble(Result::bytesPerOp).average().orElse(0);
+                System.out.printf("%-16s %6d %12.1f %12.3f %10.3f %14.0f %12.1f%n",
+                        phase.name(), size,
+                        1e9 / nanos,
+                        nanos / 1e6,
+                        error(iterations) / 1e6,
+                        bytes,
+                        bytes / nanos * 1e9 / (1024 * 1024));
+            }
+        }
+    }
+
+    // Runs inside a forked JVM, prints one line for each measurement iteration
+    private static void child(String name, int size) {
+        List<String> program = new ProgramGenerator(ProgramGenerator.Shape.standard(size), SEED).source();
+        Phase<?> phase = phases(program).stream().filter(p -> p.name().equals(name)).findFirst().orElseThrow();
+        for(Result result : measure(phase)) {
+            System.out.println(ITERATION + result.nanosPerOp() + " " + result.bytesPerOp());
+        }
+    }
+
+    // The measurement iterations of one fork, null if it failed or timed out
+    private static List<Result> fork(String phase, int size) throws IOException, InterruptedException {
+        Path log = Files.createTempFile("nvyc-phase", LOG);
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        Process process = new ProcessBuilder(java.toString(), "-Xss16m", "-cp", System.getProperty("java.class.path"),
+                PhaseBenchmark.class.getName(), "--child", phase, String.valueOf(size))
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+
+        if(!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            Files.delete(log);
+            return null;
+        }
+
+        List<Result> iterations = new ArrayList<>();
+        for(String line : Files.readAllLines(log)) {
+            if(!line.startsWith(ITERATION)) continue;
+            String[] fields = line.substring(ITERATION.length()).split(" ");
+            iterations.add(new Result(Double.parseDouble(fields[0]), Double.parseDouble(fields[1])));
+        }
+        Files.delete(log);
+        return process.exitValue() == 0 && !iterations.isEmpty() ? iterations : null;
+    }
+
+    /*
+        Half width of the 99.9% confidence interval of the mean time per op, in nanoseconds.
+        JMH takes the quantile from Student's t distribution, the normal one is used from 30 samples on
+     */
+    private static double error(List<Result> iterations) {
+        int n = iterations.size();
+        if(n < 2) return Double.NaN;
+        double mean = iterations.stream().mapToDouble(Result::nanosPerOp).average().orElse(0);
+        double variance = iterations.stream().mapToDouble(r -> (r.nanosPerOp() - mean) * (r.nanosPerOp() - mean)).sum() / (n - 1);
+        return quantile(n - 1) * Math.sqrt(variance / n);
+    }
+
+    // Two sided 99.9% quantiles of Student's t distribution by degrees of freedom
+    private static final double[] T_999 = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792, 3.768, 3.745, 3.725,
+            3.707, 3.690, 3.674, 3.659};
+
+    private static double quantile(int degrees) {
+        return degrees <= T_999.length ? T_999[degrees - 1] : 3.291;
+    }
+
+    private static List<Phase<?>> phases(List<String> program) {
+        List<Phase<?>> phases = new ArrayList<>();
+
+        phases.add(new Phase<>("lex",
+                () -> program,
+                lines -> Lexer.getInstance().lex(lines)));
+
+        phases.add(new Phase<>("preprocess",
+                () -> lex(program),
+                stream -> {
+                    Preprocess pre = new Preprocess();
+                    pre.preprocess(stream);
+                    pre.resolveFunCalls(stream);
+                    return stream;
+                }));
+
+        phases.add(new Phase<>("resolveDoubles",
+                () -> preprocessed(program),
+                stream -> new Parser().resolveDoublesPass(stream)));
+
+        phases.add(new Phase<>("parse",
+                () -> preprocessed(program),
+                PhaseBenchmark::parse));
+
+        phases.add(new Phase<>("validate",
+                () -> parse(preprocessed(program)),
+                nodes -> {
+                    new ErrorChecker().validateTree(nodes);
+                    return nodes;
+                }));
+
+        phases.add(new Phase<>("codegen",
+                () -> parse(preprocessed(program)),
+                nodes -> new LLVMGenerator().compileLLVM(nodes)));
+
+        return phases;
+    }
+
+    private static <T> List<Result> measure(Phase<T> phase) {
+        for(int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(phase);
+        }
+
+        List<Result> results = new ArrayList<>();
+        for(int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            results.add(iteration(phase));
+        }
+        return results;
+    }
+
+    /*
+        Runs the phase until the iteration time is used up.
+        Setup counts towards the iteration time, it can be much slower than the phase itself, but not towards the result
+     */
+    private static <T> Result iteration(Phase<T> phase) {
+        long thread = Thread.currentThread().getId();
+        long nanos = 0, bytes = 0, ops = 0;
+        long deadline = System.nanoTime() + ITERATION_NANOS;
+
+        while(ops == 0 || System.nanoTime() < deadline) {
+            T input = phase.setup().get();
+
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            Object result = phase.run().apply(input);
+            nanos += System.nanoTime() - start;
+            sink ^= System.identityHashCode(result);
+            bytes += threads.getThreadAllocatedBytes(thread) - allocated;
+            ops++;
+        }
+
+        return new Result((double) nanos / ops, (double) bytes / ops);
+    }
+
+    private static NodeStream lex(List<String> program) {
+        return Lexer.getInstance().lex(program);
+    }
+
+    private static NodeStream preprocessed(List<String> program) {
+        NodeStream stream = lex(program);
+        Preprocess pre = new Preprocess();
+        pre.preprocess(stream);
+        pre.resolveFunCalls(stream);
+        return stream;
+    }
+
+    private static List<NASTNode> parse(NodeStream stream) {
+        reset();
+        Parser parse = new Parser();
+        List<NASTNode> nodes = new ArrayList<>();
+        for(NodeStream declaration : parse.parseList(stream)) {
+            nodes.add(parse.parse(declaration));
+        }
+        return nodes;
+    }
+
+    // Every phase registers into the singletons, start each invocation clean
+    private static void reset() {
+        VariableData.getInstance().reset();
+        ScopeData.getInstance().reset();
+        FunctionData.getInstance().reset();
+        new LLVMUtils().reset();
+    }
+}
@@ -0,0 +1,180 @@
+package nvyc.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ProgramGenerator {
+
+    /*
+
+        Deterministic generator for large, valid Nvy programs. The same shape and seed always give the same sources.
+        Only uses what the compiler handles today: functions, for loops, if, int32 arithmetic, calls and structs.
+
+        Shape knobs
+            functions       functions in the main module, the rest of the size comes from statements
+            statements      statements per function
+            nesting         depth of nested for/if blocks in each function
+            expression      operands per arithmetic expression
+            structs         struct types, each with a constructor function that is called from the others
+            calls           calls from each function to earlier ones, the width of the call graph
+            modules         extra modules in nvylib/, each imported by the main module
+
+     */
+
+    public record Shape(int functions, int statements, int nesting, int expression, int structs, int calls, int modules) {
+
+        public static Shape standard(int functions) {
+            return new Shape(functions, 4, 2, 4, Math.max(1, functions / 20), 2, 0);
+        }
+
+        // Most of the code in imported modules, IMPORTED_MODULES of them each as large as the main module
+        public static Shape imports(int functions) {
+            return new Shape(functions, 4, 2, 4, Math.max(1, functions / 20), 2, IMPORTED_MODULES);
+        }
+
+        public Shape withFunctions(int functions) {
+            return new Shape(functions, statements, nesting, expression, structs, calls, modules);
+        }
+    }
+
+    public static final int IMPORTED_MODULES = 4;
+
+    private final Shape shape;
+    private final Random random;
+
+    public ProgramGenerator(Shape shape, long seed) {
+        this.shape = shape;
+        this.random = new Random(seed);
+    }
+
+    // Writes main.nvy into directory, and the imported modules into directory/nvylib
+    public Path write(Path directory) throws IOException {
+        Files.createDirectories(directory.resolve("nvylib"));
+
+        // Modules hold plain functions, the main module calls into them
+        List<String> imported = new ArrayList<>();
+        for(int m = 0; m < shape.modules(); m++) {
+            List<String> module = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for(int f = 0; f < shape.functions(); f++) {
+                String name = "m" + m + "_f" + f;
+                function(module, name, names, List.of());
+                names.add(name);
+            }
+            imported.addAll(names);
+            Files.write(directory.resolve("nvylib").resolve("mod" + m + ".nvy"), module);
+        }
+
+        Path path = directory.resolve("main.nvy");
+        Files.write(path, mainModule(imported));
+        return path;
+    }
+
+    // Only the main module, without imports, for benchmarks that skip the preprocessor
+    public List<String> source() {
+        return mainModule(List.of());
+    }
+
+    private List<String> mainModule(List<String> imported) {
+        List<String> main = new ArrayList<>();
+        for(int m = 0; m < shape.modules() && !imported.isEmpty(); m++) {
+            main.add("%import mod" + m + ".nvy");
+        }
+        main.add("");
+
+        List<String> constructors = new ArrayList<>();
+        for(int s = 0; s < shape.structs(); s++) {
+            struct(main, s);
+            constructors.add("mk" + s);
+        }
+
+        List<String> names = new ArrayList<>();
+        for(int f = 0; f < shape.functions(); f++) {
+            List<String> callable = new ArrayList<>(names);
+            if(!imported.isEmpty()) callable.add(imported.get(random.nextInt(imported.size())));
+            String name = "f" + f;
+            function(main, name, callable, constructors);
+            names.add(name);
+        }
+
+        main.add("func main() -> int32 {");
+        main.add("    let total = 0;");
+        for(String name : names) {
+            main.add("    total = total + " + name + "(" + random.nextInt(100) + ", total);");
+        }
+        main.add("    return total;");
+        main.add("}");
+        return main;
+    }
+
+    private void struct(List<String> out, int index) {
+        out.add("struct s" + index + " {");
+        out.add("        int32 a;");
+        out.add("        int64 b;");
+        out.add("};");
+        out.add("");
+        out.add("func mk" + index + "(int32 a) -> s" + index + " {");
+        out.add("    let v = (s" + index + ");");
+        out.add("    v.a = a;");
+        out.add("    v.b = " + random.nextInt(1000) + "L;");
+        out.add("    return v;");
+        out.add("}");
+        out.add("");
+    }
+
+    private void function(List<String> out, String name, List<String> callable, List<String> constructors) {
+        out.add("func " + name + "(int32 a, int32 b) -> int32 {");
+        out.add("    let x = " + expression(false) + ";");
+
+        for(int c = 0; c < shape.calls() && !callable.isEmpty(); c++) {
+            String callee = callable.get(random.nextInt(callable.size()));
+            out.add("    x = x + " + callee + "(a, " + random.nextInt(100) + ");");
+        }
+
+        if(!constructors.isEmpty()) {
+            String constructor = constructors.get(random.nextInt(constructors.size()));
+            out.add("    let s = " + constructor + "(x);");
+            out.add("    let r = s.a;");
+            out.add("    x = x + r;");
+        }
+
+        String indent = "    ";
+        for(int d = 0; d < shape.nesting(); d++) {
+            if(d % 2 == 0) {
+                out.add(indent + "for(let i" + d + " = 0; i" + d + " < " + (2 + random.nextInt(8)) + "; i" + d + "+1) {");
+            } else {
+                out.add(indent + "if(x > " + random.nextInt(100) + ") {");
+            }
+            indent += "    ";
+        }
+        for(int s = 0; s < shape.statements(); s++) {
+            out.add(indent + "x = " + expression(true) + ";");
+        }
+        for(int d = shape.nesting() - 1; d >= 0; d--) {
+            indent = indent.substring(4);
+            out.add(indent + "}");
+        }
+
+        out.add("    return x;");
+        out.add("}");
+        out.add("");
+    }
+
+    // Only parameters and literals, globals inside nested arithmetic are not supported by codegen yet
+    private String expression(boolean useX) {
+        String[] operands = useX ? new String[]{"a", "b", "x"} : new String[]{"a", "b"};
+        String[] operators = {" + ", " - ", " * "};
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(random.nextBoolean() ? "a" : "b");
+        for(int i = 1; i < shape.expression(); i++) {
+            builder.append(operators[random.nextInt(operators.length)]);
+            builder.append(random.nextInt(3) == 0 ? String.valueOf(1 + random.nextInt(9)) : operands[random.nextInt(operands.length)]);
+        }
+        return builder.toString();
+    }
+}
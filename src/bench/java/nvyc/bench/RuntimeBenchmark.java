@@ -0,0 +1,240 @@
+package nvyc.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class RuntimeBenchmark {
+
+    /*
+
+        How fast the code nvyc generates runs. Every kernel in sample-programs/kernels is compiled to .ll,
+        built with the local clang at each -O level, run a number of times and measured:
+            runtime         median wall time of the binary
+            instructions    IR instructions nvyc emitted, labels and declarations excluded
+            size            binary size in bytes
+
+        Every kernel also runs in process with --run (interp) and --run=jvm (jvm), timed as the whole nvyc
+        process since the front end runs each time. Those rows have no binary, their size is 0, and run no IR,
+        their instructions are left blank.
+        Without clang only these rows are measured.
+
+        Results are compared against a baseline csv, any metric worse than the threshold fails the run (exit 1).
+        A kernel that no longer compiles, builds or exits cleanly also fails.
+
+        --nvyc=<level> compiles the kernels with nvyc at that level (-O1, -O2) instead of its default, so the
+        passes of the mid-level IR can be measured against a baseline taken without it.
+
+        Usage: RuntimeBenchmark [--baseline=<csv>] [--threshold=<fraction>] [--runs=<n>] [--nvyc=<level>] [--update-baseline]
+        Run from the repository root, defaults are sample-programs/kernels/baseline.csv, 0.10 and 5 runs
+
+     */
+
+    private static final String[] OPT_LEVELS = {"-O0", "-O2"};
+    private static final Map<String, String> RUN_MODES = Map.of("interp", "--run", "jvm", "--run=jvm");
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private record Result(String kernel, String level, double runtimeMs, int instructions, long size) {
+        String key() {
+            return kernel + " " + level;
+        }
+
+        // Blank for the rows that don't run the IR
+        String instructionColumn() {
+            return RUN_MODES.containsKey(level) ? "" : String.valueOf(instructions);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path baseline = Path.of("sample-programs", "kernels", "baseline.csv");
+        double threshold = 0.10;
+        int runs = 5;
+        boolean update = false;
+        String optimization = null;
+
+        for(String arg : args) {
+            if(arg.startsWith("--baseline=")) baseline = Path.of(arg.substring(arg.indexOf('=') + 1));
+            else if(arg.startsWith("--threshold=")) threshold = Double.parseDouble(arg.substring(arg.indexOf('=') + 1));
+            else if(arg.startsWith("--runs=")) runs = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            else if(arg.startsWith("--nvyc=")) optimization = arg.substring(arg.indexOf('=') + 1);
+            else if(arg.equals("--update-baseline")) update = true;
+            else {
+                System.err.printf("Unknown flag %s%n", arg);
+                System.exit(2);
+            }
+        }
+
+        boolean clang = available("clang", "--version");
+        if(!clang) System.err.println("clang not found on PATH, only timing the interpreter and the JVM backend");
+
+        Path samples = Path.of("sample-programs").toAbsolutePath();
+        Path work = Files.createTempDirectory("nvyc-runtime");
+        List<String> kernels;
+        try(Stream<Path> files = Files.list(samples.resolve("kernels"))) {
+            kernels = files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(".nvy"))
+                    .map(name -> name.substring(0, name.length() - 4))
+                    .sorted()
+                    .toList();
+        }
+
+        // nvyc runs from sample-programs so its imports resolve, the classpath has to survive the change of directory
+        String classpath = Stream.of(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Path.of(entry).toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+
+        List<Result> results = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        System.out.printf("%-10s %-5s %12s %14s %12s%n", "kernel", "opt", "runtime ms", "instructions", "size");
+
+        for(String kernel : kernels) {
+            Path ll = work.resolve(kernel + "_nvy_tmp.ll");
+            List<String> compile = new ArrayList<>(List.of("java", "-cp", classpath, "nvyc.internal.Test",
+                    "kernels/" + kernel + ".nvy", work.resolve(kernel).toString()));
+            if(optimization != null) compile.add(optimization);
+            if(!run(samples, compile.toArray(new String[0]))) {
+                failures.add(kernel + ": nvyc failed");
+                continue;
+            }
+            int instructions = instructions(ll);
+
+            for(String level : clang ? OPT_LEVELS : new String[0]) {
+                Path binary = work.resolve(kernel + level);
+                if(!run(work, "clang", level, "-Wno-override-module", ll.toString(), "-o", binary.toString())) {
+                    failures.add(kernel + " " + level + ": clang rejected the IR");
+                    continue;
+                }
+
+                double[] times = new double[runs];
+                boolean clean = true;
+                for(int i = 0; i < runs && clean; i++) {
+                    long start = System.nanoTime();
+                    clean = run(work, binary.toString());
+                    times[i] = (System.nanoTime() - start) / 1e6;
+                }
+                if(!clean) {
+                    failures.add(kernel + " " + level + ": binary did not exit cleanly");
+                    continue;
+                }
+
+                Arrays.sort(times);
+                Result result = new Result(kernel, level, times[runs / 2], instructions, Files.size(binary));
+                results.add(result);
+                System.out.printf("%-10s %-5s %12.1f %14s %12d%n", kernel, level, result.runtimeMs(), result.instructionColumn(), result.size());
+            }
+
+            for(String mode : List.of("interp", "jvm")) {
+                double[] times = new double[runs];
+                boolean clean = true;
+                for(int i = 0; i < runs && clean; i++) {
+                    long start = System.nanoTime();
+                    clean = run(samples, "java", "-cp", classpath, "nvyc.internal.Test",
+                            "kernels/" + kernel + ".nvy", work.resolve(kernel).toString(), RUN_MODES.get(mode));
+                    times[i] = (System.nanoTime() - start) / 1e6;
+                }
+                if(!clean) {
+                    failures.add(kernel + " " + mode + ": program did not exit cleanly");
+                    continue;
+                }
+
+                Arrays.sort(times);
+                Result result = new Result(kernel, mode, times[runs / 2], 0, 0);
+                results.add(result);
+                System.out.printf("%-10s %-5s %12.1f %14s %12d%n", kernel, mode, result.runtimeMs(), result.instructionColumn(), result.size());
+            }
+        }
+
+        if(update) {
+            List<String> csv = new ArrayList<>();
+            csv.add("kernel,level,runtime_ms,instructions,size");
+            for(Result result : results) {
+                csv.add(String.join(",", result.kernel(), result.level(), String.valueOf(result.runtimeMs()),
+                        result.instructionColumn(), String.valueOf(result.size())));
+            }
+            Files.write(baseline, csv);
+            System.out.printf("Baseline written to %s%n", baseline);
+        } else if(Files.exists(baseline)) {
+            failures.addAll(regressions(results, readBaseline(baseline), threshold));
+        } else {
+            System.out.printf("No baseline at %s, run with --update-baseline to create one%n", baseline);
+        }
+
+        for(String failure : failures) {
+            System.out.println("FAIL " + failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private static List<String> regressions(List<Result> results, Map<String, Result> baseline, double threshold) {
+        List<String> failures = new ArrayList<>();
+        for(Result result : results) {
+            Result before = baseline.get(result.key());
+            if(before == null) continue;
+
+            check(failures, result.key(), "runtime", before.runtimeMs(), result.runtimeMs(), threshold);
+            check(failures, result.key(), "instructions", before.instructions(), result.instructions(), threshold);
+            check(failures, result.key(), "size", before.size(), result.size(), threshold);
+        }
+        return failures;
+    }
+
+    private static void check(List<String> failures, String key, String metric, double before, double after, double threshold) {
+        if(before > 0 && after > before * (1 + threshold)) {
+            failures.add(String.format("%s: %s regressed %.1f -> %.1f (+%.0f%%)", key, metric, before, after, (after / before - 1) * 100));
+        }
+    }
+
+    private static Map<String, Result> readBaseline(Path path) throws IOException {
+        Map<String, Result> baseline = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(path);
+        for(String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",");
+            int instructions = fields[3].isEmpty() ? 0 : Integer.parseInt(fields[3]);
+            Result result = new Result(fields[0], fields[1], Double.parseDouble(fields[2]), instructions, Long.parseLong(fields[4]));
+            baseline.put(result.key(), result);
+        }
+        return baseline;
+    }
+
+    // Every indented line inside a define is an instruction, labels and globals are not indented
+    private static int instructions(Path ll) throws IOException {
+        int count = 0;
+        boolean body = false;
+        for(String line : Files.readAllLines(ll)) {
+            if(line.startsWith("define")) body = true;
+            else if(line.startsWith("}")) body = false;
+            else if(body && line.startsWith("\t")) count++;
+        }
+        return count;
+    }
+
+    private static boolean run(Path directory, String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if(!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            return false;
+        }
+        return process.exitValue() == 0;
+    }
+
+    private static boolean available(String... command) {
+        try {
+            return run(Path.of("."), command);
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+}
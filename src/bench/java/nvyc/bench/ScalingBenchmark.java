@@ -0,0 +1,218 @@
+package nvyc.bench;
+
+import nvyc.internal.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class ScalingBenchmark {
+
+    /*
+
+        End to end compile time and peak heap over generated programs from 1k to 1M lines, for two shapes:
+            standard        everything in the main module
+            imports         the same code spread over the main module and ProgramGenerator.IMPORTED_MODULES
+                            imported ones, sizes count the lines of all of them
+        Every size compiles in its own JVM so peak heap and JIT state don't carry over, phase times come
+        from the driver's --profile output. The child's output goes to a file, so a compilation that hangs
+        is killed at the timeout, and sizes stop growing from there.
+
+        A phase is flagged as superlinear when its time grows faster than size^1.25 between two sizes.
+        Results go to stdout and to scaling-<shape>.csv in the working directory, for plotting.
+
+        Usage: ScalingBenchmark [sizes in lines...], default 1000 10000 100000 1000000
+
+     */
+
+    private static final double SUPERLINEAR_EXPONENT = 1.25;
+    private static final double MIN_FLAGGED_MS = 5;      // Below this, timer noise dominates the ratio
+    private static final long TIMEOUT_SECONDS = 600;
+    private static final long SEED = 42;
+
+    private static final String PEAK_HEAP = "Peak heap: ";
+    private static final String LOG = "child.log";
+
+    private record Run(int lines, Map<String, Double> phases, long peakHeap) {}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length > 0 && args[0].equals("--child")) {
+            child(args[1]);
+            return;
+        }
+
+        int[] sizes = args.length == 0 ? new int[]{1_000, 10_000, 100_000, 1_000_000} : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        Map<String, ProgramGenerator.Shape> shapes = new LinkedHashMap<>();
+        shapes.put("standard", ProgramGenerator.Shape.standard(1));
+        shapes.put("imports", ProgramGenerator.Shape.imports(1));
+
+        for(Map.Entry<String, ProgramGenerator.Shape> shape : shapes.entrySet()) {
+            System.out.printf("%n== %s%n", shape.getKey());
+            double linesPerFunction = linesPerFunction(shape.getValue());
+
+            List<Run> runs = new ArrayList<>();
+            for(int size : sizes) {
+                int functions = Math.max(1, (int) (size / linesPerFunction));
+                Path directory = Files.createTempDirectory("nvyc-scaling");
+                new ProgramGenerator(shape.getValue().withFunctions(functions), SEED).write(directory);
+                int lines = lines(directory);
+
+                Run run = compile(directory, lines);
+                delete(directory);
+                if(run == null) {
+                    System.out.printf("%d lines: no result within %d s, stopping%n", lines, TIMEOUT_SECONDS);
+                    break;
+                }
+                runs.add(run);
+                System.out.printf("%d lines: %.1f ms, peak heap %.1f MB%n", lines, total(run), run.peakHeap() / (1024.0 * 1024));
+            }
+
+            report(shape.getKey(), runs);
+        }
+    }
+
+    // Runs inside the compiling JVM, the working directory is the generated program's
+    private static void child(String input) throws IOException {
+        Test.main(new String[]{input, "out", "--profile"});
+
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.println(PEAK_HEAP + peak);
+    }
+
+    private static Run compile(Path directory, int lines) throws IOException, InterruptedException {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        Process process = new ProcessBuilder(java.toString(), "-Xss512m", "-cp", System.getProperty("java.class.path"),
+                ScalingBenchmark.class.getName(), "--child", "main.nvy")
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(directory.resolve(LOG).toFile())
+                .start();
+
+        if(!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            return null;
+        }
+
+        Map<String, Double> phases = new LinkedHashMap<>();
+        long peakHeap = 0;
+        for(String line : Files.readAllLines(directory.resolve(LOG))) {
+            if(line.contains(" phase: ")) {
+                phases.put(line.substring(0, line.indexOf(" phase: ")), Double.parseDouble(line.substring(line.indexOf(": ") + 2)));
+            } else if(line.startsWith(PEAK_HEAP)) {
+                peakHeap = Long.parseLong(line.substring(PEAK_HEAP.length()));
+            }
+        }
+        return process.exitValue() == 0 && !phases.isEmpty() ? new Run(lines, phases, peakHeap) : null;
+    }
+
+    private static void report(String shape, List<Run> runs) throws IOException {
+        if(runs.isEmpty()) return;
+        List<String> phases = new ArrayList<>(runs.get(0).phases().keySet());
+
+        StringBuilder header = new StringBuilder(String.format("%n%10s", "lines"));
+        List<String> csv = new ArrayList<>();
+        csv.add("lines," + String.join(",", phases) + ",total_ms,peak_heap_bytes");
+        for(String phase : phases) header.append(String.format(" %16s", phase));
+        header.append(String.format(" %12s %12s", "total", "heap MB"));
+        System.out.println(header);
+
+        for(Run run : runs) {
+            StringBuilder row = new StringBuilder(String.format("%10d", run.lines()));
+            StringBuilder csvRow = new StringBuilder(String.valueOf(run.lines()));
+            for(String phase : phases) {
+                double ms = run.phases().getOrDefault(phase, 0.0);
+                row.append(String.format(" %16.1f", ms));
+                csvRow.append(",").append(ms);
+            }
+            row.append(String.format(" %12.1f %12.1f", total(run), run.peakHeap() / (1024.0 * 1024)));
+            csvRow.append(",").append(total(run)).append(",").append(run.peakHeap());
+            System.out.println(row);
+            csv.add(csvRow.toString());
+        }
+        Files.write(Path.of("scaling-" + shape + ".csv"), csv);
+
+        plot("time", runs, run -> total(run), "ms");
+        plot("peak heap", runs, run -> run.peakHeap() / (1024.0 * 1024), "MB");
+
+        System.out.println();
+        boolean flagged = false;
+        for(int i = 1; i < runs.size(); i++) {
+            Run small = runs.get(i - 1);
+            Run large = runs.get(i);
+            for(String phase : phases) {
+                double before = small.phases().getOrDefault(phase, 0.0);
+                double after = large.phases().getOrDefault(phase, 0.0);
+                if(after < MIN_FLAGGED_MS || before <= 0) continue;
+
+                double exponent = Math.log(after / before) / Math.log((double) large.lines() / small.lines());
+                if(exponent > SUPERLINEAR_EXPONENT) {
+                    System.out.printf("SUPERLINEAR %s: %.1f ms -> %.1f ms from %d to %d lines, ~n^%.2f%n",
+                            phase, before, after, small.lines(), large.lines(), exponent);
+                    flagged = true;
+                }
+            }
+        }
+        if(!flagged) System.out.println("No superlinear phases");
+    }
+
+    private interface Metric {
+        double of(Run run);
+    }
+
+    // Log scale bars, sizes are a decade apart
+    private static void plot(String title, List<Run> runs, Metric metric, String unit) {
+        System.out.printf("%n%s%n", title);
+        double max = runs.stream().mapToDouble(metric::of).max().orElse(1);
+        for(Run run : runs) {
+            double value = metric.of(run);
+            int width = value <= 0 ? 0 : (int) Math.round(50 * Math.log1p(value) / Math.log1p(max));
+            System.out.printf("%10d |%s %.1f %s%n", run.lines(), "#".repeat(width), value, unit);
+        }
+    }
+
+    private static double total(Run run) {
+        return run.phases().values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    private static double linesPerFunction(ProgramGenerator.Shape shape) throws IOException {
+        int sample = 100;
+        Path directory = Files.createTempDirectory("nvyc-scaling");
+        new ProgramGenerator(shape.withFunctions(sample), SEED).write(directory);
+        double lines = lines(directory) / (double) sample;
+        delete(directory);
+        return lines;
+    }
+
+    // Lines of the main module and every module it imports
+    private static int lines(Path directory) throws IOException {
+        int lines = 0;
+        try(Stream<Path> paths = Files.walk(directory)) {
+            for(Path path : paths.filter(p -> p.toString().endsWith(".nvy")).toList()) {
+                lines += Files.readAllLines(path).size();
+            }
+        }
+        return lines;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try(Stream<Path> paths = Files.walk(directory)) {
+            for(Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
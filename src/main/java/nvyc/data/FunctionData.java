@@ -11,15 +11,28 @@ public class FunctionData {
     private static Map<String, List<NodeType>> functionParameters = new HashMap<>();
     private static Map<String, List<String>> functionParamNames = new HashMap<>();
     private static Map<String, String> llvmReturnMap = new HashMap<>();
-    private static FunctionData instance;
+
+    private static class Holder {
+        private static final FunctionData INSTANCE = new FunctionData();
+    }
 
     public static FunctionData getInstance() {
-        if(instance == null) {
-            instance = new FunctionData();
-            returnMap = new HashMap<>();
-            functionParameters = new HashMap<>();
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    public void reset() {
+        returnMap = new HashMap<>();
+        functionParameters = new HashMap<>();
+        functionParamNames = new HashMap<>();
+        llvmReturnMap = new HashMap<>();
+    }
+
+    // Everything known about one function, before it's parsed again
+    public void remove(String function) {
+        returnMap.remove(function);
+        functionParameters.remove(function);
+        functionParamNames.remove(function);
+        llvmReturnMap.remove(function);
     }
 
     public Map<String, String> getLlvmReturnMap() {
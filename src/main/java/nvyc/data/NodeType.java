@@ -20,7 +20,7 @@ public enum NodeType {
     ARRAY_ACCESS, ARRAY_INDEX,
 
     FINAL, STATIC, PUBLIC, PRIVATE, IMPLICIT,           // Modifiers
-    CONSTANT, NATIVE,
+    CONSTANT, NATIVE, EXTERNAL,
 
     FUNCTION_T, INT32_T, INT64_T, FP32_T, FP64_T,       // Type_T
     STRING_T, CHAR_T, BOOL_T, STR_T,
@@ -7,20 +7,24 @@ public class ScopeData {
     public static final int SCOPE_LOCAL = 1;
     public static final int SCOPE_GLOBAL = 0;
 
-    private static ScopeData instance;
-
     private static int SCOPE_LEVEL = 0; // For nested scopes like if, for, etc. Scope 2 can access values in 1 and 0, but not 3, and so on
 
-    private static Map<String, Integer> scopeMap;
-    private static Map<String, Stack<Integer>> shadowedGlobals;
+    private static Map<String, Integer> scopeMap = new HashMap<>();
+    private static Map<String, Stack<Integer>> shadowedGlobals = new HashMap<>();
+
+    // Created on first use by the JVM, no check on every call
+    private static class Holder {
+        private static final ScopeData INSTANCE = new ScopeData();
+    }
 
     public static ScopeData getInstance() {
-        if(instance == null) {
-            instance = new ScopeData();
-            scopeMap = new HashMap<>();
-            shadowedGlobals = new HashMap<>();
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    public void reset() {
+        SCOPE_LEVEL = 0;
+        scopeMap = new HashMap<>();
+        shadowedGlobals = new HashMap<>();
     }
 
     public void increaseDepth() {
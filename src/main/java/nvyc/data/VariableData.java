@@ -2,42 +2,62 @@ package nvyc.data;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class VariableData {
 
-    private static Map<String, Integer> varMap;
+    private static Map<String, Integer> varMap = new HashMap<>();
     private static List<String> usedRegisters = new ArrayList<>();
-    private static Map<String, NodeType> arrayTypeMap;
-    private static Map<String, TypeDescriptor> arrayMap;
-    private static Map<String, NodeType> typeMap;
-    private static Map<String, String> llvmMap;
-    private static List<String> functionVariables;
-    private static List<String> allocationList;
+    private static Map<String, NodeType> arrayTypeMap = new HashMap<>();
+    private static Map<String, TypeDescriptor> arrayMap = new HashMap<>();
+    private static Map<String, NodeType> typeMap = new HashMap<>();
+    private static Map<String, String> llvmMap = new HashMap<>();
+    private static List<String> functionVariables = new ArrayList<>();
+    private static List<String> allocationList = new ArrayList<>();
+    private static Set<String> constants = new HashSet<>();
     private static final int STRUCT_VARIABLES = 0;
     private static final int STRUCT_TYPES = 1;
 
-    private static Map<String, List<Map<String, Object>>> structMap;
+    private static Map<String, List<Map<String, Object>>> structMap = new HashMap<>();
 
     private static ScopeData scopeData = ScopeData.getInstance();
 
-    private static VariableData instance;
+    private static class Holder {
+        private static final VariableData INSTANCE = new VariableData();
+    }
 
     public static VariableData getInstance() {
-        if(instance == null) {
-            instance = new VariableData();
-            varMap = new HashMap<>();
-            typeMap = new HashMap<>();
-            llvmMap = new HashMap<>();
-            structMap = new HashMap<>();
-            functionVariables = new ArrayList<>();
-            allocationList = new ArrayList<>();
-            usedRegisters = new ArrayList<>();
-            arrayTypeMap = new HashMap<>();
-            arrayMap = new HashMap<>();
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    // Forget everything from the previous compilation, the instance itself is kept since every pass holds it
+    public void reset() {
+        varMap = new HashMap<>();
+        typeMap = new HashMap<>();
+        llvmMap = new HashMap<>();
+        structMap = new HashMap<>();
+        functionVariables = new ArrayList<>();
+        allocationList = new ArrayList<>();
+        usedRegisters = new ArrayList<>();
+        arrayTypeMap = new HashMap<>();
+        arrayMap = new HashMap<>();
+        constants = new HashSet<>();
+    }
+
+    // Globals declared constant or final, see ConstantEvaluator
+    public void addConstant(String name) {
+        constants.add(name);
+    }
+
+    public void removeConstant(String name) {
+        constants.remove(name);
+    }
+
+    public boolean isConstant(String name) {
+        return constants.contains(name);
     }
 
     public void initializeNativeType(String variable, NodeType type) {
@@ -233,6 +253,10 @@ public class VariableData {
         varMap.remove(var);
     }
 
+    public void unloadAll() {
+        varMap.clear();
+    }
+
     public void removeType(String var) {
         typeMap.remove(var);
     }
@@ -0,0 +1,179 @@
+package nvyc.generation;
+
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+import nvyc.utils.NvyError;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class FunctionCache {
+
+    /*
+
+        IR of every generated function, kept between compilations of the same output.
+        A function is fingerprinted from its own tree plus the declarations it depends on:
+        signatures of the functions it calls, layouts of the structs it uses and the globals it references.
+        The options the compilation ran with go in too, -O level, --no-ssa and --passes, so IR generated
+        under one set of them is never reused under another. So does a hash of the compiler's own classes,
+        a cache written by an older nvyc holds IR from its codegen and is never reused by a newer one.
+        If the fingerprint matches the previous compilation, its IR is reused instead of regenerated.
+
+        Needs per function numbering of strings and float temporaries, see LLVMUtils.beginFunctionNumbering
+
+     */
+
+    private static class CachedFunction implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String fingerprint;
+        private final List<String> ir;
+        private final List<String> globals;
+
+        CachedFunction(String fingerprint, List<String> ir, List<String> globals) {
+            this.fingerprint = fingerprint;
+            this.ir = ir;
+            this.globals = globals;
+        }
+    }
+
+    private final String path;
+    private HashMap<String, CachedFunction> functions = new HashMap<>();
+    private final HashMap<String, CachedFunction> compiled = new HashMap<>();
+    private final Map<String, String> declarations = new HashMap<>();
+    private int reused = 0;
+
+    // Hash of the compiler build, computed once per run
+    private static String build = null;
+
+    public FunctionCache(String path) {
+        this.path = path;
+        load();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        File f = new File(path);
+        if(!f.exists()) return;
+
+        try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            functions = (HashMap<String, CachedFunction>) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            // Stale or corrupt cache, everything is regenerated
+            functions = new HashMap<>();
+        }
+    }
+
+    public void save() throws IOException {
+        try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeObject(compiled);
+        }
+    }
+
+    // Everything a function can depend on, by name
+    public void index(List<NASTNode> nodes) {
+        declarations.clear();
+        for(NASTNode node : nodes) {
+            switch(node.getType()) {
+                case FUNCTION -> declarations.merge(node.getValueString(), signature(node), String::concat);
+                case NATIVE, EXTERNAL -> declarations.merge(node.getSubnode(0).getValueString(), signature(node.getSubnode(0)), String::concat);
+                case STRUCT, VARDEF, GLOBALVARDEF -> declarations.merge(node.getValueString(), node.toString(), String::concat);
+                default -> {}
+            }
+        }
+    }
+
+    private String signature(NASTNode function) {
+        return function.getValueString() + function.getSubnode(0) + function.getSubnode(1);
+    }
+
+    public String fingerprint(NASTNode function) {
+        StringBuilder builder = new StringBuilder(function.toString());
+        builder.append(options());
+
+        // Sorted so the same dependencies always give the same fingerprint
+        Set<String> dependencies = new TreeSet<>();
+        for(NASTNode node : function.flattenNodes()) {
+            if(node.getValue() == null || node.getValue() instanceof NodeType) continue;
+            String name = node.getValueString();
+            if(!name.equals(function.getValueString()) && declarations.containsKey(name)) dependencies.add(name);
+        }
+        for(String name : dependencies) {
+            builder.append(declarations.get(name));
+        }
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String options() {
+        return "-O" + NvyError.OPTIMIZATION_LEVEL + " ssa=" + NvyError.BUILD_SSA + " passes=" + NvyError.PASSES + " build=" + build();
+    }
+
+    // The compiler's classes, either the class directory or the jar they were loaded from
+    private static String build() {
+        if(build != null) return build;
+
+        // No way to tell which build this is, nothing from an earlier run is reused
+        build = UUID.randomUUID().toString();
+        CodeSource source = FunctionCache.class.getProtectionDomain().getCodeSource();
+        if(source == null) return build;
+
+        try {
+            Path location = Path.of(source.getLocation().toURI());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if(Files.isDirectory(location)) {
+                try(Stream<Path> files = Files.walk(location)) {
+                    for(Path file : files.filter(p -> p.toString().endsWith(".class")).sorted().toList()) {
+                        digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                        digest.update(Files.readAllBytes(file));
+                    }
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            build = HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException | SecurityException e) {
+            // Left random
+        }
+        return build;
+    }
+
+    /*
+        Returns the cached IR if the function is unchanged, adding its globals to globalValues.
+        Null if it has to be generated again
+     */
+    public List<String> reuse(String name, String fingerprint, List<String> globalValues) {
+        CachedFunction cached = functions.get(name);
+        if(cached == null || !cached.fingerprint.equals(fingerprint)) return null;
+
+        compiled.put(name, cached);
+        globalValues.addAll(cached.globals);
+        reused++;
+        return new ArrayList<>(cached.ir);
+    }
+
+    public void store(String name, String fingerprint, List<String> ir, List<String> globals) {
+        compiled.put(name, new CachedFunction(fingerprint, new ArrayList<>(ir), new ArrayList<>(globals)));
+    }
+
+    public int getReused() {
+        return reused;
+    }
+
+    public int getCompiled() {
+        return compiled.size();
+    }
+}
@@ -0,0 +1,243 @@
+package nvyc.generation;
+
+import nvyc.data.FunctionData;
+import nvyc.data.NASTNode;
+import nvyc.data.NodeStream;
+import nvyc.data.NodeType;
+import nvyc.processing.Preprocess;
+import nvyc.utils.NvyError;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class IncrementalFrontend {
+
+    /*
+
+        Front end for editors and tooling that re-analyze after every keystroke.
+
+        The source is split into chunks, runs of lines holding one or more top level declarations.
+        Tokens never span lines, so after an edit only the damaged lines are lexed again and the token
+        sequence is back in sync at the next line. Only the chunks overlapping the edit are parsed again,
+        every other declaration keeps its NASTNode.
+
+        Block comments can change the meaning of every line after them, so edits touching one re-analyze
+        the rest of the file. The same goes for edits that leave a declaration open (a deleted brace).
+        Imports are not resolved and names are not mangled, each module is analyzed on its own.
+
+        Half typed code is the norm here, so errors while parsing abort the chunk instead of the process
+        (NvyError.WATCHING, set only around the parse). A function parsed again is removed from FunctionData
+        first, or its parameters would be registered once more on every edit.
+
+     */
+
+    private static class Chunk {
+        private int first;      // Lines, inclusive
+        private int last;
+        private List<NASTNode> nodes = new ArrayList<>();
+
+        Chunk(int first) {
+            this.first = first;
+            this.last = first;
+        }
+    }
+
+    private final Lexer lex = Lexer.getInstance();
+    private final Preprocess pre = new Preprocess();
+    private final Parser parse = new Parser();
+    private final FunctionData fundata = FunctionData.getInstance();
+
+    private final List<String> lines = new ArrayList<>();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int reparsed = 0;
+
+    public void load(String source) {
+        lines.clear();
+        lines.addAll(Arrays.asList(source.split("\n", -1)));
+        chunks.clear();
+        reparsed = 0;
+        chunks.addAll(analyze(0, lines.size() - 1));
+    }
+
+    /*
+        Applies a text edit, offsets are in characters from the start of the source.
+        Lines are separated by a single \n
+     */
+    public void edit(int offset, int deleted, String inserted) {
+        int[] start = position(offset);
+        int[] end = position(offset + deleted);
+        int first = start[0];
+        int last = end[0];
+
+        String edited = lines.get(first).substring(0, start[1]) + inserted + lines.get(last).substring(end[1]);
+        List<String> replacement = Arrays.asList(edited.split("\n", -1));
+        boolean comments = hasBlockComment(lines.subList(first, last + 1)) || hasBlockComment(replacement);
+
+        // Chunks overlapping the damaged lines
+        int from = 0;
+        while(from < chunks.size() && chunks.get(from).last < first) from++;
+        int to = from;
+        while(to < chunks.size() && chunks.get(to).first <= last) to++;
+
+        int regionFirst = from < to ? Math.min(first, chunks.get(from).first) : first;
+        int regionLast = from < to ? Math.max(last, chunks.get(to - 1).last) : last;
+
+        lines.subList(first, last + 1).clear();
+        lines.addAll(first, replacement);
+        int delta = replacement.size() - (last - first + 1);
+
+        reparsed = 0;
+        List<Chunk> fresh = comments ? null : analyze(regionFirst, regionLast + delta);
+        if(fresh == null) {
+            to = chunks.size();
+            fresh = analyze(regionFirst, lines.size() - 1);
+        } else {
+            for(int i = to; i < chunks.size(); i++) {
+                chunks.get(i).first += delta;
+                chunks.get(i).last += delta;
+            }
+        }
+
+        chunks.subList(from, to).clear();
+        chunks.addAll(from, fresh);
+    }
+
+    public List<NASTNode> getDeclarations() {
+        List<NASTNode> result = new ArrayList<>();
+        for(Chunk chunk : chunks) {
+            result.addAll(chunk.nodes);
+        }
+        return result;
+    }
+
+    // Chunks parsed by the last load or edit
+    public int getReparsed() {
+        return reparsed;
+    }
+
+    public String getSource() {
+        return String.join("\n", lines);
+    }
+
+    // {line, column} of a character offset
+    private int[] position(int offset) {
+        int line = 0;
+        while(line < lines.size() - 1 && offset > lines.get(line).length()) {
+            offset -= lines.get(line).length() + 1;
+            line++;
+        }
+        return new int[]{line, Math.min(offset, lines.get(line).length())};
+    }
+
+    private boolean hasBlockComment(List<String> text) {
+        for(String line : text) {
+            if(line.contains("/*") || line.contains("*/")) return true;
+        }
+        return false;
+    }
+
+    // Null if a declaration is still open at the last line
+    private List<Chunk> analyze(int first, int last) {
+        List<Chunk> result = split(first, last);
+        if(result == null) {
+            if(last < lines.size() - 1) return null;
+
+            // Still open at the end of the file, nothing to parse until it's closed
+            Chunk open = new Chunk(first);
+            open.last = last;
+            reparsed++;
+            return new ArrayList<>(List.of(open));
+        }
+
+        boolean watching = NvyError.WATCHING;
+        NvyError.WATCHING = true;
+        try {
+            for(Chunk chunk : result) {
+                NodeStream stream = lexLines(chunk.first, chunk.last);
+                try {
+                    pre.preprocess(stream);
+                    pre.resolveFunCalls(stream);
+                    forgetFunctions(stream);
+                    for(NodeStream declaration : parse.parseList(stream)) {
+                        chunk.nodes.add(parse.parse(declaration));
+                    }
+                } catch (RuntimeException e) {
+                    // Left empty until the next edit fixes it
+                    chunk.nodes.clear();
+                }
+                reparsed++;
+            }
+        } finally {
+            NvyError.WATCHING = watching;
+        }
+        return result;
+    }
+
+    // Drops what the last parse of the functions declared in stream registered
+    private void forgetFunctions(NodeStream stream) {
+        for(NodeStream s = stream; s.getType() != NodeType.ENDOFSTREAM; s = s.next()) {
+            if(s.getType() != NodeType.FUNCTION || s.next().getValue() == null) continue;
+            fundata.remove(s.next().getValue().toString());
+        }
+    }
+
+    /*
+        Declarations end on a ; or on the } closing a function, at brace depth 0.
+        Declarations sharing a line go in the same chunk
+     */
+    private List<Chunk> split(int first, int last) {
+        List<Chunk> result = new ArrayList<>();
+        NodeStream stream = lexLines(first, last);
+        Chunk current = null;
+        int depth = 0;
+        boolean comment = false;
+
+        for(NodeStream s = stream.next(); s.getType() != NodeType.ENDOFSTREAM; s = s.next()) {
+            NodeType type = s.getType();
+            NodeType next = s.next().getType();
+
+            if(!comment && type == NodeType.DIV && next == NodeType.MUL) {
+                comment = true;
+                s = s.next();
+                continue;
+            }
+            if(comment) {
+                if(type == NodeType.MUL && next == NodeType.DIV) {
+                    comment = false;
+                    s = s.next();
+                }
+                continue;
+            }
+
+            int line = s.getLine() + first;
+            if(current == null) {
+                if(!result.isEmpty() && result.get(result.size() - 1).last == line) {
+                    current = result.remove(result.size() - 1);
+                } else {
+                    current = new Chunk(line);
+                }
+            }
+
+            if(type == NodeType.OPENBRACE) depth++;
+            else if(type == NodeType.CLOSEBRACE) depth--;
+
+            if(depth == 0 && (type == NodeType.ENDOFLINE || (type == NodeType.CLOSEBRACE && next != NodeType.ENDOFLINE))) {
+                current.last = line;
+                result.add(current);
+                current = null;
+            }
+        }
+
+        return current == null && depth == 0 && !comment ? result : null;
+    }
+
+    private NodeStream lexLines(int first, int last) {
+        List<String> text = new ArrayList<>(lines.subList(first, last + 1));
+        pre.removeInlineComments(text);
+        for(int i = 0; i < text.size(); i++) {
+            if(text.get(i).startsWith("%import")) text.set(i, "");
+        }
+        return lex.lex(text);
+    }
+}
@@ -1,6 +1,7 @@
 package nvyc.generation;
 
 import nvyc.data.*;
+import nvyc.utils.CompilerEvents;
 import nvyc.utils.LLVMUtils;
 import nvyc.utils.NvyError;
 
@@ -24,6 +25,9 @@ public class LLVMGenerator {
     private final List<String> globalValues = new ArrayList<>();
     private final List<String> variadicFunctions = new ArrayList<>();
 
+    // Only set for incremental builds
+    private FunctionCache functionCache = null;
+
 
 
     /*
@@ -46,6 +50,10 @@ public class LLVMGenerator {
         return globalValues;
     }
 
+    public void setFunctionCache(FunctionCache cache) {
+        functionCache = cache;
+    }
+
     public List<String> compileLLVM(NASTNode n) {
         return compileLLVM(new ArrayList<>(Collections.singleton(n)));
     }
@@ -62,8 +70,10 @@ public class LLVMGenerator {
                 case ASSIGN -> result.addAll(llvmAssign(n));
                 case VARDEF -> result.addAll(llvmVardefPrep(n));
                 case FUNCTION -> result.addAll(llvmFunction(n));
+                case EXTERNAL -> result.addAll(llvmFunction(n.getSubnode(0), LLVMUtils.FUNCTION_AVAILABLE_EXTERNALLY));
                 case RETURN -> result.addAll(llvmReturn(n));
                 case STRUCT -> result.add(llvmStruct(n));
+                case GLOBALVARDEF -> llvmExternalGlobal(n);
                 case
                         ADD, SUB, MUL, DIV,
                                 BITAND, BITOR, BITXOR,
@@ -82,6 +92,16 @@ public class LLVMGenerator {
         return struct;
     }
 
+    // Global defined in another module, only needs to be declared
+    public void llvmExternalGlobal(NASTNode node) {
+        String name = node.getValueString();
+        NodeType type = node.getSubnode(0).getType();
+
+        scopedata.set(name, ScopeData.SCOPE_GLOBAL);
+        utils.initializeType("@global_" + name, type);
+        globalValues.add(utils.declareExternalGlobal(name, type));
+    }
+
     public String llvmNative(NASTNode node) {
 
         NASTNode function = node.getSubnode(0);
@@ -108,6 +128,12 @@ public class LLVMGenerator {
         return result;
     }
 
+    // Starts a block. Registers loaded in another block may not dominate this one, so every variable is loaded again
+    private String label(String name) {
+        vardata.unloadAll();
+        return name + ":\n";
+    }
+
     public List<String> llvmConditional(NASTNode node) {
         reloadReturnValue = true;
         List<String> result = new ArrayList<>();
@@ -168,7 +194,7 @@ public class LLVMGenerator {
 
         scopedata.increaseDepth();
         // Compile "if true" nodes
-        result.add(iftrue + ":\n");
+        result.add(label(iftrue));
         for(NASTNode bodySubnode : bodyNode.getAllSubnodes()) {
             result.addAll(compileLLVM(bodySubnode));
         }
@@ -181,7 +207,7 @@ public class LLVMGenerator {
              */
 
         // Compile "if false" nodes
-        result.add(iffalse + ":\n");
+        result.add(label(iffalse));
         for(NASTNode elseSubnode : elseNode.getAllSubnodes()) {
             result.addAll(compileLLVM(elseSubnode));
         }
@@ -268,7 +294,7 @@ public class LLVMGenerator {
                     String globalName = utils.bitcastVariableI32ToF32();
                     String storedValue = "@global_" + globalName;
 
-                    globalValues.add(utils.allocateGlobal(globalName, NodeType.INT32, floatValue, String.valueOf(tmp)));
+                    globalValues.add(utils.allocatePrivateGlobal(globalName, NodeType.INT32, floatValue, String.valueOf(tmp)));
                     utils.initializeType(storedValue, NodeType.INT32);
                     result.add(utils.dereferenceVariable(storedValue));
 
@@ -435,6 +461,29 @@ public class LLVMGenerator {
     }
 
     public List<String> llvmFunction(NASTNode node) {
+        return llvmFunction(node, LLVMUtils.FUNCTION_DEFINITION);
+    }
+
+    // Linkage is available_externally for bodies imported from another module, so LLVM can inline them
+    public List<String> llvmFunction(NASTNode node, String linkage) {
+        CompilerEvents.FunctionEvent event = new CompilerEvents.FunctionEvent();
+        int reused = functionCache != null ? functionCache.getReused() : 0;
+        event.begin();
+
+        List<String> result = compileFunction(node, linkage);
+
+        event.end();
+        if(event.shouldCommit()) {
+            event.function = node.getValueString();
+            event.astSize = node.flattenNodes().size();
+            event.instructions = utils.countInstructions(result);
+            event.reused = functionCache != null && functionCache.getReused() > reused;
+            event.commit();
+        }
+        return result;
+    }
+
+    private List<String> compileFunction(NASTNode node, String linkage) {
         List<String> result = new ArrayList<>();
         String functionName = node.getValue().toString();
         NASTNode functionArgs = node.getSubnode(0);
@@ -452,6 +501,17 @@ public class LLVMGenerator {
         NodeType returnType = functionReturn.getSubnode(0).getType();
         fundata.setReturnType(functionName, returnType);
 
+        // Unchanged since the last compilation, reuse its IR
+        String fingerprint = null;
+        int globalsStart = globalValues.size();
+        boolean cached = functionCache != null && linkage.equals(LLVMUtils.FUNCTION_DEFINITION);
+        if(cached) {
+            fingerprint = functionCache.fingerprint(node);
+            List<String> reused = functionCache.reuse(functionName, fingerprint, globalValues);
+            if(reused != null) return reused;
+            utils.beginFunctionNumbering(functionName);
+        }
+
         if(!functionArgs.getAllSubnodes().isEmpty()) {
             for (NASTNode arg : functionArgs.getAllSubnodes()) {
                 String argName = arg.getValueString();
@@ -464,7 +524,7 @@ public class LLVMGenerator {
             }
         }
 
-        result.add(utils.createFunction(functionName, LLVMUtils.FUNCTION_DEFINITION));
+        result.add(utils.createFunction(functionName, linkage));
 
         if(utils.hasConditionals(node)) {
             result.add("entry:\n");
@@ -501,6 +561,11 @@ public class LLVMGenerator {
         // Reset return register reloading
         reloadReturnValue = false;
 
+        if(cached) {
+            utils.endFunctionNumbering();
+            functionCache.store(functionName, fingerprint, result, globalValues.subList(globalsStart, globalValues.size()));
+        }
+
         return result;
     }
 
@@ -580,8 +645,8 @@ public class LLVMGenerator {
                 List<String> stringLoad = utils.loadString(value);
                 globalValues.add(stringLoad.get(0));    // 0 = global string
                 result.add(stringLoad.get(1));          // 1 = load from global
-                utils.initializeType("%.str_" + utils.getLastResult(), type);
-                parameterNames.add("%.str_" + utils.getLastResult());
+                utils.initializeType(utils.getLastString(), type);
+                parameterNames.add(utils.getLastString());
                 parameterTypes.add(type);
                 parameterLlvmTypes.add(utils.nativeTypeToLLVM(type));
             }
@@ -761,6 +826,8 @@ public class LLVMGenerator {
         if(scopedata.isGlobal(varValue)) varValue = "@global_" + varValue;
         else varValue = "%" + varValue;
 
+        // Element type of an array target, varValue points at the element from here on
+        String elementType = null;
         if(variableNode.getType() == NodeType.ARRAY_ACCESS) {
             //String type = variableNode.getSubnode(0).getValueString();
             String type = Symbols.nativeTypeToLLVM(vardata.getArrayType(varValue));
@@ -774,6 +841,7 @@ public class LLVMGenerator {
 
             result.add(utils.getArrayPtr(varValue, type, size, pos));
             varValue = "%" + utils.getLastResult();
+            elementType = type;
         }
 
         // TODO set var type
@@ -832,30 +900,24 @@ public class LLVMGenerator {
         else if(valueType == NodeType.ARRAY_ACCESS) {
 
             // TODO try automating this (grabbing local vs global) inside VariableData or ParserUtils
-            String arrayVariable = variableNode.getSubnode(0).getValueString();
-            if(scopedata.isGlobal(arrayVariable)) arrayVariable = "@global_" + arrayVariable;
-            else arrayVariable = "%" + arrayVariable;
-
             String otherVariable = valueNode.getSubnode(0).getValueString();
-            if(scopedata.isGlobal(otherVariable)) arrayVariable = "@global_" + otherVariable;
+            if(scopedata.isGlobal(otherVariable)) otherVariable = "@global_" + otherVariable;
             else otherVariable = "%" + otherVariable;
 
-            int mainSize = vardata.getArraySize(arrayVariable);
-            String mainIdx = variableNode.getSubnode(1).getValueString();
-            String arrayType = Symbols.nativeTypeToLLVM(vardata.getArrayType(arrayVariable));
-            result.add(utils.getArrayPtr(arrayVariable, arrayType, mainSize, mainIdx));
-            //result.add(utils.loadFromArrayPtr("%" + utils.getLastResult(), arrayVariable, arrayType));
-
-            // We are storing into this address
-            int storeToPtr = utils.getLastResult();
+            // We are storing into this address, computed from the loaded index above
+            String storeToPtr = varValue;
 
             int otherSize = vardata.getArraySize(otherVariable);
             String otherIdx = valueNode.getSubnode(1).getValueString();
+            if(!utils.isNumeric(otherIdx)) {
+                result.add(utils.dereferenceVariable("%" + otherIdx));
+                otherIdx = "%" + utils.getLastResult();
+            }
             String otherType = Symbols.nativeTypeToLLVM(vardata.getArrayType(otherVariable));
             result.add(utils.getArrayPtr(otherVariable, otherType, otherSize, otherIdx));
             result.add(utils.loadFromArrayPtr("%" + utils.getLastResult(), otherVariable, otherType));
 
-            result.add(utils.storeToArrayPtr("%" + storeToPtr, otherType, "%" + utils.getLastResult()));
+            result.add(utils.storeToArrayPtr(storeToPtr, otherType, "%" + utils.getLastResult()));
         }
 
         // Register-based assignment always comes from needing further evaluation
@@ -890,12 +952,7 @@ public class LLVMGenerator {
             //utils.initializeType("%" + utils.getLastResult(), vardata.getType(varValue));
 
             if(variableNode.getType() == NodeType.ARRAY_ACCESS) {
-                String arrayVariable = "%" + variableNode.getSubnode(0).getValueString();
-                String idx = variableNode.getSubnode(1).getValueString();
-                String type = Symbols.nativeTypeToLLVM(vardata.getArrayType(arrayVariable));
-                int arrSize = vardata.getArraySize(arrayVariable);
-                result.add(utils.getArrayPtr(arrayVariable, type, arrSize, idx));
-                result.add(utils.storeToArrayPtr("%" + utils.getLastResult(), type, location));
+                result.add(utils.storeToArrayPtr(varValue, elementType, location));
             }
 
             else result.add(utils.storeToVariable(varValue, location, LLVMUtils.STORETYPE_LITERAL));
@@ -985,6 +1042,12 @@ public class LLVMGenerator {
         final boolean isArithOrLogic = utils.isArith(type) || utils.isLogical(type);
         final boolean isFunctionCall = type == NodeType.FUNCTIONCALL;
 
+        // Globals are emitted with their value, an initializer ConstantEvaluator couldn't compute has no code to run in
+        if(scopedata.getDepth() == ScopeData.SCOPE_GLOBAL && !utils.isLiteral(value)) {
+            err.NV_STDERRF("nvc > Global %s is not known at compile time, LLVM output needs it to be (see --eval-budget)%n", name);
+            err.NV_EXIT(1);
+        }
+
         if(utils.isLiteral(value)) {
 
             // TODO cleanup
@@ -996,7 +1059,7 @@ public class LLVMGenerator {
                     floatval = storedValue;
                     storedValue = String.valueOf(Float.floatToRawIntBits(tmp)); //utils.floatToHex(tmp);
                     String globalName = utils.bitcastVariableI32ToF32();
-                    globalValues.add(utils.allocateGlobal(globalName, NodeType.INT32, storedValue, floatval));
+                    globalValues.add(utils.allocatePrivateGlobal(globalName, NodeType.INT32, storedValue, floatval));
                     storedValue = "@global_" + globalName;
                     utils.initializeType(storedValue, NodeType.INT32);
                     result.add(utils.dereferenceVariable(storedValue));
@@ -1012,7 +1075,14 @@ public class LLVMGenerator {
 
             // Now store the data
             if(scopedata.getDepth() == ScopeData.SCOPE_GLOBAL) {
-                globalValues.add(utils.allocateGlobal(name, type, storedValue, value.getValueString()));
+                // LLVM only accepts decimal floats it can represent exactly, hex always works
+                NodeType literalType = utils.normalize(type);
+                if(literalType == NodeType.FP32) storedValue = utils.doubleToHex(Float.parseFloat(storedValue));
+                else if(literalType == NodeType.FP64) storedValue = utils.doubleToHex(Double.parseDouble(storedValue));
+
+                // Constants are never written, as LLVM constants their loads fold
+                if(vardata.isConstant(name)) globalValues.add(utils.allocateConstantGlobal(name, type, storedValue, value.getValueString()));
+                else globalValues.add(utils.allocateGlobal(name, type, storedValue, value.getValueString()));
                 utils.initializeType("@global_" + name, type);
             }else {
                 name = "%" + name;
@@ -1082,7 +1152,7 @@ public class LLVMGenerator {
             List<String> stringLoad = utils.loadString(value.getValueString());
             globalValues.add(stringLoad.get(0));
             result.add(stringLoad.get(1));
-            result.add(utils.storeToVariable(name, "%.str_" + utils.getLastResult(), LLVMUtils.STORETYPE_STRING));
+            result.add(utils.storeToVariable(name, utils.getLastString(), LLVMUtils.STORETYPE_STRING));
             utils.initializeType("%" + name, NodeType.STR);
         }
 
@@ -1280,12 +1350,12 @@ public class LLVMGenerator {
 
         scopedata.increaseDepth();
         // Loop condition
-        result.add(loopcheck + ":\n");
+        result.add(label(loopcheck));
         result.addAll(compileLLVM(loopCondition));
         result.add(utils.jumpConditional(loopbody, loopexit, utils.getLastResult()));
 
         // Create body code then add the iteration at the end
-        result.add(loopbody + ":\n");
+        result.add(label(loopbody));
         for(NASTNode subnode : loopBodyNodes.getAllSubnodes()) {
             result.addAll(compileLLVM(subnode));
         }
@@ -1294,7 +1364,7 @@ public class LLVMGenerator {
         result.add(utils.jumpDirectly(loopcheck));
 
         // Loop exit
-        result.add(loopexit + ":\n");
+        result.add(label(loopexit));
         scopedata.decreaseDepth();
         //utils.decreaseLoopDepth(); // Move up a layer
         return result;
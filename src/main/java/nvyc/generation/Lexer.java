@@ -8,14 +8,20 @@ import java.util.*;
 public class Lexer {
 
     private Map<String, NodeType> rep = new HashMap<>();
-    private static Lexer lex;
 
-    public static Lexer getInstance() {
-        if (lex == null) {
-            lex = new Lexer();
+    // The keyword map is only built once something actually lexes
+    private static class Holder {
+        private static final Lexer INSTANCE = create();
+
+        private static Lexer create() {
+            Lexer lex = new Lexer();
             lex.init();
+            return lex;
         }
-        return lex;
+    }
+
+    public static Lexer getInstance() {
+        return Holder.INSTANCE;
     }
 
     public void init() {
@@ -8,7 +8,10 @@ import nvyc.utils.ParserUtils;
 
 import javax.print.attribute.standard.MediaSize;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
@@ -22,12 +25,22 @@ public class Parser {
 
     private static final boolean LOCAL_EXPRESSION = false;
     private static final boolean ENCLOSED_EXPRESSION = true;
+    private static final Set<NodeType> MODIFIERS = Set.of(NodeType.STATIC, NodeType.PUBLIC, NodeType.PRIVATE, NodeType.CONSTANT, NodeType.FINAL);
 
     private boolean isNativeFunction = false;
     private int forwardDepth = 0;
     private String comingFrom = "";
     private Stack<NodeStream> forloopEnd = new Stack<>();
 
+    // Lazy parsing, only signatures are parsed up front and bodies are parsed once reachable from main
+    private boolean lazyBodies = false;
+    private Map<String, NodeStream> deferredBodies = new HashMap<>();
+    private Map<String, NASTNode> deferredFunctions = new HashMap<>();
+
+    public void setLazyBodies(boolean lazy) {
+        lazyBodies = lazy;
+    }
+
 
     public NASTNode parse(NodeStream stream) {
         NodeType type = stream.getType();
@@ -226,6 +239,14 @@ public class Parser {
         // Parse the body only if it isn't native
         if(!isNativeFunction) {
             stream = stream.forward(ParserUtils.FUNCTION_FORWARD_FIRSTEXPR);
+
+            // Keep the stream around until we know the function is actually called
+            if(lazyBodies) {
+                deferredBodies.put(name, stream);
+                deferredFunctions.put(name, function);
+                return function;
+            }
+
             List<NASTNode> bodyNodes = parseBodyNodes(stream);
             for (NASTNode subnode : bodyNodes) {
                 utils.addFunctionBody(function, subnode);
@@ -235,6 +256,57 @@ public class Parser {
         return function;
     }
 
+    /*
+        Parses the deferred bodies of every function reachable from main, through calls and through variables
+        naming a function, whose address is then taken.
+        Names are still unmangled at this point, so the name map is used to find the function.
+        Without a main (libraries), every body is parsed.
+        Functions that are never reached keep an empty body and are skipped by codegen.
+     */
+    public void parseReachableBodies(List<NASTNode> nodes, Map<String, String> functionNameMap) {
+        Stack<String> worklist = new Stack<>();
+        Set<String> visited = new HashSet<>();
+
+        if(deferredBodies.containsKey("main")) {
+            worklist.push("main");
+
+            // Global initializers can call functions too
+            for(NASTNode node : nodes) {
+                if(node.getType() != NodeType.FUNCTION && node.getType() != NodeType.NATIVE) {
+                    collectCalls(node, worklist, functionNameMap);
+                }
+            }
+        }else{
+            worklist.addAll(deferredBodies.keySet());
+        }
+
+        while(!worklist.isEmpty()) {
+            String name = worklist.pop();
+            if(!visited.add(name) || !deferredBodies.containsKey(name)) continue;
+
+            NASTNode function = deferredFunctions.get(name);
+            for(NASTNode subnode : parseBodyNodes(deferredBodies.get(name))) {
+                utils.addFunctionBody(function, subnode);
+                collectCalls(subnode, worklist, functionNameMap);
+            }
+        }
+
+        deferredBodies.clear();
+        deferredFunctions.clear();
+    }
+
+    // Every name that may be a function, those without a deferred body are skipped by the worklist
+    private void collectCalls(NASTNode node, Stack<String> worklist, Map<String, String> functionNameMap) {
+        if(node == null) return;
+        if(node.getType() == NodeType.FUNCTIONCALL || node.getType() == NodeType.VARIABLE) {
+            String name = node.getValueString();
+            worklist.push(functionNameMap.getOrDefault(name, name));
+        }
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            collectCalls(subnode, worklist, functionNameMap);
+        }
+    }
+
     public NASTNode parseFunctionCall(NodeStream stream) {
 
         comingFrom = "parsefunctioncall";
@@ -608,7 +680,7 @@ public class Parser {
                 err.NV_STDERR("ERROR: Not enough values in stack for operator " + operatorStack.peek());
                 err.NV_STDERR("Values: " + valueStack.toString());
                 err.NV_STDERR("Operators: " + operatorStack.toString());
-                System.exit(1);
+                err.NV_EXIT(1);
             }
             NASTNode rhs = valueStack.pop();
             NASTNode lhs = valueStack.pop();
@@ -731,7 +803,7 @@ public class Parser {
                 err.NV_STDERR("ERROR: Not enough values in stack for operator " + operation);
                 err.NV_STDERR("Values: " + valueStack);
                 err.NV_STDERR("Operators: " + operatorStack);
-                System.exit(1);
+                err.NV_EXIT(1);
             }
 
             NASTNode rhs = valueStack.pop();
@@ -778,7 +850,7 @@ public class Parser {
         //if(enclosed) {
         if (copy.getType() != NodeType.CLOSEPARENS && !Symbols.isExpression(copy)) {
             err.NV_STDERRF("ERROR > Expected expression but didn't find one at %s\n", copy.backtrack());
-            System.exit(0);
+            err.NV_EXIT(0);
         }
         //}
 
@@ -869,6 +941,10 @@ public class Parser {
                     nodes.add(cpy);
                     break;
                 case VARDEF:
+                    // Modifiers aren't part of the declaration, constant and final globals are remembered by name
+                    for(NodeStream m = root.prev(); m != null && MODIFIERS.contains(m.getType()); m = m.prev()) {
+                        if(m.getType() == NodeType.CONSTANT || m.getType() == NodeType.FINAL) vardata.addConstant(root.next().getValue().toString());
+                    }
                     NodeStream cpy2 = root.cutheadAndReturn();
                     cpy2 = cpy2.cutheadAndReturn();
                     cpy2 = cpy2.forwardType(NodeType.ENDOFLINE);
@@ -1038,7 +1114,7 @@ public class Parser {
                     NodeType t = strton(resolve);
                     if(t == null) {
                         err.NV_STDERR("nvc > Invalid operator: " + resolve);
-                        System.exit(1);
+                        err.NV_EXIT(1);
                     }
 
                     NodeStream s = new NodeStream(strton(resolve), resolve);
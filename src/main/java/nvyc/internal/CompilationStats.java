@@ -0,0 +1,139 @@
+package nvyc.internal;
+
+import nvyc.utils.CompilerEvents;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompilationStats {
+
+    /*
+
+        Per phase cost of one compilation, written as json by --stats=json for the build dashboards.
+        Each phase records wall time, CPU time and bytes allocated by the compiler thread, plus the size
+        of what it produced (lines, tokens, nodes, IR lines...). Peak heap covers the whole process.
+
+        Phases are sequential and run on the compiling thread, begin() always closes the previous one.
+        Every phase is also a JFR event, see CompilerEvents.
+
+     */
+
+    private static class Phase {
+        private final String name;
+        private long wall;
+        private long cpu;
+        private long allocated;
+        private final Map<String, Long> sizes = new LinkedHashMap<>();
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final String input;
+    private final List<Phase> phases = new ArrayList<>();
+    private final List<String> passes = new ArrayList<>();
+    private Phase current;
+    private CompilerEvents.PhaseEvent event;
+
+    public CompilationStats(String input) {
+        this.input = input;
+        if(threads.isThreadAllocatedMemorySupported()) threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public void begin(String name) {
+        if(current != null) end();
+        current = new Phase(name);
+        event = new CompilerEvents.PhaseEvent();
+        event.begin();
+        current.wall = System.nanoTime();
+        current.cpu = threads.getCurrentThreadCpuTime();
+        current.allocated = threads.getCurrentThreadAllocatedBytes();
+    }
+
+    // Wall time of the phase, in nanoseconds
+    public long end() {
+        current.wall = System.nanoTime() - current.wall;
+        current.cpu = threads.getCurrentThreadCpuTime() - current.cpu;
+        current.allocated = threads.getCurrentThreadAllocatedBytes() - current.allocated;
+        phases.add(current);
+
+        event.end();
+        if(event.shouldCommit()) {
+            event.phase = current.name;
+            event.input = input;
+            event.commit();
+        }
+
+        long wall = current.wall;
+        current = null;
+        return wall;
+    }
+
+    // Size of something the last phase produced
+    public void size(String name, long value) {
+        Phase phase = current != null ? current : phases.get(phases.size() - 1);
+        phase.sizes.put(name, value);
+    }
+
+    // One run of an optimization pass, see PassManager
+    public void pass(String name, int round, long nanos, int changes) {
+        passes.add(String.format("{\"name\": %s, \"round\": %d, \"wall_ns\": %d, \"changes\": %d}", quote(name), round, nanos, changes));
+    }
+
+    public static long peakHeap() {
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    public String toJson() {
+        long wall = 0, cpu = 0, allocated = 0;
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n  \"input\": ").append(quote(input)).append(",\n  \"phases\": [");
+
+        for(int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            wall += phase.wall;
+            cpu += phase.cpu;
+            allocated += phase.allocated;
+
+            builder.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"name\": ").append(quote(phase.name))
+                    .append(", \"wall_ns\": ").append(phase.wall)
+                    .append(", \"cpu_ns\": ").append(phase.cpu)
+                    .append(", \"allocated_bytes\": ").append(phase.allocated)
+                    .append(", \"sizes\": {");
+            int j = 0;
+            for(Map.Entry<String, Long> size : phase.sizes.entrySet()) {
+                builder.append(j++ == 0 ? "" : ", ").append(quote(size.getKey())).append(": ").append(size.getValue());
+            }
+            builder.append("}}");
+        }
+
+        builder.append("\n  ],\n  \"passes\": [");
+        for(int i = 0; i < passes.size(); i++) {
+            builder.append(i == 0 ? "\n    " : ",\n    ").append(passes.get(i));
+        }
+        builder.append(passes.isEmpty() ? "]" : "\n  ]");
+
+        builder.append(",\n  \"total\": {\"wall_ns\": ").append(wall)
+                .append(", \"cpu_ns\": ").append(cpu)
+                .append(", \"allocated_bytes\": ").append(allocated)
+                .append("},\n  \"peak_heap_bytes\": ").append(peakHeap())
+                .append("\n}\n");
+        return builder.toString();
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -4,23 +4,37 @@ import nvyc.data.FunctionData;
 import nvyc.data.NASTNode;
 import nvyc.data.NodeStream;
 import nvyc.data.NodeType;
+import nvyc.data.ScopeData;
+import nvyc.data.VariableData;
+import nvyc.generation.FunctionCache;
 import nvyc.generation.LLVMGenerator;
 import nvyc.generation.Lexer;
 import nvyc.generation.Parser;
+import nvyc.interpreter.Interpreter;
+import nvyc.mir.MirModule;
+import nvyc.mir.MirPipeline;
 import nvyc.processing.ASTCleanup;
+import nvyc.processing.ConstantEvaluator;
+import nvyc.processing.DeadDeclarationElimination;
+import nvyc.processing.ModuleInterface;
+import nvyc.processing.PassManager;
 import nvyc.processing.ErrorChecker;
 import nvyc.processing.Preprocess;
+import nvyc.utils.LLVMUtils;
 import nvyc.utils.NvyError;
+import nvyc.utils.ParserUtils;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class Test {
 
 
     private static final boolean CHECKPOINTS = false;
-
-    static Lexer lex = Lexer.getInstance();
+    private static final long WATCH_DEBOUNCE_MS = 100;
 
     static LLVMGenerator llvm = new LLVMGenerator();
     static NvyError err = new NvyError();
@@ -28,6 +42,9 @@ public class Test {
     static ErrorChecker errcheck = new ErrorChecker();
     static Preprocess pre = new Preprocess();
     static ASTCleanup cleanup = new ASTCleanup();
+    static DeadDeclarationElimination dde = new DeadDeclarationElimination();
+    static ConstantEvaluator evaluator = new ConstantEvaluator();
+    static ModuleInterface iface = new ModuleInterface();
     //static ValidationPass pass = new ValidationPass();
 
     private static boolean flatten = false;
@@ -36,6 +53,8 @@ public class Test {
 
     static String input;
     static String output;
+    static CompilationStats stats;
+    static List<NASTNode> exported;
 
     public static void main(String[] args) throws IOException {
         String dir = "./";
@@ -44,6 +63,48 @@ public class Test {
         input = args[0];
         output = args[1];
 
+        for(int i = 2; i < args.length; i++) {
+            switch(args[i]) {
+                case "--no-lazy" -> NvyError.LAZY_PARSING = false;
+                case "--no-dde" -> NvyError.ELIMINATE_DECLARATIONS = false;
+                case "--no-ssa" -> NvyError.BUILD_SSA = false;
+                case "--report-dde" -> NvyError.REPORT_ELIMINATED = true;
+                case "--emit-interface" -> NvyError.EMIT_INTERFACE = true;
+                case "--incremental" -> NvyError.INCREMENTAL = true;
+                case "--watch" -> NvyError.WATCHING = true;
+                case "--startup-time" -> NvyError.STARTUP_TIME = true;
+                case "--profile" -> NvyError.PROFILING = true;
+                case "--stats=json" -> NvyError.STATS = true;
+                case "-O0" -> NvyError.OPTIMIZATION_LEVEL = 0;
+                case "-O1" -> NvyError.OPTIMIZATION_LEVEL = 1;
+                case "-O2" -> NvyError.OPTIMIZATION_LEVEL = 2;
+                case "--verify-passes" -> NvyError.VERIFY_PASSES = true;
+                case "--run" -> NvyError.INTERPRET = true;
+                case "--run=jvm" -> NvyError.INTERPRET = NvyError.JVM_BACKEND = true;
+                default -> {
+                    if(args[i].startsWith("--inline-threshold=")) {
+                        NvyError.INLINE_BODY_THRESHOLD = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+                        continue;
+                    }
+                    if(args[i].startsWith("--eval-budget=")) {
+                        NvyError.EVALUATION_BUDGET = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+                        continue;
+                    }
+                    if(args[i].startsWith("--passes=")) {
+                        NvyError.PASSES = args[i].substring(args[i].indexOf('=') + 1);
+                        continue;
+                    }
+                    if(args[i].startsWith("--mir-passes=")) {
+                        NvyError.MIR_PASSES = args[i].substring(args[i].indexOf('=') + 1);
+                        continue;
+                    }
+                    err.NV_STDERRF("Unknown flag %s%n", args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        if(NvyError.OPTIMIZATION_LEVEL == 0) NvyError.BUILD_SSA = false;
         if(output.endsWith(".tr")) NvyError.FINAL_TREE = true;
         if(output.endsWith(".flat")) flatten = true;
 
@@ -58,34 +119,233 @@ public class Test {
             System.exit(1);
         }
 
+        if(NvyError.WATCHING) {
+            watch(dir);
+            return;
+        }
+
+        compile(dir);
+    }
+
+    static void compile(String dir) throws IOException {
+        if(NvyError.INTERPRET) {
+            interpret(dir);
+            return;
+        }
+
         // Generate LLVM code
         String target_triple = "target triple = \"x86_64-pc-linux-gnu\"\n\n";
+        stats = new CompilationStats(input);
         List<String> llvmir = generateLLVM(input, dir);
         llvmir.add(0, target_triple);
 
+        // Measured from JVM start, so class loading and initialization are included
+        if(NvyError.STARTUP_TIME) {
+            long now = System.currentTimeMillis();
+            err.NV_STDOUTF("nvc > First byte of IR after %d ms%n", now - ManagementFactory.getRuntimeMXBean().getStartTime());
+        }
+
+        stats.begin("write");
         writeToFile(output + "_nvy_tmp.ll", llvmir, "");
+        stats.end();
+        if(NvyError.STATS) writeToFile(output + "_nvy_stats.json", List.of(stats.toJson()), "");
+    }
+
+    // --run and --run=jvm, the program's exit code becomes ours unless the compiler stays alive
+    static void interpret(String dir) throws IOException {
+        stats = new CompilationStats(input);
+        List<NASTNode> nn = analyze(input, dir);
+
+        stats.begin("interpret");
+        Interpreter interpreter = new Interpreter(nn);
+        int code = NvyError.JVM_BACKEND ? interpreter.runCompiled() : interpreter.run();
+        long time = stats.end();
+        if(NvyError.PROFILING) System.out.println("Interpreter phase: " + time/1_000_000.0);
+        if(NvyError.STATS) writeToFile(output + "_nvy_stats.json", List.of(stats.toJson()), "");
+
+        if(NvyError.WATCHING) err.NV_STDOUTF("nvc > Exited with code %d%n", code);
+        else System.exit(code);
+    }
+
+    /*
+        Keeps the compiler warm and recompiles whenever the source or one of its imports changes.
+        Editors save in bursts (truncate, write, rename), so events are collected until the directories are quiet.
+     */
+    static void watch(String dir) throws IOException {
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<>();
+        Set<Path> watched = new HashSet<>();
+        boolean affected = true;
+
+        while(true) {
+            if(affected) {
+                resetCompiler();
+                try {
+                    compile(dir);
+                    err.NV_STDOUTF("nvc > Compiled %s%n", input);
+                } catch (IOException | RuntimeException e) {
+                    err.NV_STDERRF("nvc > Compilation failed, waiting for changes%n");
+                }
+
+                // Imports may have changed since the last round
+                watched = watchedFiles(dir);
+                for(Path file : watched) {
+                    Path parent = file.getParent();
+                    if(directories.add(parent)) {
+                        parent.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    }
+                }
+            }
+
+            affected = false;
+            try {
+                WatchKey key = watcher.take();
+                while(key != null) {
+                    Path directory = (Path) key.watchable();
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW) affected = true;
+                        else if(watched.contains(directory.resolve((Path) event.context()))) affected = true;
+                    }
+                    key.reset();
+                    key = watcher.poll(WATCH_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                watcher.close();
+                return;
+            }
+        }
+    }
+
+    // The source and everything it imports, transitively
+    static Set<Path> watchedFiles(String dir) {
+        Set<Path> files = new HashSet<>();
+        files.add(Path.of(dir, input).toAbsolutePath().normalize());
+        for(String path : pre.getSourceImports()) {
+            files.add(Path.of(path).toAbsolutePath().normalize());
+        }
+        for(String path : pre.getInterfaceImports()) {
+            files.add(Path.of(path).toAbsolutePath().normalize());
+            // Editing the module makes its interface stale, the import then falls back to the source
+            String source = path.substring(0, path.length() - ModuleInterface.EXTENSION.length()) + ".nvy";
+            files.add(Path.of(source).toAbsolutePath().normalize());
+        }
+        return files;
+    }
 
+    // Fresh passes and emptied singletons, nothing may leak from the previous round
+    static void resetCompiler() {
+        llvm = new LLVMGenerator();
+        parse = new Parser();
+        errcheck = new ErrorChecker();
+        pre = new Preprocess();
+        cleanup = new ASTCleanup();
+        dde = new DeadDeclarationElimination();
+        evaluator = new ConstantEvaluator();
+        iface = new ModuleInterface();
+
+        VariableData.getInstance().reset();
+        ScopeData.getInstance().reset();
+        fdata.reset();
+        new LLVMUtils().reset();
+        new ParserUtils().resetForwardDepth();
     }
 
+    // Written next to the target and moved over it, so nothing ever reads a half written file
     static void writeToFile(String path, List<String> out, String aux) throws IOException {
-        File f = new File(path);
+        File f = new File(path + ".part");
         BufferedWriter writer = new BufferedWriter(new FileWriter(f));
         for(String s : out) {
             writer.write(s + aux);
         }
         writer.close();
+        Files.move(f.toPath(), Path.of(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     static List<String> generateLLVM(String inputPath, String dir) throws FileNotFoundException {
+        List<NASTNode> nn = analyze(inputPath, dir);
+        Map<String, String> fmap = pre.getFunctionNameMap();
+
+        /*Map<String, NodeType> fumap = parse.getReturnMap();
+        for(String s : fumap.keySet()) {
+            fdata.setReturnType(s, fumap.get(s));
+        }*/
+
+        // LLVM pass
+        stats.begin("codegen");
+        //llvm.setReturnMap(parse.getReturnMap());
+        //llvm.setFunctionParameters(parse.getFunctionParameters());
+        FunctionCache cache = null;
+        if(NvyError.INCREMENTAL) {
+            cache = new FunctionCache(output + "_nvy_cache");
+            cache.index(nn);
+            llvm.setFunctionCache(cache);
+        }
+
+        List<String> ll = llvm.compileLLVM(nn);
+
+        if(cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            err.NV_STDOUTF("nvc > Reused %d of %d functions%n", cache.getReused(), cache.getCompiled());
+        }
+
+        // Lowered through the mid-level IR, where SSA is built
+        MirModule module = MirModule.lift(ll);
+        MirPipeline mir = new MirPipeline(NvyError.OPTIMIZATION_LEVEL, NvyError.MIR_PASSES);
+        mir.run(module);
+        ll = module.lower();
+        for(MirPipeline.Result result : mir.getResults()) {
+            stats.pass(result.pass(), 1, result.nanos(), result.changes());
+        }
+        stats.size("mir_functions", module.getFunctions().size());
+        stats.size("mir_skipped_functions", module.getSkipped().size());
+        stats.size("counted_loops", module.getFunctions().stream().mapToLong(f -> f.getLoopInfo().countedLoops()).sum());
+        stats.size("known_trip_counts", module.getFunctions().stream().mapToLong(f -> f.getLoopInfo().knownTripCounts()).sum());
+
+        for(String s : llvm.getGlobalValues()) {
+            ll.add(0, s);
+        }
+
+        if(NvyError.EMIT_INTERFACE) {
+            try {
+                iface.write(output + ModuleInterface.EXTENSION, ModuleInterface.moduleName(dir + System.getProperty("file.separator") + inputPath), exported, fmap);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /*List<String> ll = llvm.compileLLVM(nn);
+        for(String s : llvm.getGlobals()) {
+            ll.add(0, s);
+        }*/
+
+        long time = stats.end();
+        if(NvyError.STATS) {
+            List<String> globals = llvm.getGlobalValues();
+            stats.size("ir_lines", ll.stream().mapToLong(s -> s.lines().count()).sum());
+            stats.size("globals", globals.size());
+            stats.size("string_constants", globals.stream().filter(s -> s.startsWith("@.str")).count());
+            stats.size("float_constants", globals.stream().filter(s -> s.startsWith("@global_inttof32")).count());
+        }
+        if(NvyError.PROFILING) System.out.println("LLVM Generation phase: " + time/1_000_000.0);
+        if(CHECKPOINTS) err.NV_TMP("Passed codegen");
+
+        return ll;
+    }
+
+    // Everything up to and including the optimization passes, shared by codegen and --run
+    static List<NASTNode> analyze(String inputPath, String dir) throws FileNotFoundException {
         File f = new File(dir + System.getProperty("file.separator") + inputPath);
         BufferedReader reader = new BufferedReader(new FileReader(f));
         List<String> list = new ArrayList<>(reader.lines().toList());
 
-        long start = 0, end = 0;
         // Preprocessor pass
-        if(NvyError.PROFILING) start = System.nanoTime();
+        stats.begin("preprocess");
         pre.removeInlineComments(list);
-        list = pre.resolveImports(inputPath, list);
+        list = pre.resolveImports(f.getPath(), list);
 
         if(output.endsWith("nvss")) {
             try {
@@ -98,21 +358,31 @@ public class Test {
 
         if(CHECKPOINTS) err.NV_TMP("Passed preprocessor");
         Map<String, String> fmap = pre.getFunctionNameMap();
-        if(NvyError.PROFILING) end = System.nanoTime();
-        if(NvyError.PROFILING) System.out.println("Preprocessor phase: " + (end - start)/1_000_000.0);
 
-        if(NvyError.PROFILING) start = System.nanoTime();
-        NodeStream in = lex.lex(list);
+        // Declarations from separately compiled modules
+        List<NASTNode> imported = new ArrayList<>();
+        for(String path : pre.getInterfaceImports()) {
+            imported.addAll(iface.read(path, fmap));
+        }
+        long time = stats.end();
+        if(NvyError.STATS) stats.size("lines", list.size());
+        if(NvyError.PROFILING) System.out.println("Preprocessor phase: " + time/1_000_000.0);
+
+        stats.begin("lex");
+        NodeStream in = Lexer.getInstance().lex(list);
         pre.preprocess(in);
         pre.resolveFunCalls(in);
 
-        if(NvyError.PROFILING) end = System.nanoTime();
-        if(NvyError.PROFILING) System.out.println("Lexer2 phase: " + (end - start)/1_000_000.0);
+        time = stats.end();
+        if(NvyError.STATS) stats.size("tokens", countTokens(in));
+        if(NvyError.PROFILING) System.out.println("Lexer2 phase: " + time/1_000_000.0);
         if(CHECKPOINTS) err.NV_TMP("Passed lexer");
 
 
         // Parser pass
-        if(NvyError.PROFILING) start = System.nanoTime();
+        stats.begin("parse");
+        // A module with an interface exports every function, main reaching them or not
+        parse.setLazyBodies(NvyError.LAZY_PARSING && !NvyError.EMIT_INTERFACE);
         List<NodeStream> parseList = parse.parseList(in);
 
         List<NASTNode> nn = new ArrayList<>();
@@ -121,8 +391,15 @@ public class Test {
             NASTNode parsedNode = parse.parse(l);
             nn.add(parsedNode);
         }
-        if(NvyError.PROFILING) end = System.nanoTime();
-        if(NvyError.PROFILING) System.out.println("Parser phase: " + (end - start)/1_000_000.0);
+        if(NvyError.LAZY_PARSING) parse.parseReachableBodies(nn, fmap);
+        imported = iface.withoutRedeclarations(imported, nn);
+        nn.addAll(0, imported);
+        time = stats.end();
+        if(NvyError.STATS) {
+            stats.size("declarations", nn.size());
+            stats.size("nodes", countNodes(nn));
+        }
+        if(NvyError.PROFILING) System.out.println("Parser phase: " + time/1_000_000.0);
         if(CHECKPOINTS) err.NV_TMP("Passed parser");
 
 
@@ -137,19 +414,50 @@ public class Test {
 
         // At this point, read flags and clean tree
 
-        if(NvyError.PROFILING) start = System.nanoTime();
+        stats.begin("validate");
         cleanup.resolveMangledNames(nn, fmap);
 
         // Validate tree
         errcheck.validateTree(nn);
 
+        // Global initializers become literals where they can be computed
+        evaluator.evaluate(nn);
+        if(NvyError.STATS) stats.size("constants_folded", evaluator.getFolded());
+
         // For single reference enforcer
         // if(!enf.checkReferences(nn)) System.exit(1);
 
-        if(NvyError.PROFILING) end = System.nanoTime();
-        if(NvyError.PROFILING) System.out.println("Validation phase: " + (end - start)/1_000_000.0);
+        // Everything this module defines, for its interface
+        exported = new ArrayList<>(nn);
+        exported.removeAll(imported);
+
+        // Remove everything main can't reach
+        if(NvyError.ELIMINATE_DECLARATIONS && !NvyError.EMIT_INTERFACE) {
+            nn = dde.eliminate(nn);
+            if(NvyError.REPORT_ELIMINATED) {
+                for(String s : dde.getRemoved()) err.NV_STDOUTF("nvc > Removed unused %s%n", s);
+            }
+        }
+
+        time = stats.end();
+        if(NvyError.STATS) {
+            stats.size("nodes", countNodes(nn));
+            stats.size("functions", nn.stream().filter(node -> node.getType() == NodeType.FUNCTION).count());
+        }
+        if(NvyError.PROFILING) System.out.println("Validation phase: " + time/1_000_000.0);
         if(CHECKPOINTS) err.NV_TMP("Passed validation");
 
+        // Optimization passes
+        stats.begin("optimize");
+        PassManager passes = new PassManager(NvyError.OPTIMIZATION_LEVEL, NvyError.PASSES);
+        passes.run(nn);
+        time = stats.end();
+        for(PassManager.Result result : passes.getResults()) {
+            stats.pass(result.pass(), result.round(), result.nanos(), result.changes());
+            if(NvyError.PROFILING) System.out.printf("    %s pass: %s, %d changes%n", result.pass(), result.nanos()/1_000_000.0, result.changes());
+        }
+        if(NvyError.PROFILING) System.out.println("Optimization phase: " + time/1_000_000.0);
+
         if(flatten) {
             for(NASTNode node : nn) {
                 List<String> flat = node.flatten();
@@ -164,30 +472,22 @@ public class Test {
             System.out.println(nn);
         }
 
-        /*Map<String, NodeType> fumap = parse.getReturnMap();
-        for(String s : fumap.keySet()) {
-            fdata.setReturnType(s, fumap.get(s));
-        }*/
-
-        // LLVM pass
-        if(NvyError.PROFILING) start = System.nanoTime();
-        //llvm.setReturnMap(parse.getReturnMap());
-        //llvm.setFunctionParameters(parse.getFunctionParameters());
-        List<String> ll = llvm.compileLLVM(nn);
+        return nn;
+    }
 
-        for(String s : llvm.getGlobalValues()) {
-            ll.add(0, s);
+    static long countTokens(NodeStream in) {
+        long count = 0;
+        for(NodeStream s = in.next(); s != null && s.getType() != NodeType.ENDOFSTREAM; s = s.next()) {
+            count++;
         }
+        return count;
+    }
 
-        /*List<String> ll = llvm.compileLLVM(nn);
-        for(String s : llvm.getGlobals()) {
-            ll.add(0, s);
-        }*/
-
-        if(NvyError.PROFILING) end = System.nanoTime();
-        if(NvyError.PROFILING) System.out.println("LLVM Generation phase: " + (end - start)/1_000_000.0);
-        if(CHECKPOINTS) err.NV_TMP("Passed codegen");
-
-        return ll;
+    static long countNodes(List<NASTNode> nodes) {
+        long count = 0;
+        for(NASTNode node : nodes) {
+            count += node.flattenNodes().size();
+        }
+        return count;
     }
 }
\ No newline at end of file
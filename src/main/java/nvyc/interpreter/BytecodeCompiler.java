@@ -0,0 +1,748 @@
+package nvyc.interpreter;
+
+import nvyc.data.NodeType;
+import nvyc.interpreter.ClassWriter.Code;
+import nvyc.interpreter.ClassWriter.Label;
+import nvyc.interpreter.Interpreter.Function;
+import nvyc.interpreter.Nodes.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+    Second backend next to LLVMGenerator, for --run=jvm. Compiles the tree the Interpreter lowered
+    into one hidden class, so HotSpot profiles and JIT compiles Nvy code like any Java method.
+
+        functions       static methods f<n> with primitive signatures, int32 is int, fp32 is float
+        locals          JVM locals, every frame slot gets its own
+        globals         static fields g<slot>
+        structs         Values.StructValue, arrays are primitive arrays like in the interpreter
+        natives         the bindings in Natives, kept with struct layouts in the constants field
+
+    Types are already resolved and every conversion is an explicit node, so this is a direct walk.
+
+ */
+final class BytecodeCompiler {
+
+    static final String NAME = "nvyc/interpreter/NvyProgram";
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRUCT = "nvyc/interpreter/Values$StructValue";
+    private static final String LAYOUT = "nvyc/interpreter/Values$Layout";
+    private static final String CELL = "nvyc/interpreter/Values$Cell";
+    private static final String BINDING = "nvyc/interpreter/Natives$Binding";
+
+    // Opcodes, typed ones are the int variant and offset by typeOffset
+    private static final int ACONST_NULL = 1, ICONST_0 = 3, LCONST_0 = 9, FCONST_0 = 11, DCONST_0 = 14;
+    private static final int BIPUSH = 16, SIPUSH = 17, LDC_W = 19, LDC2_W = 20;
+    private static final int ILOAD = 21, IALOAD = 46, LALOAD = 47, FALOAD = 48, DALOAD = 49, AALOAD = 50, BALOAD = 51;
+    private static final int ISTORE = 54, IASTORE = 79, LASTORE = 80, FASTORE = 81, DASTORE = 82, AASTORE = 83, BASTORE = 84;
+    private static final int POP = 87, POP2 = 88, DUP = 89;
+    private static final int IADD = 96, ISUB = 100, IMUL = 104, IDIV = 108, IREM = 112, INEG = 116;
+    private static final int ISHL = 120, ISHR = 122, IUSHR = 124, IAND = 126, IOR = 128, IXOR = 130;
+    private static final int I2L = 133, I2F = 134, I2D = 135, L2I = 136, L2F = 137, L2D = 138;
+    private static final int F2I = 139, F2L = 140, F2D = 141, D2I = 142, D2L = 143, D2F = 144;
+    private static final int LCMP = 148, FCMPL = 149, FCMPG = 150, DCMPL = 151, DCMPG = 152;
+    private static final int IFEQ = 153, IFNE = 154, IFLT = 155, IFGE = 156, IFGT = 157, IFLE = 158;
+    private static final int IF_ICMPEQ = 159, IF_ICMPNE = 160, IF_ICMPLT = 161, IF_ICMPGE = 162, IF_ICMPGT = 163, IF_ICMPLE = 164;
+    private static final int IF_ACMPEQ = 165, IF_ACMPNE = 166;
+    private static final int GOTO = 167, IRETURN = 172, RETURN = 177, IFNULL = 198, IFNONNULL = 199;
+    private static final int GETSTATIC = 178, PUTSTATIC = 179, GETFIELD = 180, PUTFIELD = 181;
+    private static final int INVOKEVIRTUAL = 182, INVOKESPECIAL = 183, INVOKESTATIC = 184, INVOKEINTERFACE = 185;
+    private static final int NEW = 187, NEWARRAY = 188, ANEWARRAY = 189, CHECKCAST = 192, WIDE = 196;
+
+    private final ClassWriter cw = new ClassWriter(NAME);
+    private final Map<Function, String> methods = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final List<Kind> globals;
+
+    // State of the method being compiled
+    private Code code;
+    private Function function;
+    private int[] longLocals;
+    private int[] doubleLocals;
+    private int[] refLocals;
+
+    BytecodeCompiler(List<Kind> globals) {
+        this.globals = globals;
+    }
+
+    /*
+        Compiles every function and the global initializers, defines the class and returns init()
+        and the entry point. Throws IllegalStateException if a method exceeds what a class file allows.
+     */
+    MethodHandle[] compile(List<Function> functions, List<Stmt> initializers, Function main) throws ReflectiveOperationException {
+        for(Function f : functions) methods.put(f, "f" + methods.size());
+
+        cw.addField(ClassWriter.ACC_STATIC, "constants", "[Ljava/lang/Object;");
+        for(int slot = 0; slot < globals.size(); slot++) {
+            cw.addField(ClassWriter.ACC_STATIC, "g" + slot, descriptor(globals.get(slot)));
+        }
+
+        initializer(initializers);
+        for(Function f : functions) {
+            if(f.body != null) method(f);
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(cw.toByteArray(), true);
+        Class<?> program = lookup.lookupClass();
+        Field field = program.getDeclaredField("constants");
+        field.setAccessible(true);
+        field.set(null, constants.toArray());
+
+        MethodHandle init = lookup.findStatic(program, "init", MethodType.methodType(void.class));
+        MethodHandle entry = lookup.findStatic(program, methods.get(main), methodType(main));
+        return new MethodHandle[] {init, entry};
+    }
+
+    private void initializer(List<Stmt> initializers) {
+        code = new Code();
+        function = null;
+        for(Stmt s : initializers) stmt(s);
+        code.op(RETURN, 0);
+        cw.addMethod(ClassWriter.ACC_STATIC, "init", "()V", code);
+    }
+
+    // Parameters take the first locals in order, every other slot follows
+    private void method(Function f) {
+        code = new Code();
+        function = f;
+        longLocals = new int[f.longs];
+        doubleLocals = new int[f.doubles];
+        refLocals = new int[f.refs];
+        boolean[] placed = new boolean[f.longs + f.doubles + f.refs];
+
+        int next = 0;
+        for(int i = 0; i < f.params.length; i++) {
+            int slot = f.paramSlots[i];
+            switch(f.params[i]) {
+                case I32, I64 -> {
+                    longLocals[slot] = next;
+                    placed[slot] = true;
+                }
+                case F32, F64 -> {
+                    doubleLocals[slot] = next;
+                    placed[f.longs + slot] = true;
+                }
+                default -> {
+                    refLocals[slot] = next;
+                    placed[f.longs + f.doubles + slot] = true;
+                }
+            }
+            next += words(f.params[i]);
+        }
+        for(int slot = 0; slot < f.longs; slot++) {
+            if(placed[slot]) continue;
+            longLocals[slot] = next;
+            next += words(f.slotKinds[slot]);
+        }
+        for(int slot = 0; slot < f.doubles; slot++) {
+            if(placed[f.longs + slot]) continue;
+            doubleLocals[slot] = next;
+            next += words(f.slotKinds[f.longs + slot]);
+        }
+        for(int slot = 0; slot < f.refs; slot++) {
+            if(placed[f.longs + f.doubles + slot]) continue;
+            refLocals[slot] = next++;
+        }
+        code.maxLocals = next;
+
+        // Frames start out zeroed, the verifier also wants every local stored before it's read
+        for(int slot = 0; slot < f.longs; slot++) {
+            if(placed[slot]) continue;
+            zero(f.slotKinds[slot]);
+            local(ISTORE, f.slotKinds[slot], longLocals[slot]);
+        }
+        for(int slot = 0; slot < f.doubles; slot++) {
+            if(placed[f.longs + slot]) continue;
+            zero(f.slotKinds[f.longs + slot]);
+            local(ISTORE, f.slotKinds[f.longs + slot], doubleLocals[slot]);
+        }
+        for(int slot = 0; slot < f.refs; slot++) {
+            if(placed[f.longs + f.doubles + slot]) continue;
+            zero(Kind.REF);
+            local(ISTORE, Kind.REF, refLocals[slot]);
+        }
+
+        stmt(f.body);
+        defaultReturn(f.returns);
+        cw.addMethod(ClassWriter.ACC_STATIC, methods.get(f), descriptor(f), code);
+    }
+
+    // -----------------------------------------
+    // |              STATEMENTS               |
+    // -----------------------------------------
+
+    private void stmt(Stmt s) {
+        if(s instanceof Block b) {
+            for(Stmt inner : b.body) stmt(inner);
+        } else if(s instanceof Eval e) {
+            expr(e.value);
+            pop(e.value.kind);
+        } else if(s instanceof StoreLong st) {
+            expr(st.value);
+            local(ISTORE, st.value.kind, longLocals[st.slot]);
+        } else if(s instanceof StoreDouble st) {
+            expr(st.value);
+            local(ISTORE, st.value.kind, doubleLocals[st.slot]);
+        } else if(s instanceof StoreRef st) {
+            expr(st.value);
+            local(ISTORE, Kind.REF, refLocals[st.slot]);
+        } else if(s instanceof StoreGlobal st) {
+            expr(st.value);
+            code.opShort(PUTSTATIC, -words(st.value.kind), cw.field(NAME, "g" + st.slot, descriptor(globals.get(st.slot))));
+        } else if(s instanceof NewCell c) {
+            code.opShort(NEW, 1, cw.classRef(CELL));
+            code.op(DUP, 1);
+            code.opShort(INVOKESPECIAL, -1, cw.method(CELL, "<init>", "()V"));
+            // Global cells are created by the initializers, which have no locals
+            if(function == null) code.opShort(PUTSTATIC, -1, cw.field(NAME, "g" + c.slot, descriptor(Kind.REF)));
+            else local(ISTORE, Kind.REF, refLocals[c.slot]);
+        } else if(s instanceof StoreCell st) {
+            expr(st.cell);
+            code.opShort(CHECKCAST, 0, cw.classRef(CELL));
+            expr(st.value);
+            switch(st.value.kind) {
+                case I32 -> code.op(I2L, 1);
+                case F32 -> code.op(F2D, 1);
+                default -> {}
+            }
+            code.opShort(PUTFIELD, -1 - storedWords(st.value.kind), cellField(st.value.kind));
+        } else if(s instanceof ArrayStore st) {
+            expr(st.array);
+            code.opShort(CHECKCAST, 0, cw.classRef(arrayDescriptor(st.element)));
+            expr(st.index);
+            expr(st.value);
+            code.op(arrayOp(st.element, true), -2 - words(st.value.kind));
+        } else if(s instanceof MemberStore st) {
+            expr(st.struct);
+            code.opShort(CHECKCAST, 0, cw.classRef(STRUCT));
+            if(st.value.kind == Kind.REF) {
+                code.opShort(GETFIELD, 0, cw.field(STRUCT, "refs", "[Ljava/lang/Object;"));
+                pushInt(st.index);
+                expr(st.value);
+                code.op(AASTORE, -3);
+            } else {
+                code.opShort(GETFIELD, 0, cw.field(STRUCT, "fields", "[J"));
+                pushInt(st.index);
+                expr(st.value);
+                switch(st.value.kind) {
+                    case I32 -> code.op(I2L, 1);
+                    case F32 -> {
+                        code.op(F2D, 1);
+                        code.opShort(INVOKESTATIC, 0, cw.method("java/lang/Double", "doubleToRawLongBits", "(D)J"));
+                    }
+                    case F64 -> code.opShort(INVOKESTATIC, 0, cw.method("java/lang/Double", "doubleToRawLongBits", "(D)J"));
+                    default -> {}
+                }
+                code.op(LASTORE, -4);
+            }
+        } else if(s instanceof If i) {
+            Label otherwise = new Label();
+            jumpIfFalse(i.condition, otherwise);
+            stmt(i.then);
+            // Ifs from the tree have no else, the code after them follows in the enclosing block
+            if(i.otherwise instanceof Block b && b.body.length == 0) {
+                code.mark(otherwise);
+            } else {
+                Label end = new Label();
+                code.jump(GOTO, 0, end);
+                code.mark(otherwise);
+                stmt(i.otherwise);
+                code.mark(end);
+            }
+        } else if(s instanceof For f) {
+            Label loop = new Label();
+            Label end = new Label();
+            stmt(f.init);
+            code.mark(loop);
+            jumpIfFalse(f.condition, end);
+            stmt(f.body);
+            stmt(f.step);
+            code.jump(GOTO, 0, loop);
+            code.mark(end);
+        } else if(s instanceof Return r) {
+            Kind returns = function == null ? Kind.VOID : function.returns;
+            if(r.value == null || returns == Kind.VOID) {
+                defaultReturn(returns);
+            } else {
+                expr(r.value);
+                code.op(IRETURN + typeOffset(returns), -words(returns));
+            }
+        } else {
+            throw new IllegalStateException("cannot compile " + s.getClass().getSimpleName());
+        }
+    }
+
+    // Falling off the end returns zero, like the interpreter's untouched return fields
+    private void defaultReturn(Kind kind) {
+        if(kind == Kind.VOID) {
+            code.op(RETURN, 0);
+            return;
+        }
+        zero(kind);
+        code.op(IRETURN + typeOffset(kind), -words(kind));
+    }
+
+    // -----------------------------------------
+    // |              EXPRESSIONS              |
+    // -----------------------------------------
+
+    // Leaves the value on the stack as the JVM type of e.kind, nothing for void
+    private void expr(Expr e) {
+        if(e instanceof LongConst c) {
+            long v = c.value;
+            if(c.kind == Kind.I32) pushInt((int) v);
+            else if(v == 0 || v == 1) code.op(LCONST_0 + (int) v, 2);
+            else code.opShort(LDC2_W, 2, cw.longInteger(v));
+        } else if(e instanceof DoubleConst c) {
+            double v = c.value;
+            if(c.kind == Kind.F32) code.opShort(LDC_W, 1, cw.floating((float) v));
+            else code.opShort(LDC2_W, 2, cw.doubleFloating(v));
+        } else if(e instanceof RefConst c) {
+            Object v = c.value;
+            if(v == null) code.op(ACONST_NULL, 1);
+            else if(v instanceof String s) code.opShort(LDC_W, 1, cw.string(s));
+            else constant(v, OBJECT);
+        } else if(e instanceof LocalLong l) {
+            local(ILOAD, l.kind, longLocals[l.slot]);
+        } else if(e instanceof LocalDouble l) {
+            local(ILOAD, l.kind, doubleLocals[l.slot]);
+        } else if(e instanceof LocalRef l) {
+            local(ILOAD, Kind.REF, refLocals[l.slot]);
+        } else if(e instanceof GlobalLong g) {
+            getGlobal(g.slot);
+        } else if(e instanceof GlobalDouble g) {
+            getGlobal(g.slot);
+        } else if(e instanceof GlobalRef g) {
+            getGlobal(g.slot);
+        } else if(e instanceof Deref d) {
+            expr(d.cell);
+            code.opShort(CHECKCAST, 0, cw.classRef(CELL));
+            code.opShort(GETFIELD, storedWords(d.kind) - 1, cellField(d.kind));
+            if(d.kind == Kind.I32) code.op(L2I, -1);
+            else if(d.kind == Kind.F32) code.op(D2F, -1);
+        } else if(e instanceof Narrow n) {
+            expr(n.value);
+            code.op(L2I, -1);
+        } else if(e instanceof Widen w) {
+            expr(w.value);
+            code.op(w.kind == Kind.I64 ? I2L : F2D, 1);
+        } else if(e instanceof RoundFloat r) {
+            expr(r.value);
+            code.op(D2F, -1);
+        } else if(e instanceof IntToFloat c) {
+            expr(c.value);
+            boolean wide = c.value.kind == Kind.I64;
+            int opcode = c.kind == Kind.F32 ? (wide ? L2F : I2F) : (wide ? L2D : I2D);
+            code.op(opcode, words(c.kind) - words(c.value.kind));
+        } else if(e instanceof FloatToInt c) {
+            expr(c.value);
+            boolean wide = c.value.kind == Kind.F64;
+            int opcode = c.kind == Kind.I32 ? (wide ? D2I : F2I) : (wide ? D2L : F2L);
+            code.op(opcode, words(c.kind) - words(c.value.kind));
+        } else if(e instanceof CopyStruct c) {
+            expr(c.value);
+            code.opShort(CHECKCAST, 0, cw.classRef(STRUCT));
+            code.opShort(INVOKEVIRTUAL, 0, cw.method(STRUCT, "copy", "()L" + STRUCT + ";"));
+        } else if(e instanceof LongBinary b) {
+            binary(b.kind, b.op, b.lhs, b.rhs);
+        } else if(e instanceof DoubleBinary b) {
+            binary(b.kind, b.op, b.lhs, b.rhs);
+        } else if(e instanceof Compare || e instanceof Logic) {
+            Label no = new Label();
+            Label end = new Label();
+            jumpIfFalse(e, no);
+            pushInt(1);
+            code.jump(GOTO, 0, end);
+            code.mark(no);
+            code.drop(1);
+            pushInt(0);
+            code.mark(end);
+        } else if(e instanceof Unary u) {
+            expr(u.value);
+            if(u.op == NodeType.SWITCHSIGN) {
+                code.op(INEG + typeOffset(u.kind), 0);
+            } else if(u.kind == Kind.I32) {
+                pushInt(-1);
+                code.op(IXOR, -1);
+            } else {
+                code.opShort(LDC2_W, 2, cw.longInteger(-1));
+                code.op(IXOR + 1, -2);
+            }
+        } else if(e instanceof NewStruct n) {
+            code.opShort(NEW, 1, cw.classRef(STRUCT));
+            code.op(DUP, 1);
+            constant(n.layout, LAYOUT);
+            code.opShort(INVOKESPECIAL, -2, cw.method(STRUCT, "<init>", "(L" + LAYOUT + ";)V"));
+        } else if(e instanceof NewArray n) {
+            expr(n.size);
+            switch(n.element) {
+                case INT32_T, BOOL_T -> code.op(NEWARRAY, 0, 10);
+                case INT64_T -> code.op(NEWARRAY, 0, 11);
+                case FP32_T -> code.op(NEWARRAY, 0, 6);
+                case FP64_T -> code.op(NEWARRAY, 0, 7);
+                case CHAR_T -> code.op(NEWARRAY, 0, 8);
+                default -> code.opShort(ANEWARRAY, 0, cw.classRef(OBJECT));
+            }
+        } else if(e instanceof ArrayLoad a) {
+            expr(a.array);
+            code.opShort(CHECKCAST, 0, cw.classRef(arrayDescriptor(a.element)));
+            expr(a.index);
+            code.op(arrayOp(a.element, false), words(a.kind) - 2);
+        } else if(e instanceof MemberLoad m) {
+            expr(m.struct);
+            code.opShort(CHECKCAST, 0, cw.classRef(STRUCT));
+            if(m.kind == Kind.REF) {
+                code.opShort(GETFIELD, 0, cw.field(STRUCT, "refs", "[Ljava/lang/Object;"));
+                pushInt(m.index);
+                code.op(AALOAD, -1);
+            } else {
+                code.opShort(GETFIELD, 0, cw.field(STRUCT, "fields", "[J"));
+                pushInt(m.index);
+                code.op(LALOAD, 0);
+                switch(m.kind) {
+                    case I32 -> code.op(L2I, -1);
+                    case F32 -> {
+                        code.opShort(INVOKESTATIC, 0, cw.method("java/lang/Double", "longBitsToDouble", "(J)D"));
+                        code.op(D2F, -1);
+                    }
+                    case F64 -> code.opShort(INVOKESTATIC, 0, cw.method("java/lang/Double", "longBitsToDouble", "(J)D"));
+                    default -> {}
+                }
+            }
+        } else if(e instanceof Call c) {
+            int words = 0;
+            for(Expr arg : c.args) {
+                expr(arg);
+                words += words(arg.kind);
+            }
+            code.opShort(INVOKESTATIC, words(c.kind) - words, cw.method(NAME, methods.get(c.target), descriptor(c.target)));
+        } else if(e instanceof NativeCall c) {
+            nativeCall(c);
+        } else {
+            throw new IllegalStateException("cannot compile " + e.getClass().getSimpleName());
+        }
+    }
+
+    private void binary(Kind kind, NodeType op, Expr lhs, Expr rhs) {
+        expr(lhs);
+        expr(rhs);
+        int t = typeOffset(kind);
+        int w = words(kind);
+        switch(op) {
+            case ADD -> code.op(IADD + t, -w);
+            case SUB -> code.op(ISUB + t, -w);
+            case MUL -> code.op(IMUL + t, -w);
+            case DIV -> code.op(IDIV + t, -w);
+            case MODULO -> code.op(IREM + t, -w);
+            case BITAND -> code.op(IAND + t, -w);
+            case BITOR -> code.op(IOR + t, -w);
+            case BITXOR -> code.op(IXOR + t, -w);
+            case ARITHLEFTSHIFT, ARITHRIGHTSHIFT, LOGICRIGHTSHIFT -> {
+                // Shift counts are ints on the JVM
+                if(kind == Kind.I64) code.op(L2I, -1);
+                int base = op == NodeType.ARITHLEFTSHIFT ? ISHL : op == NodeType.ARITHRIGHTSHIFT ? ISHR : IUSHR;
+                code.op(base + t, -1);
+            }
+            default -> throw new IllegalStateException(op.toString());
+        }
+    }
+
+    // Arguments are boxed into an Object[] like the interpreter does, the result is unboxed by kind
+    private void nativeCall(NativeCall c) {
+        constant(c.binding, BINDING);
+        pushInt(c.args.length);
+        code.opShort(ANEWARRAY, 0, cw.classRef(OBJECT));
+        for(int i = 0; i < c.args.length; i++) {
+            Expr arg = c.args[i];
+            code.op(DUP, 1);
+            pushInt(i);
+            expr(arg);
+            switch(arg.kind) {
+                case I32 -> code.opShort(INVOKESTATIC, 0, cw.method("java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;"));
+                case I64 -> code.opShort(INVOKESTATIC, -1, cw.method("java/lang/Long", "valueOf", "(J)Ljava/lang/Long;"));
+                case F32 -> {
+                    code.op(F2D, 1);
+                    code.opShort(INVOKESTATIC, -1, cw.method("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"));
+                }
+                case F64 -> code.opShort(INVOKESTATIC, -1, cw.method("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"));
+                default -> {}
+            }
+            code.op(AASTORE, -3);
+        }
+        code.opShort(INVOKEINTERFACE, -1, cw.interfaceMethod(BINDING, "call", "([Ljava/lang/Object;)Ljava/lang/Object;"));
+        code.u1(2);
+        code.u1(0);
+
+        switch(c.kind) {
+            case VOID -> code.op(POP, -1);
+            case REF -> {}
+            default -> {
+                code.opShort(CHECKCAST, 0, cw.classRef("java/lang/Number"));
+                String unbox = switch(c.kind) {
+                    case I32 -> "intValue()I";
+                    case I64 -> "longValue()J";
+                    case F32 -> "floatValue()F";
+                    default -> "doubleValue()D";
+                };
+                int split = unbox.indexOf('(');
+                code.opShort(INVOKEVIRTUAL, words(c.kind) - 1, cw.method("java/lang/Number", unbox.substring(0, split), unbox.substring(split)));
+            }
+        }
+    }
+
+    // -----------------------------------------
+    // |               BRANCHES                |
+    // -----------------------------------------
+
+    // Comparisons branch directly instead of materializing 0 or 1, NaN makes every ordered comparison false
+    private void jumpIfFalse(Expr condition, Label target) {
+        if(condition instanceof Compare c) {
+            compare(c, target, true);
+        } else if(condition instanceof Logic l && l.and) {
+            jumpIfFalse(l.lhs, target);
+            jumpIfFalse(l.rhs, target);
+        } else if(condition instanceof Logic l) {
+            Label yes = new Label();
+            jumpIfTrue(l.lhs, yes);
+            jumpIfFalse(l.rhs, target);
+            code.mark(yes);
+        } else {
+            test(condition);
+            code.jump(condition.kind == Kind.REF ? IFNULL : IFEQ, -1, target);
+        }
+    }
+
+    private void jumpIfTrue(Expr condition, Label target) {
+        if(condition instanceof Compare c) {
+            compare(c, target, false);
+        } else if(condition instanceof Logic l && l.and) {
+            Label no = new Label();
+            jumpIfFalse(l.lhs, no);
+            jumpIfTrue(l.rhs, target);
+            code.mark(no);
+        } else if(condition instanceof Logic l) {
+            jumpIfTrue(l.lhs, target);
+            jumpIfTrue(l.rhs, target);
+        } else {
+            test(condition);
+            code.jump(condition.kind == Kind.REF ? IFNONNULL : IFNE, -1, target);
+        }
+    }
+
+    // Leaves an int that is zero exactly when the value is false, references are left as they are
+    private void test(Expr value) {
+        expr(value);
+        switch(value.kind) {
+            case I64 -> {
+                code.op(LCONST_0, 2);
+                code.op(LCMP, -3);
+            }
+            case F32 -> {
+                code.op(FCONST_0, 1);
+                code.op(FCMPL, -1);
+            }
+            case F64 -> {
+                code.op(DCONST_0, 2);
+                code.op(DCMPL, -3);
+            }
+            default -> {}
+        }
+    }
+
+    private void compare(Compare c, Label target, boolean negate) {
+        expr(c.lhs);
+        expr(c.rhs);
+        NodeType op = negate ? inverse(c.op) : c.op;
+        Kind kind = c.lhs.kind;
+
+        if(kind == Kind.REF) {
+            if(op != NodeType.EQ && op != NodeType.NEQ) throw new IllegalStateException("ordering of references");
+            code.jump(op == NodeType.EQ ? IF_ACMPEQ : IF_ACMPNE, -2, target);
+            return;
+        }
+        if(kind == Kind.I32) {
+            int opcode = switch(op) {
+                case EQ -> IF_ICMPEQ;
+                case NEQ -> IF_ICMPNE;
+                case LT -> IF_ICMPLT;
+                case LTE -> IF_ICMPLE;
+                case GT -> IF_ICMPGT;
+                default -> IF_ICMPGE;
+            };
+            code.jump(opcode, -2, target);
+            return;
+        }
+
+        // For a negated LT the jump must be taken on NaN, so the NaN result has to land on the jumping side
+        boolean nanHigh = switch(c.op) {
+            case LT, LTE -> true;
+            default -> false;
+        };
+        switch(kind) {
+            case I64 -> code.op(LCMP, -3);
+            case F32 -> code.op(nanHigh ? FCMPG : FCMPL, -1);
+            case F64 -> code.op(nanHigh ? DCMPG : DCMPL, -3);
+            default -> throw new IllegalStateException("comparison of " + kind + " values");
+        }
+        int opcode = switch(op) {
+            case EQ -> IFEQ;
+            case NEQ -> IFNE;
+            case LT -> IFLT;
+            case LTE -> IFLE;
+            case GT -> IFGT;
+            default -> IFGE;
+        };
+        code.jump(opcode, -1, target);
+    }
+
+    private static NodeType inverse(NodeType op) {
+        return switch(op) {
+            case EQ -> NodeType.NEQ;
+            case NEQ -> NodeType.EQ;
+            case LT -> NodeType.GTE;
+            case LTE -> NodeType.GT;
+            case GT -> NodeType.LTE;
+            default -> NodeType.LT;
+        };
+    }
+
+    // -----------------------------------------
+    // |                HELPERS                |
+    // -----------------------------------------
+
+    private void pushInt(int v) {
+        if(v >= -1 && v <= 5) code.op(ICONST_0 + v, 1);
+        else if(v == (byte) v) code.op(BIPUSH, 1, v & 0xFF);
+        else if(v == (short) v) code.opShort(SIPUSH, 1, v & 0xFFFF);
+        else code.opShort(LDC_W, 1, cw.integer(v));
+    }
+
+    private void zero(Kind kind) {
+        switch(kind) {
+            case I32 -> pushInt(0);
+            case I64 -> code.op(LCONST_0, 2);
+            case F32 -> code.op(FCONST_0, 1);
+            case F64 -> code.op(DCONST_0, 2);
+            default -> code.op(ACONST_NULL, 1);
+        }
+    }
+
+    // Layouts and bindings can't be constants in the class file, they're indexed out of the constants field
+    private void constant(Object value, String type) {
+        int index = constants.indexOf(value);
+        if(index < 0) {
+            index = constants.size();
+            constants.add(value);
+        }
+        code.opShort(GETSTATIC, 1, cw.field(NAME, "constants", "[Ljava/lang/Object;"));
+        pushInt(index);
+        code.op(AALOAD, -1);
+        if(!type.equals(OBJECT)) code.opShort(CHECKCAST, 0, cw.classRef(type));
+    }
+
+    private void getGlobal(int slot) {
+        Kind kind = globals.get(slot);
+        code.opShort(GETSTATIC, words(kind), cw.field(NAME, "g" + slot, descriptor(kind)));
+    }
+
+    // ILOAD or ISTORE, typed by kind
+    private void local(int base, Kind kind, int index) {
+        int opcode = base + typeOffset(kind);
+        int delta = base == ILOAD ? words(kind) : -words(kind);
+        if(index > 255) {
+            code.u1(WIDE);
+            code.opShort(opcode, delta, index);
+        } else {
+            code.op(opcode, delta, index);
+        }
+    }
+
+    private void pop(Kind kind) {
+        switch(words(kind)) {
+            case 1 -> code.op(POP, -1);
+            case 2 -> code.op(POP2, -2);
+            default -> {}
+        }
+    }
+
+    private static int typeOffset(Kind kind) {
+        return switch(kind) {
+            case I32 -> 0;
+            case I64 -> 1;
+            case F32 -> 2;
+            case F64 -> 3;
+            default -> 4;
+        };
+    }
+
+    private static int words(Kind kind) {
+        return switch(kind) {
+            case I64, F64 -> 2;
+            case VOID -> 0;
+            default -> 1;
+        };
+    }
+
+    // Cells store int32 as long and fp32 as double, like frames
+    private static int storedWords(Kind kind) {
+        return kind == Kind.REF ? 1 : 2;
+    }
+
+    private int cellField(Kind kind) {
+        if(kind.isLong()) return cw.field(CELL, "l", "J");
+        if(kind.isDouble()) return cw.field(CELL, "d", "D");
+        return cw.field(CELL, "ref", "Ljava/lang/Object;");
+    }
+
+    private static String arrayDescriptor(NodeType element) {
+        return switch(element) {
+            case INT32_T, BOOL_T -> "[I";
+            case INT64_T -> "[J";
+            case FP32_T -> "[F";
+            case FP64_T -> "[D";
+            case CHAR_T -> "[B";
+            default -> "[Ljava/lang/Object;";
+        };
+    }
+
+    private static int arrayOp(NodeType element, boolean store) {
+        return switch(element) {
+            case INT32_T, BOOL_T -> store ? IASTORE : IALOAD;
+            case INT64_T -> store ? LASTORE : LALOAD;
+            case FP32_T -> store ? FASTORE : FALOAD;
+            case FP64_T -> store ? DASTORE : DALOAD;
+            case CHAR_T -> store ? BASTORE : BALOAD;
+            default -> store ? AASTORE : AALOAD;
+        };
+    }
+
+    private static String descriptor(Kind kind) {
+        return switch(kind) {
+            case I32 -> "I";
+            case I64 -> "J";
+            case F32 -> "F";
+            case F64 -> "D";
+            case VOID -> "V";
+            default -> "Ljava/lang/Object;";
+        };
+    }
+
+    private static String descriptor(Function f) {
+        StringBuilder b = new StringBuilder("(");
+        for(Kind kind : f.params) b.append(descriptor(kind));
+        return b.append(')').append(descriptor(f.returns)).toString();
+    }
+
+    private static MethodType methodType(Function f) {
+        return MethodType.fromMethodDescriptorString(descriptor(f), BytecodeCompiler.class.getClassLoader());
+    }
+}
@@ -0,0 +1,302 @@
+package nvyc.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+    Just enough of the class file format for BytecodeCompiler: a constant pool, static fields and
+    static methods with a Code attribute.
+
+    Classes are written as version 49 so the verifier infers types itself and no StackMapTable is
+    needed, the JDK this builds on has no class file API to compute them.
+
+ */
+final class ClassWriter {
+
+    static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int poolSize = 1;
+
+    private final String name;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassWriter(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // -----------------------------------------
+    // |             CONSTANT POOL             |
+    // -----------------------------------------
+
+    private int constant(String key, int slots, IOWriter writer) {
+        Integer index = constants.get(key);
+        if(index != null) return index;
+        try {
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        index = poolSize;
+        poolSize += slots;
+        if(poolSize > 0xFFFF) throw new IllegalStateException("constant pool overflow");
+        constants.put(key, index);
+        return index;
+    }
+
+    private interface IOWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String s) {
+        return constant("U" + s, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(s);
+        });
+    }
+
+    int classRef(String internalName) {
+        int nameIndex = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    int string(String s) {
+        int value = utf8(s);
+        return constant("S" + s, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(value);
+        });
+    }
+
+    int integer(int v) {
+        return constant("I" + v, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(v);
+        });
+    }
+
+    int floating(float v) {
+        return constant("F" + Float.floatToRawIntBits(v), 1, out -> {
+            out.writeByte(4);
+            out.writeFloat(v);
+        });
+    }
+
+    int longInteger(long v) {
+        return constant("J" + v, 2, out -> {
+            out.writeByte(5);
+            out.writeLong(v);
+        });
+    }
+
+    int doubleFloating(double v) {
+        return constant("D" + Double.doubleToRawLongBits(v), 2, out -> {
+            out.writeByte(6);
+            out.writeDouble(v);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int c = classRef(owner);
+        int nt = nameAndType(name, descriptor);
+        return constant(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    int field(String owner, String name, String descriptor) {
+        return member(9, owner, name, descriptor);
+    }
+
+    int method(String owner, String name, String descriptor) {
+        return member(10, owner, name, descriptor);
+    }
+
+    int interfaceMethod(String owner, String name, String descriptor) {
+        return member(11, owner, name, descriptor);
+    }
+
+    // -----------------------------------------
+    // |           FIELDS AND METHODS          |
+    // -----------------------------------------
+
+    void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        byte[] body = code.toByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + body.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);  // exception table
+            out.writeShort(0);  // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolSize);
+            out.write(pool.toByteArray());
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);  // interfaces
+            out.writeShort(fields.size());
+            for(byte[] f : fields) out.write(f);
+            out.writeShort(methods.size());
+            for(byte[] m : methods) out.write(m);
+            out.writeShort(0);  // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // -----------------------------------------
+    // |                 CODE                  |
+    // -----------------------------------------
+
+    static final class Label {
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    // Bytecode of one method, the operand stack depth is tracked to size max_stack
+    static final class Code {
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int depth;
+        int maxStack;
+        int maxLocals;
+
+        int position() {
+            return code.size();
+        }
+
+        // An instruction changing the operand stack by delta
+        void op(int opcode, int delta) {
+            code.write(opcode);
+            stack(delta);
+        }
+
+        void op(int opcode, int delta, int u1) {
+            op(opcode, delta);
+            code.write(u1);
+        }
+
+        void opShort(int opcode, int delta, int u2) {
+            op(opcode, delta);
+            code.write(u2 >> 8);
+            code.write(u2);
+        }
+
+        void stack(int delta) {
+            depth += delta;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        // Values left on the stack on one path of a branch that the other path replaces
+        void drop(int slots) {
+            depth -= slots;
+        }
+
+        void u1(int v) {
+            code.write(v);
+        }
+
+        void u2(int v) {
+            code.write(v >> 8);
+            code.write(v);
+        }
+
+        void jump(int opcode, int delta, Label target) {
+            target.jumps.add(code.size());
+            if(!labels.contains(target)) labels.add(target);
+            opShort(opcode, delta, 0);
+        }
+
+        void mark(Label label) {
+            label.position = code.size();
+            if(!labels.contains(label)) labels.add(label);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = code.toByteArray();
+            if(bytes.length > 0xFFFF) throw new IllegalStateException("method too large");
+            for(Label label : labels) {
+                for(int at : label.jumps) {
+                    int offset = label.position - at;
+                    if(offset != (short) offset) throw new IllegalStateException("branch too far");
+                    bytes[at + 1] = (byte) (offset >> 8);
+                    bytes[at + 2] = (byte) offset;
+                }
+            }
+            return bytes;
+        }
+    }
+}
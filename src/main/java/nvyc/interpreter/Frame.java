@@ -0,0 +1,32 @@
+package nvyc.interpreter;
+
+/*
+
+    Locals of one call, split by representation so nothing is boxed.
+        longs       int32, int64, char and comparison results, int32 kept sign extended
+        doubles     fp32 and fp64, fp32 kept rounded to float
+        refs        strings, arrays, structs and cells of address taken variables
+
+    Slots are assigned when a function is lowered, see Interpreter.
+
+ */
+final class Frame {
+
+    private static final long[] NO_LONGS = new long[0];
+    private static final double[] NO_DOUBLES = new double[0];
+    private static final Object[] NO_REFS = new Object[0];
+
+    final long[] longs;
+    final double[] doubles;
+    final Object[] refs;
+
+    long returnLong;
+    double returnDouble;
+    Object returnRef;
+
+    Frame(int longs, int doubles, int refs) {
+        this.longs = longs == 0 ? NO_LONGS : new long[longs];
+        this.doubles = doubles == 0 ? NO_DOUBLES : new double[doubles];
+        this.refs = refs == 0 ? NO_REFS : new Object[refs];
+    }
+}
@@ -0,0 +1,822 @@
+package nvyc.interpreter;
+
+import nvyc.data.FunctionData;
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+import nvyc.data.VariableData;
+import nvyc.interpreter.Nodes.*;
+import nvyc.interpreter.Values.Layout;
+import nvyc.utils.NvyError;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class Interpreter {
+
+    /*
+
+        Runs the validated tree in process, for when the LLVM toolchain isn't around (--run).
+
+        The tree is lowered once into Nodes before anything executes:
+            variables       resolved to a slot in a typed Frame, names are never looked up at runtime
+            calls           bound to their Function or native binding
+            conversions     inserted where codegen would emit sext, trunc, sitofp and friends,
+                            following LLVMUtils.nvTypePrecedence for mixed operands
+
+        Variables that have their address taken live in a Cell, &x is the cell and *p reads through it.
+        Structs and arrays are heap values, structs are copied where the IR would copy them.
+
+        Natives bind to the functions in Natives. Anything else the interpreter can't do is reported
+        as a runtime error naming the construct, codegen remains the reference.
+
+     */
+
+    public static final long STACK_SIZE = 512L << 20;
+
+    // Something the program did, or asked for, that the interpreter can't do
+    static final class Fault extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Fault(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // Call target, the body and slot counts are filled in once every signature is known
+    static final class Function {
+        final String name;
+        final Kind returns;
+        final Layout returnLayout;
+        final Kind[] params;
+        int[] paramSlots;
+        int longs;
+        int doubles;
+        int refs;
+        Kind[] slotKinds;
+        Stmt body;
+
+        Function(String name, Kind returns, Layout returnLayout, Kind[] params) {
+            this.name = name;
+            this.returns = returns;
+            this.returnLayout = returnLayout;
+            this.params = params;
+        }
+
+        Kind returnKind() {
+            return returns;
+        }
+    }
+
+    // Native declaration, fixed parameters are converted like for Nvy functions, the rest are passed as they are
+    private record Native(String name, Kind returns, Kind[] params, Natives.Binding binding) {}
+
+    // What lowering knows about a name, element is the array type and target the kind a pointer points to
+    private record Variable(Kind kind, int slot, boolean global, boolean cell, Layout layout, NodeType element, Kind target) {
+        Variable withSlot(int slot, boolean global, boolean cell) {
+            return new Variable(kind, slot, global, cell, layout, element, target);
+        }
+    }
+
+    private static final Variable PLAIN = new Variable(Kind.I32, -1, false, false, null, null, null);
+
+    private final NvyError err = new NvyError();
+    private final VariableData vardata = VariableData.getInstance();
+    private final FunctionData fundata = FunctionData.getInstance();
+
+    private final Map<String, Layout> layouts = new HashMap<>();
+    private final Map<String, Function> functions = new HashMap<>();
+    private final Map<String, Native> natives = new HashMap<>();
+    private final Map<String, Variable> globals = new HashMap<>();
+    private final Set<String> globalCells = new HashSet<>();
+    private final List<Stmt> initializers = new ArrayList<>();
+    private final Frame globalFrame;
+
+    // State of the function being lowered
+    private Function current;
+    private Deque<Map<String, Variable>> scopes = new ArrayDeque<>();
+    private Set<String> addressTaken = new HashSet<>();
+    private int longs;
+    private int doubles;
+    private int refs;
+    private final List<Kind> longKinds = new ArrayList<>();
+    private final List<Kind> doubleKinds = new ArrayList<>();
+    private final List<Kind> globalKinds = new ArrayList<>();
+
+    public Interpreter(List<NASTNode> nodes) {
+        int globalCount = 0;
+        for(NASTNode node : nodes) {
+            switch(node.getType()) {
+                case STRUCT -> layouts.put(node.getValueString(), layout(node.getValueString()));
+                case VARDEF, GLOBALVARDEF -> globalCount++;
+                default -> {}
+            }
+        }
+        globalFrame = new Frame(globalCount, globalCount, globalCount);
+
+        for(NASTNode node : nodes) {
+            switch(node.getType()) {
+                case FUNCTION -> declare(node);
+                case EXTERNAL -> declare(node.getSubnode(0));
+                case NATIVE -> declareNative(node.getSubnode(0));
+                default -> {}
+            }
+        }
+
+        for(NASTNode node : nodes) {
+            collectAddressTaken(node, globalCells);
+        }
+
+        // Lowering errors are compile errors, nothing has run yet
+        try {
+            for(NASTNode node : nodes) {
+                switch(node.getType()) {
+                    case VARDEF -> initializers.add(lowerVardef(node));
+                    case GLOBALVARDEF -> throw new Fault("global " + node.getValueString() + " is defined in another module, compile it from source to run it");
+                    default -> {}
+                }
+            }
+            for(NASTNode node : nodes) {
+                switch(node.getType()) {
+                    case FUNCTION -> lowerFunction(node);
+                    case EXTERNAL -> lowerFunction(node.getSubnode(0));
+                    default -> {}
+                }
+            }
+        } catch (Fault e) {
+            err.NV_STDERRF("nvc > Cannot interpret %s%n", e.getMessage());
+            err.NV_EXIT(1);
+        }
+    }
+
+    /*
+        Runs the global initializers and main, on a thread with a stack deep enough for the recursion
+        native code would allow. Returns the exit code, main's return value or the code passed to exit.
+     */
+    public int run() {
+        Function main = functions.get("main");
+        if(main == null) {
+            err.NV_STDERRF("nvc > Nothing to run, main is not defined%n");
+            return 1;
+        }
+        return onStack(() -> {
+            for(Stmt s : initializers) s.exec(globalFrame);
+            Frame frame = new Frame(main.longs, main.doubles, main.refs);
+            main.body.exec(frame);
+            return (int) frame.returnLong;
+        });
+    }
+
+    /*
+        Same as run, with the program compiled to JVM bytecode by BytecodeCompiler first (--run=jvm).
+        Falls back to the tree walker if the program doesn't fit in a class file.
+     */
+    public int runCompiled() {
+        Function main = functions.get("main");
+        if(main == null) {
+            err.NV_STDERRF("nvc > Nothing to run, main is not defined%n");
+            return 1;
+        }
+
+        MethodHandle[] handles;
+        try {
+            handles = new BytecodeCompiler(globalKinds).compile(new ArrayList<>(functions.values()), initializers, main);
+        } catch (IllegalStateException e) {
+            err.NV_STDERRF("nvc > Cannot compile to bytecode (%s), interpreting instead%n", e.getMessage());
+            return run();
+        } catch (ReflectiveOperationException e) {
+            err.NV_STDERRF("nvc > Cannot load the compiled program: %s%n", e);
+            return 1;
+        }
+
+        // main takes no arguments, anything it declares starts out zero like in a fresh frame
+        Object[] args = new Object[main.params.length];
+        for(int i = 0; i < args.length; i++) {
+            args[i] = switch(main.params[i]) {
+                case I32 -> 0;
+                case I64 -> 0L;
+                case F32 -> 0f;
+                case F64 -> 0d;
+                default -> null;
+            };
+        }
+        return onStack(() -> {
+            handles[0].invoke();
+            Object result = handles[1].invokeWithArguments(args);
+            return result instanceof Number n ? n.intValue() : 0;
+        });
+    }
+
+    private interface Program {
+        int run() throws Throwable;
+    }
+
+    private int onStack(Program program) {
+        int[] code = new int[1];
+        Thread thread = new Thread(null, () -> code[0] = execute(program), "nvy-main", STACK_SIZE);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        return code[0];
+    }
+
+    private int execute(Program program) {
+        try {
+            return program.run();
+        } catch (Natives.Exit e) {
+            return e.code;
+        } catch (Fault e) {
+            return fault(e.getMessage());
+        } catch (ArithmeticException e) {
+            return fault("integer division by zero");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return fault("array index out of bounds (" + e.getMessage() + ")");
+        } catch (NegativeArraySizeException e) {
+            return fault("negative array size " + e.getMessage());
+        } catch (NullPointerException e) {
+            return fault("use of an uninitialized struct, array or pointer");
+        } catch (StackOverflowError e) {
+            return fault("stack overflow");
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Natives.flush();
+        }
+    }
+
+    private int fault(String message) {
+        Natives.flush();
+        err.NV_STDERRF("nvc > Runtime error: %s%n", message);
+        return 134;
+    }
+
+    // -----------------------------------------
+    // |             DECLARATIONS              |
+    // -----------------------------------------
+
+    private Layout layout(String struct) {
+        Map<String, Object> types = vardata.getStructTypes("%" + struct);
+        NodeType[] members = new NodeType[types.size()];
+        Map<String, Integer> index = new HashMap<>();
+        for(String member : types.keySet()) {
+            int pos = vardata.getStructMemberIndex("%" + struct, member);
+            members[pos] = (NodeType) types.get(member);
+            index.put(member, pos);
+        }
+        return new Layout(struct, members, index);
+    }
+
+    private void declare(NASTNode function) {
+        String name = function.getValueString();
+        NASTNode returns = function.getSubnode(1).getSubnode(0);
+        Layout layout = null;
+        if(returns.getType() == NodeType.STRUCT && fundata.hasLlvmType(name)) {
+            layout = layouts.get(fundata.getLlvmReturnType(name).replace("%", ""));
+        }
+        functions.put(name, new Function(name, kindOf(returns.getType()), layout, paramKinds(function)));
+    }
+
+    private void declareNative(NASTNode function) {
+        String name = function.getValueString();
+        Natives.Binding binding = Natives.lookup(name);
+        if(binding == null) {
+            binding = args -> {
+                throw new Fault("native " + name + " has no binding in the interpreter, compile to LLVM to call it");
+            };
+        }
+        Kind returns = kindOf(function.getSubnode(1).getSubnode(0).getType());
+        natives.put(name, new Native(name, returns, paramKinds(function), binding));
+    }
+
+    // Variadic parameters end the fixed ones
+    private Kind[] paramKinds(NASTNode function) {
+        List<Kind> kinds = new ArrayList<>();
+        for(NASTNode param : function.getSubnode(0).getAllSubnodes()) {
+            if(param.getType() == NodeType.UNIFIED) break;
+            kinds.add(kindOf(param.getType()));
+        }
+        return kinds.toArray(new Kind[0]);
+    }
+
+    private static Kind kindOf(NodeType type) {
+        return switch(type) {
+            case INT32, INT32_T, CHAR, CHAR_T, BOOL, BOOL_T, BOOL_TR, BOOL_FA, SHORT -> Kind.I32;
+            case INT64, INT64_T -> Kind.I64;
+            case FP32, FP32_T -> Kind.F32;
+            case FP64, FP64_T -> Kind.F64;
+            case VOID, VOID_T -> Kind.VOID;
+            default -> Kind.REF;
+        };
+    }
+
+    // Pointed to kind of a pointer type, int32* is INT32_STAR
+    private static Kind targetOf(NodeType type) {
+        String name = type.toString();
+        if(!name.endsWith("_STAR")) return null;
+        try {
+            return kindOf(NodeType.valueOf(name.replace("_STAR", "_T")));
+        } catch (IllegalArgumentException e) {
+            return Kind.REF;
+        }
+    }
+
+    private void collectAddressTaken(NASTNode node, Set<String> names) {
+        if(node.getType() == NodeType.FINDADDRESS && !node.getAllSubnodes().isEmpty() && node.getSubnode(0).getType() == NodeType.VARIABLE) {
+            names.add(node.getSubnode(0).getValueString());
+        }
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            collectAddressTaken(subnode, names);
+        }
+    }
+
+    // -----------------------------------------
+    // |               FUNCTIONS               |
+    // -----------------------------------------
+
+    private void lowerFunction(NASTNode node) {
+        Function function = functions.get(node.getValueString());
+        current = function;
+        scopes = new ArrayDeque<>();
+        scopes.push(new HashMap<>());
+        addressTaken = new HashSet<>();
+        collectAddressTaken(node.getSubnode(2), addressTaken);
+        longs = doubles = refs = 0;
+        longKinds.clear();
+        doubleKinds.clear();
+
+        List<Stmt> body = new ArrayList<>();
+        List<NASTNode> params = node.getSubnode(0).getAllSubnodes();
+        function.paramSlots = new int[function.params.length];
+        for(int i = 0; i < function.params.length; i++) {
+            NASTNode param = params.get(i);
+            Kind kind = function.params[i];
+            Variable v = new Variable(kind, allocate(kind), false, false, null, null, targetOf(param.getType()));
+            function.paramSlots[i] = v.slot();
+
+            // Parameters are passed by value, an address taken one is copied into its cell first
+            if(addressTaken.contains(param.getValueString())) {
+                Variable cell = v.withSlot(allocate(Kind.REF), false, true);
+                body.add(new NewCell(cell.slot()));
+                body.add(new StoreCell(new LocalRef(cell.slot()), load(v)));
+                v = cell;
+            }
+            scopes.peek().put(param.getValueString(), v);
+        }
+
+        for(NASTNode statement : node.getSubnode(2).getAllSubnodes()) {
+            body.add(lowerStatement(statement));
+        }
+
+        function.longs = longs;
+        function.doubles = doubles;
+        function.refs = refs;
+        function.slotKinds = new Kind[longs + doubles];
+        for(int i = 0; i < longs; i++) function.slotKinds[i] = longKinds.get(i);
+        for(int i = 0; i < doubles; i++) function.slotKinds[longs + i] = doubleKinds.get(i);
+        function.body = new Block(body.toArray(new Stmt[0]));
+        current = null;
+    }
+
+    private int allocate(Kind kind) {
+        switch(kind) {
+            case I32, I64 -> {
+                longKinds.add(kind);
+                return longs++;
+            }
+            case F32, F64 -> {
+                doubleKinds.add(kind);
+                return doubles++;
+            }
+            default -> {
+                return refs++;
+            }
+        }
+    }
+
+    // -----------------------------------------
+    // |              STATEMENTS               |
+    // -----------------------------------------
+
+    private Stmt lowerStatement(NASTNode node) {
+        return switch(node.getType()) {
+            case VARDEF -> lowerVardef(node);
+            case ASSIGN -> lowerAssign(node);
+            case FORLOOP -> lowerFor(node);
+            case IF -> lowerIf(node);
+            case RETURN -> lowerReturn(node);
+            case FUNCTIONBODY, ELSE -> lowerBlock(node);
+            default -> new Eval(lower(node));
+        };
+    }
+
+    private Stmt lowerBlock(NASTNode node) {
+        scopes.push(new HashMap<>());
+        List<Stmt> body = new ArrayList<>();
+        for(NASTNode statement : node.getAllSubnodes()) {
+            body.add(lowerStatement(statement));
+        }
+        scopes.pop();
+        return body.size() == 1 ? body.get(0) : new Block(body.toArray(new Stmt[0]));
+    }
+
+    private Stmt lowerVardef(NASTNode node) {
+        String name = node.getValueString();
+        Variable shape = PLAIN;
+        Expr value;
+
+        NASTNode first = node.getAllSubnodes().isEmpty() ? null : node.getSubnode(0);
+        if(first == null) {
+            throw new Fault("declaration of " + name + " without a value");
+        } else if(first.getType() == NodeType.CAST && first.getValueString().equals("STRUCT")) {
+            Layout layout = layouts.get(first.getSubnode(0).getValueString());
+            if(layout == null) throw new Fault("unknown struct " + first.getSubnode(0).getValueString());
+            shape = new Variable(Kind.REF, -1, false, false, layout, null, null);
+            value = new NewStruct(layout);
+        } else if(first.getType() == NodeType.CAST) {
+            Kind kind = kindOf(NodeType.valueOf(first.getValueString()));
+            value = node.getAllSubnodes().size() > 1 ? convert(lower(node.getSubnode(1)), kind) : zero(kind);
+        } else if(first.getType() == NodeType.ARRAY) {
+            NodeType element = NodeType.valueOf(first.getValueString());
+            shape = new Variable(Kind.REF, -1, false, false, null, element, null);
+            value = new NewArray(element, convert(lower(first.getSubnode(0)), Kind.I32));
+        } else {
+            shape = describe(first);
+            value = copied(first, lower(first));
+        }
+
+        Variable v = new Variable(value.kind, -1, false, false, shape.layout(), shape.element(), shape.target());
+        if(v.kind() == Kind.VOID) throw new Fault(name + " is assigned the result of a void function");
+
+        // Globals get a fixed slot of the module frame, their initializer runs in it before main
+        boolean global = current == null;
+        boolean cell = global ? globalCells.contains(name) : addressTaken.contains(name);
+        int slot;
+        if(global) {
+            slot = globalKinds.size();
+            globalKinds.add(cell ? Kind.REF : v.kind());
+        } else {
+            slot = allocate(cell ? Kind.REF : v.kind());
+        }
+        v = v.withSlot(slot, global, cell);
+
+        Stmt store;
+        if(cell) {
+            store = new Block(new Stmt[] {new NewCell(slot), new StoreCell(cellOf(v), value)});
+        } else {
+            store = store(v, value);
+        }
+        if(global) globals.put(name, v);
+        else scopes.peek().put(name, v);
+        return store;
+    }
+
+    private Stmt lowerAssign(NASTNode node) {
+        NASTNode target = node.getSubnode(0);
+        NASTNode source = node.getSubnode(1);
+        Expr value = source.getType() == NodeType.CAST && node.getAllSubnodes().size() > 2
+                ? convert(lower(node.getSubnode(2)), kindOf(NodeType.valueOf(source.getValueString())))
+                : copied(source, lower(source));
+
+        switch(target.getType()) {
+            case VARIABLE -> {
+                String member = memberOf(target);
+                if(member != null) {
+                    Variable struct = lookup(structOf(target));
+                    int index = memberIndex(struct, member);
+                    return new MemberStore(load(struct), index, convert(value, kindOf(struct.layout().types[index])));
+                }
+                return store(lookup(target.getValueString()), value);
+            }
+            case ARRAY_ACCESS -> {
+                Variable array = lookup(target.getSubnode(0).getValueString());
+                if(array.element() == null) throw new Fault(target.getSubnode(0).getValueString() + " is not an array");
+                return new ArrayStore(array.element(), load(array), index(target.getSubnode(1)), convert(value, kindOf(array.element())));
+            }
+            case PTRDEREF -> {
+                Variable pointer = pointer(target);
+                return new StoreCell(load(pointer), convert(value, pointer.target()));
+            }
+            default -> throw new Fault("cannot assign to " + target.getType());
+        }
+    }
+
+    // FORLOOP[LOOPDEF[VARDEF], LOOPCOND[expr], LOOPITERATION[next value of the loop variable], FUNCTIONBODY]
+    private Stmt lowerFor(NASTNode node) {
+        scopes.push(new HashMap<>());
+        NASTNode def = node.getSubnode(0).getSubnode(0);
+        Stmt init = lowerStatement(def);
+        Expr condition = lower(node.getSubnode(1).getSubnode(0));
+        Stmt body = lowerBlock(node.getSubnode(3));
+
+        NASTNode iteration = node.getSubnode(2).getSubnode(0);
+        Stmt step = switch(iteration.getType()) {
+            case ASSIGN, VARDEF -> lowerStatement(iteration);
+            default -> store(lookup(def.getValueString()), lower(iteration));
+        };
+        scopes.pop();
+        return new For(init, condition, body, step);
+    }
+
+    // IF[CONDITION, IFBODY, ELSE], the parser puts the rest of the enclosing block in ELSE and codegen lets the
+    // true branch fall through into it, so it runs after either branch
+    private Stmt lowerIf(NASTNode node) {
+        Expr condition = lower(node.getSubnode(0).getSubnode(0));
+        Stmt then = lowerBlock(node.getSubnode(1));
+        Stmt rest = node.getAllSubnodes().size() > 2 ? lowerBlock(node.getSubnode(2)) : new Block(new Stmt[0]);
+        return new Block(new Stmt[] {new If(condition, then, new Block(new Stmt[0])), rest});
+    }
+
+    private Stmt lowerReturn(NASTNode node) {
+        if(node.getAllSubnodes().isEmpty()) return new Return(null);
+        NASTNode result = node.getSubnode(0);
+        Expr value = copied(result, lower(result));
+        if(current == null || current.returns == Kind.VOID) {
+            return new Block(new Stmt[] {new Eval(value), new Return(null)});
+        }
+        return new Return(convert(value, current.returns));
+    }
+
+    // -----------------------------------------
+    // |              EXPRESSIONS              |
+    // -----------------------------------------
+
+    private Expr lower(NASTNode node) {
+        switch(node.getType()) {
+            case INT32, INT64, BOOL_TR, BOOL_FA -> {
+                return new LongConst(kindOf(node.getType()), integer(node));
+            }
+            case CHAR -> {
+                return new LongConst(Kind.I32, node.getValueString().charAt(1));
+            }
+            case FP32, FP64 -> {
+                Kind kind = kindOf(node.getType());
+                String literal = node.getValueString().replaceAll("[fFdD]$", "");
+                double v = Double.parseDouble(literal);
+                return new DoubleConst(kind, kind == Kind.F32 ? (float) v : v);
+            }
+            case STR -> {
+                String s = node.getValueString();
+                return new RefConst(s.substring(1, s.length() - 1).replace("\\n", "\n"));
+            }
+            case VARIABLE -> {
+                String member = memberOf(node);
+                if(member != null) {
+                    Variable struct = lookup(structOf(node));
+                    int index = memberIndex(struct, member);
+                    return new MemberLoad(kindOf(struct.layout().types[index]), load(struct), index);
+                }
+                return load(lookup(node.getValueString()));
+            }
+            case ARRAY_ACCESS -> {
+                Variable array = lookup(node.getSubnode(0).getValueString());
+                if(array.element() == null) throw new Fault(node.getSubnode(0).getValueString() + " is not an array");
+                return new ArrayLoad(kindOf(array.element()), array.element(), load(array), index(node.getSubnode(1)));
+            }
+            case ADD, SUB, MUL, DIV, MODULO, BITAND, BITOR, BITXOR, ARITHLEFTSHIFT, ARITHRIGHTSHIFT, LOGICRIGHTSHIFT -> {
+                Expr lhs = lower(node.getSubnode(0));
+                Expr rhs = lower(node.getSubnode(1));
+                Kind kind = precedence(lhs.kind, rhs.kind);
+                if(kind.isDouble()) {
+                    if(!List.of(NodeType.ADD, NodeType.SUB, NodeType.MUL, NodeType.DIV, NodeType.MODULO).contains(node.getType())) {
+                        throw new Fault(node.getType() + " of floating point operands");
+                    }
+                    return new DoubleBinary(kind, node.getType(), convert(lhs, kind), convert(rhs, kind));
+                }
+                return new LongBinary(kind, node.getType(), convert(lhs, kind), convert(rhs, kind));
+            }
+            case EQ, NEQ, LT, LTE, GT, GTE -> {
+                Expr lhs = lower(node.getSubnode(0));
+                Expr rhs = lower(node.getSubnode(1));
+                Kind kind = precedence(lhs.kind, rhs.kind);
+                return new Compare(node.getType(), convert(lhs, kind), convert(rhs, kind));
+            }
+            case LOGICAND, LOGICOR -> {
+                return new Logic(node.getType() == NodeType.LOGICAND, lower(node.getSubnode(0)), lower(node.getSubnode(1)));
+            }
+            case SWITCHSIGN, BITNEGATE -> {
+                Expr value = lower(node.getSubnode(0));
+                if(value.kind == Kind.REF || (value.kind.isDouble() && node.getType() == NodeType.BITNEGATE)) {
+                    throw new Fault(node.getType() + " of a " + value.kind + " value");
+                }
+                return new Unary(value.kind, node.getType(), value);
+            }
+            case NOT -> {
+                Expr value = lower(node.getSubnode(0));
+                return new Compare(NodeType.EQ, value, zero(value.kind));
+            }
+            case CAST -> {
+                if(node.getAllSubnodes().isEmpty()) throw new Fault("cast without a value");
+                return convert(lower(node.getSubnode(0)), kindOf(NodeType.valueOf(node.getValueString())));
+            }
+            case FUNCTIONCALL -> {
+                return lowerCall(node);
+            }
+            case FINDADDRESS -> {
+                NASTNode variable = node.getSubnode(0);
+                if(variable.getType() != NodeType.VARIABLE || memberOf(variable) != null) {
+                    throw new Fault("address of " + variable.getType() + " is not supported");
+                }
+                return cellOf(lookup(variable.getValueString()));
+            }
+            case PTRDEREF -> {
+                Variable pointer = pointer(node);
+                return new Deref(pointer.target(), load(pointer));
+            }
+            default -> throw new Fault("unsupported " + node.getType() + " in " + (current == null ? "a global" : current.name));
+        }
+    }
+
+    private Expr lowerCall(NASTNode node) {
+        String name = node.getValueString();
+        List<NASTNode> args = node.getAllSubnodes();
+        Function function = functions.get(name);
+        if(function != null) {
+            if(args.size() != function.params.length) {
+                throw new Fault(String.format("%s takes %d arguments, called with %d", name, function.params.length, args.size()));
+            }
+            Expr[] values = new Expr[args.size()];
+            for(int i = 0; i < values.length; i++) {
+                values[i] = convert(copied(args.get(i), lower(args.get(i))), function.params[i]);
+            }
+            return new Call(function, values);
+        }
+
+        Native target = natives.get(name);
+        if(target == null) throw new Fault("call to undefined function " + name);
+        Expr[] values = new Expr[args.size()];
+        for(int i = 0; i < values.length; i++) {
+            Expr value = lower(args.get(i));
+            values[i] = i < target.params().length ? convert(value, target.params()[i]) : value;
+        }
+        return new NativeCall(target.returns(), target.binding(), values);
+    }
+
+    // Struct values are copied when they leave the variable that holds them
+    private Expr copied(NASTNode node, Expr value) {
+        if(node.getType() == NodeType.VARIABLE && memberOf(node) == null && lookup(node.getValueString()).layout() != null) {
+            return new CopyStruct(value);
+        }
+        return value;
+    }
+
+    // Layout, element type or pointed to kind the value of node carries over to the variable it's stored in
+    private Variable describe(NASTNode node) {
+        switch(node.getType()) {
+            case VARIABLE -> {
+                if(memberOf(node) != null) return PLAIN;
+                Variable v = lookup(node.getValueString());
+                return new Variable(v.kind(), -1, false, false, v.layout(), v.element(), v.target());
+            }
+            case FUNCTIONCALL -> {
+                Function function = functions.get(node.getValueString());
+                return function == null ? PLAIN : new Variable(function.returns, -1, false, false, function.returnLayout, null, null);
+            }
+            case FINDADDRESS -> {
+                Variable v = lookup(node.getSubnode(0).getValueString());
+                return new Variable(Kind.REF, -1, false, false, null, null, v.kind());
+            }
+            default -> {
+                return PLAIN;
+            }
+        }
+    }
+
+    private Variable pointer(NASTNode deref) {
+        NASTNode operand = deref.getSubnode(0);
+        if(operand.getType() != NodeType.VARIABLE) throw new Fault("dereference of " + operand.getType() + " is not supported");
+        Variable pointer = lookup(operand.getValueString());
+        if(pointer.target() == null) throw new Fault(operand.getValueString() + " is not a pointer");
+        return pointer;
+    }
+
+    // ARRAY_INDEX holds a number or a variable name, or an expression below it
+    private Expr index(NASTNode node) {
+        if(!node.getAllSubnodes().isEmpty()) return convert(lower(node.getSubnode(0)), Kind.I32);
+        String index = node.getValueString();
+        try {
+            return new LongConst(Kind.I32, Integer.parseInt(index));
+        } catch (NumberFormatException e) {
+            return convert(load(lookup(index)), Kind.I32);
+        }
+    }
+
+    // x.a is either VARIABLE(x)[MEMBER(a)] or a VARIABLE named "x.a"
+    private String memberOf(NASTNode node) {
+        if(!node.getAllSubnodes().isEmpty() && node.getSubnode(0).getType() == NodeType.MEMBER) return node.getSubnode(0).getValueString();
+        String name = node.getValueString();
+        return name.contains(".") ? name.substring(name.indexOf('.') + 1) : null;
+    }
+
+    private String structOf(NASTNode node) {
+        String name = node.getValueString();
+        return name.contains(".") ? name.substring(0, name.indexOf('.')) : name;
+    }
+
+    private int memberIndex(Variable struct, String member) {
+        if(struct.layout() == null) throw new Fault("member " + member + " of a value that is not a struct");
+        Integer index = struct.layout().index.get(member);
+        if(index == null) throw new Fault("struct " + struct.layout().name + " has no member " + member);
+        return index;
+    }
+
+    private long integer(NASTNode node) {
+        return switch(node.getType()) {
+            case BOOL_TR -> 1;
+            case BOOL_FA -> 0;
+            default -> {
+                String literal = node.getValueString().replaceAll("[lL]$", "");
+                long v = Long.parseLong(literal);
+                yield node.getType() == NodeType.INT32 ? (int) v : v;
+            }
+        };
+    }
+
+    // -----------------------------------------
+    // |           VARIABLES AND TYPES         |
+    // -----------------------------------------
+
+    private Variable lookup(String name) {
+        for(Map<String, Variable> scope : scopes) {
+            Variable v = scope.get(name);
+            if(v != null) return v;
+        }
+        Variable v = globals.get(name);
+        if(v == null) throw new Fault("unknown variable " + name + " in " + (current == null ? "a global" : current.name));
+        return v;
+    }
+
+    private Expr cellOf(Variable v) {
+        if(!v.cell()) throw new Fault("address of a variable that isn't address taken");
+        return v.global() ? new GlobalRef(globalFrame, v.slot()) : new LocalRef(v.slot());
+    }
+
+    private Expr load(Variable v) {
+        if(v.cell()) return new Deref(v.kind(), cellOf(v));
+        if(v.global()) {
+            return switch(v.kind()) {
+                case I32, I64 -> new GlobalLong(v.kind(), globalFrame, v.slot());
+                case F32, F64 -> new GlobalDouble(v.kind(), globalFrame, v.slot());
+                default -> new GlobalRef(globalFrame, v.slot());
+            };
+        }
+        return switch(v.kind()) {
+            case I32, I64 -> new LocalLong(v.kind(), v.slot());
+            case F32, F64 -> new LocalDouble(v.kind(), v.slot());
+            default -> new LocalRef(v.slot());
+        };
+    }
+
+    private Stmt store(Variable v, Expr value) {
+        value = convert(value, v.kind());
+        if(v.cell()) return new StoreCell(cellOf(v), value);
+        if(v.global()) return new StoreGlobal(globalFrame, v.slot(), value);
+        return switch(v.kind()) {
+            case I32, I64 -> new StoreLong(v.slot(), value);
+            case F32, F64 -> new StoreDouble(v.slot(), value);
+            default -> new StoreRef(v.slot(), value);
+        };
+    }
+
+    private static Expr zero(Kind kind) {
+        return switch(kind) {
+            case I32, I64 -> new LongConst(kind, 0);
+            case F32, F64 -> new DoubleConst(kind, 0);
+            default -> new RefConst(null);
+        };
+    }
+
+    // Same rules as LLVMUtils.nvTypePrecedence, fp32 with int64 goes to fp64
+    private static Kind precedence(Kind a, Kind b) {
+        if(a == Kind.REF || b == Kind.REF || a == Kind.VOID || b == Kind.VOID) {
+            throw new Fault("arithmetic on a " + (a.isLong() || a.isDouble() ? b : a) + " value");
+        }
+        if((a == Kind.F32 && b == Kind.I64) || (a == Kind.I64 && b == Kind.F32)) return Kind.F64;
+        if(a == Kind.F64 || b == Kind.F64) return Kind.F64;
+        if(a == Kind.F32 || b == Kind.F32) return Kind.F32;
+        if(a == Kind.I64 || b == Kind.I64) return Kind.I64;
+        return Kind.I32;
+    }
+
+    private static Expr convert(Expr value, Kind kind) {
+        if(value.kind == kind) return value;
+        if(value.kind == Kind.REF || kind == Kind.REF || value.kind == Kind.VOID || kind == Kind.VOID) {
+            throw new Fault("cannot convert a " + value.kind + " value to " + kind);
+        }
+        if(value.kind.isLong() && kind.isLong()) return kind == Kind.I32 ? new Narrow(value) : new Widen(kind, value);
+        if(value.kind.isDouble() && kind.isDouble()) return kind == Kind.F32 ? new RoundFloat(value) : new Widen(kind, value);
+        if(value.kind.isLong()) return new IntToFloat(kind, value);
+        return new FloatToInt(kind, value);
+    }
+}
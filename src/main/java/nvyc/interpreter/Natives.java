@@ -0,0 +1,355 @@
+package nvyc.interpreter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+
+    The part of libc Nvy programs call through native func declarations.
+
+    printf follows C, not java.util.Formatter: %f and %e are rounded from the exact binary value,
+    %g drops trailing zeros, inf and nan are spelled like glibc and %d of a 64 bit value truncates.
+    Output is buffered like stdout and flushed when the program exits, normally or not.
+
+ */
+final class Natives {
+
+    private Natives() {}
+
+    interface Binding {
+        Object call(Object[] args);
+    }
+
+    // Thrown by exit(), unwinds the interpreter to report the code
+    static final class Exit extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        Exit(int code) {
+            super(null, null, false, false);
+            this.code = code;
+        }
+    }
+
+    private static final OutputStream STDOUT = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+    private static final Map<String, Binding> BINDINGS = new HashMap<>();
+
+    static {
+        BINDINGS.put("printf", args -> write(format(args)));
+        BINDINGS.put("puts", args -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] s = bytes(args[0]);
+            out.write(s, 0, s.length);
+            out.write('\n');
+            write(out.toByteArray());
+            return 1;
+        });
+        BINDINGS.put("putchar", args -> {
+            write(new byte[] {(byte) integer(args[0])});
+            return (int) (integer(args[0]) & 0xFF);
+        });
+        BINDINGS.put("exit", args -> {
+            throw new Exit((int) integer(args[0]));
+        });
+        BINDINGS.put("abs", args -> Math.abs((int) integer(args[0])));
+        BINDINGS.put("labs", args -> Math.abs(integer(args[0])));
+        BINDINGS.put("sqrt", args -> Math.sqrt(real(args[0])));
+        BINDINGS.put("pow", args -> Math.pow(real(args[0]), real(args[1])));
+        BINDINGS.put("fabs", args -> Math.abs(real(args[0])));
+        BINDINGS.put("fmod", args -> real(args[0]) % real(args[1]));
+        BINDINGS.put("sin", args -> Math.sin(real(args[0])));
+        BINDINGS.put("cos", args -> Math.cos(real(args[0])));
+        BINDINGS.put("tan", args -> Math.tan(real(args[0])));
+        BINDINGS.put("exp", args -> Math.exp(real(args[0])));
+        BINDINGS.put("log", args -> Math.log(real(args[0])));
+        BINDINGS.put("floor", args -> Math.floor(real(args[0])));
+        BINDINGS.put("ceil", args -> Math.ceil(real(args[0])));
+    }
+
+    // Null if the interpreter doesn't provide the function
+    static Binding lookup(String name) {
+        return BINDINGS.get(demangle(name));
+    }
+
+    // _nvylang_<module>_<length><name>_<n> back to <name>, natives are normally not mangled
+    static String demangle(String name) {
+        if(!name.startsWith("_nvylang_")) return name;
+        String rest = name.substring(0, name.lastIndexOf('_'));
+        for(int i = rest.indexOf('_', "_nvylang_".length()); i >= 0; i = rest.indexOf('_', i + 1)) {
+            int j = i + 1;
+            while(j < rest.length() && Character.isDigit(rest.charAt(j))) j++;
+            if(j == i + 1) continue;
+            int length = Integer.parseInt(rest.substring(i + 1, j));
+            if(rest.length() - j == length) return rest.substring(j);
+        }
+        return name;
+    }
+
+    static void flush() {
+        try {
+            STDOUT.flush();
+        } catch (IOException ignored) {}
+    }
+
+    private static int write(byte[] b) {
+        try {
+            STDOUT.write(b);
+        } catch (IOException ignored) {}
+        return b.length;
+    }
+
+    private static long integer(Object o) {
+        if(o instanceof Number n) return o instanceof Double ? (long) n.doubleValue() : n.longValue();
+        return 0;
+    }
+
+    private static double real(Object o) {
+        return o instanceof Number n ? n.doubleValue() : 0;
+    }
+
+    // Nvy strings are java Strings, char arrays end at the first NUL
+    private static byte[] bytes(Object o) {
+        if(o instanceof byte[] b) {
+            int end = 0;
+            while(end < b.length && b[end] != 0) end++;
+            byte[] s = new byte[end];
+            System.arraycopy(b, 0, s, 0, end);
+            return s;
+        }
+        return String.valueOf(o).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // -----------------------------------------
+    // |                PRINTF                 |
+    // -----------------------------------------
+
+    static byte[] format(Object[] args) {
+        byte[] fmt = bytes(args[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int next = 1;
+
+        for(int i = 0; i < fmt.length; i++) {
+            if(fmt[i] != '%') {
+                out.write(fmt[i]);
+                continue;
+            }
+
+            // %[flags][width][.precision][length]conversion
+            boolean left = false, plus = false, space = false, alt = false, zero = false;
+            for(i++; i < fmt.length && "-+ #0".indexOf(fmt[i]) >= 0; i++) {
+                switch(fmt[i]) {
+                    case '-' -> left = true;
+                    case '+' -> plus = true;
+                    case ' ' -> space = true;
+                    case '#' -> alt = true;
+                    default -> zero = true;
+                }
+            }
+
+            int width = 0;
+            if(i < fmt.length && fmt[i] == '*') {
+                width = (int) integer(next < args.length ? args[next++] : 0);
+                if(width < 0) {
+                    left = true;
+                    width = -width;
+                }
+                i++;
+            } else {
+                while(i < fmt.length && Character.isDigit(fmt[i])) width = width * 10 + (fmt[i++] - '0');
+            }
+
+            int precision = -1;
+            if(i < fmt.length && fmt[i] == '.') {
+                i++;
+                precision = 0;
+                if(i < fmt.length && fmt[i] == '*') {
+                    precision = (int) integer(next < args.length ? args[next++] : 0);
+                    i++;
+                } else {
+                    while(i < fmt.length && Character.isDigit(fmt[i])) precision = precision * 10 + (fmt[i++] - '0');
+                }
+            }
+
+            boolean wide = false;
+            while(i < fmt.length && "hlLqjzt".indexOf(fmt[i]) >= 0) {
+                if(fmt[i] == 'l' || fmt[i] == 'q' || fmt[i] == 'j' || fmt[i] == 'z' || fmt[i] == 't') wide = true;
+                i++;
+            }
+            if(i >= fmt.length) break;
+
+            char conversion = (char) fmt[i];
+            if(conversion == '%') {
+                out.write('%');
+                continue;
+            }
+            Object arg = next < args.length ? args[next++] : 0;
+
+            String sign = "";
+            String prefix = "";
+            String body;
+            switch(conversion) {
+                case 'd', 'i' -> {
+                    long v = wide ? integer(arg) : (int) integer(arg);
+                    if(v < 0) sign = "-";
+                    else if(plus) sign = "+";
+                    else if(space) sign = " ";
+                    body = digits(v == Long.MIN_VALUE ? "9223372036854775808" : Long.toString(Math.abs(v)), precision);
+                }
+                case 'u', 'x', 'X', 'o' -> {
+                    long v = wide ? integer(arg) : integer(arg) & 0xFFFFFFFFL;
+                    int radix = conversion == 'o' ? 8 : conversion == 'u' ? 10 : 16;
+                    String s = switch(radix) {
+                        case 8 -> Long.toOctalString(v);
+                        case 16 -> Long.toHexString(v);
+                        default -> Long.toUnsignedString(v);
+                    };
+                    if(conversion == 'X') s = s.toUpperCase();
+                    body = digits(s, precision);
+                    if(alt && v != 0 && radix == 16) prefix = conversion == 'X' ? "0X" : "0x";
+                    if(alt && radix == 8 && !body.startsWith("0")) body = "0" + body;
+                }
+                case 'c' -> {
+                    pad(out, new byte[] {(byte) integer(arg)}, width, left);
+                    continue;
+                }
+                case 's' -> {
+                    byte[] s = bytes(arg);
+                    if(precision >= 0 && precision < s.length) {
+                        byte[] cut = new byte[precision];
+                        System.arraycopy(s, 0, cut, 0, precision);
+                        s = cut;
+                    }
+                    pad(out, s, width, left);
+                    continue;
+                }
+                case 'p' -> {
+                    prefix = "0x";
+                    body = Integer.toHexString(System.identityHashCode(arg));
+                }
+                case 'f', 'F', 'e', 'E', 'g', 'G' -> {
+                    double v = real(arg);
+                    if(v < 0 || (v == 0 && 1 / v < 0)) sign = "-";
+                    else if(plus) sign = "+";
+                    else if(space) sign = " ";
+                    if(Double.isNaN(v) || Double.isInfinite(v)) {
+                        body = Double.isNaN(v) ? "nan" : "inf";
+                        if(Double.isNaN(v) && sign.equals("-")) sign = "";
+                        if(Character.isUpperCase(conversion)) body = body.toUpperCase();
+                        zero = false;
+                    } else {
+                        body = floating(Math.abs(v), Character.toLowerCase(conversion), precision < 0 ? 6 : precision, alt);
+                        if(Character.isUpperCase(conversion)) body = body.toUpperCase();
+                    }
+                    precision = -1;
+                }
+                default -> {
+                    // Unknown conversion, printed back like glibc does
+                    next--;
+                    out.write('%');
+                    out.write(conversion);
+                    continue;
+                }
+            }
+
+            String s = sign + prefix + body;
+            int padding = width - s.length();
+            if(padding > 0 && left) {
+                s = s + " ".repeat(padding);
+            } else if(padding > 0 && zero && precision < 0) {
+                s = sign + prefix + "0".repeat(padding) + body;
+            } else if(padding > 0) {
+                s = " ".repeat(padding) + s;
+            }
+            out.write(s.getBytes(StandardCharsets.US_ASCII), 0, s.length());
+        }
+        return out.toByteArray();
+    }
+
+    private static void pad(ByteArrayOutputStream out, byte[] s, int width, boolean left) {
+        int padding = Math.max(0, width - s.length);
+        if(!left) for(int p = 0; p < padding; p++) out.write(' ');
+        out.write(s, 0, s.length);
+        if(left) for(int p = 0; p < padding; p++) out.write(' ');
+    }
+
+    // Minimum digit count of integer conversions, a zero precision prints nothing for 0
+    private static String digits(String s, int precision) {
+        if(precision == 0 && s.equals("0")) return "";
+        if(precision > s.length()) return "0".repeat(precision - s.length()) + s;
+        return s;
+    }
+
+    // v is finite and not negative
+    private static String floating(double v, char conversion, int precision, boolean alt) {
+        BigDecimal exact = new BigDecimal(v);
+        switch(conversion) {
+            case 'f' -> {
+                String s = exact.setScale(precision, RoundingMode.HALF_EVEN).toPlainString();
+                return alt && precision == 0 ? s + "." : s;
+            }
+            case 'e' -> {
+                return scientific(exact, precision, alt);
+            }
+            default -> {
+                // %g picks %e or %f from the exponent %e would print, then drops trailing zeros
+                int p = precision == 0 ? 1 : precision;
+                int x = exponent(exact, p - 1);
+                String s = p > x && x >= -4
+                        ? exact.setScale(p - 1 - x, RoundingMode.HALF_EVEN).toPlainString()
+                        : scientific(exact, p - 1, alt);
+                if(alt) return s.contains(".") ? s : s + ".";
+
+                int e = s.indexOf('e');
+                String mantissa = e < 0 ? s : s.substring(0, e);
+                String suffix = e < 0 ? "" : s.substring(e);
+                if(mantissa.contains(".")) {
+                    mantissa = mantissa.replaceAll("0+$", "");
+                    if(mantissa.endsWith(".")) mantissa = mantissa.substring(0, mantissa.length() - 1);
+                }
+                return mantissa + suffix;
+            }
+        }
+    }
+
+    // Decimal exponent of v once rounded to precision + 1 significant digits
+    private static int exponent(BigDecimal v, int precision) {
+        if(v.signum() == 0) return 0;
+        BigDecimal rounded = v.round(new MathContext(precision + 1, RoundingMode.HALF_EVEN));
+        return rounded.precision() - rounded.scale() - 1;
+    }
+
+    private static String scientific(BigDecimal v, int precision, boolean alt) {
+        String digits;
+        int exponent;
+        if(v.signum() == 0) {
+            digits = "0".repeat(precision + 1);
+            exponent = 0;
+        } else {
+            BigDecimal rounded = v.round(new MathContext(precision + 1, RoundingMode.HALF_EVEN));
+            digits = rounded.unscaledValue().toString();
+            exponent = digits.length() - rounded.scale() - 1;
+            digits = digits.length() > precision + 1
+                    ? digits.substring(0, precision + 1)
+                    : digits + "0".repeat(precision + 1 - digits.length());
+        }
+
+        StringBuilder s = new StringBuilder().append(digits.charAt(0));
+        if(precision > 0 || alt) s.append('.');
+        s.append(digits, 1, digits.length());
+        s.append(exponent < 0 ? "e-" : "e+");
+        int magnitude = Math.abs(exponent);
+        if(magnitude < 10) s.append('0');
+        return s.append(magnitude).toString();
+    }
+}
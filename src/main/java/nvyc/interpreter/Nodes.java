@@ -0,0 +1,906 @@
+package nvyc.interpreter;
+
+import nvyc.data.NodeType;
+import nvyc.interpreter.Values.Cell;
+import nvyc.interpreter.Values.StructValue;
+
+/*
+
+    Executable tree the Interpreter lowers NASTNodes into.
+
+    Every expression has a static kind and is evaluated through the matching method, asLong for
+    integers, asDouble for floating point and asRef for everything else, so values never get boxed.
+    Conversions between kinds are explicit nodes inserted while lowering.
+
+    Statements return NORMAL, or RETURN after storing the value in the frame.
+
+ */
+final class Nodes {
+
+    private Nodes() {}
+
+    enum Kind {
+        I32, I64, F32, F64, REF, VOID;
+
+        boolean isLong() {
+            return this == I32 || this == I64;
+        }
+
+        boolean isDouble() {
+            return this == F32 || this == F64;
+        }
+    }
+
+    static final int NORMAL = 0;
+    static final int RETURN = 1;
+
+    // -----------------------------------------
+    // |              EXPRESSIONS              |
+    // -----------------------------------------
+
+    abstract static class Expr {
+        final Kind kind;
+
+        Expr(Kind kind) {
+            this.kind = kind;
+        }
+
+        long asLong(Frame f) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is not an integer");
+        }
+
+        double asDouble(Frame f) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is not floating point");
+        }
+
+        Object asRef(Frame f) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is not a reference");
+        }
+
+        boolean isTrue(Frame f) {
+            if(kind.isLong()) return asLong(f) != 0;
+            if(kind.isDouble()) return asDouble(f) != 0;
+            return asRef(f) != null;
+        }
+
+        // Evaluated only for side effects, as a statement
+        void run(Frame f) {
+            switch(kind) {
+                case I32, I64 -> asLong(f);
+                case F32, F64 -> asDouble(f);
+                default -> asRef(f);
+            }
+        }
+    }
+
+    static final class LongConst extends Expr {
+        final long value;
+
+        LongConst(Kind kind, long value) {
+            super(kind);
+            this.value = value;
+        }
+
+        long asLong(Frame f) {
+            return value;
+        }
+    }
+
+    static final class DoubleConst extends Expr {
+        final double value;
+
+        DoubleConst(Kind kind, double value) {
+            super(kind);
+            this.value = value;
+        }
+
+        double asDouble(Frame f) {
+            return value;
+        }
+    }
+
+    static final class RefConst extends Expr {
+        final Object value;
+
+        RefConst(Object value) {
+            super(Kind.REF);
+            this.value = value;
+        }
+
+        Object asRef(Frame f) {
+            return value;
+        }
+    }
+
+    // Locals read from the current frame, globals from the frame of the module
+
+    static final class LocalLong extends Expr {
+        final int slot;
+
+        LocalLong(Kind kind, int slot) {
+            super(kind);
+            this.slot = slot;
+        }
+
+        long asLong(Frame f) {
+            return f.longs[slot];
+        }
+    }
+
+    static final class LocalDouble extends Expr {
+        final int slot;
+
+        LocalDouble(Kind kind, int slot) {
+            super(kind);
+            this.slot = slot;
+        }
+
+        double asDouble(Frame f) {
+            return f.doubles[slot];
+        }
+    }
+
+    static final class LocalRef extends Expr {
+        final int slot;
+
+        LocalRef(int slot) {
+            super(Kind.REF);
+            this.slot = slot;
+        }
+
+        Object asRef(Frame f) {
+            return f.refs[slot];
+        }
+    }
+
+    static final class GlobalLong extends Expr {
+        final Frame globals;
+        final int slot;
+
+        GlobalLong(Kind kind, Frame globals, int slot) {
+            super(kind);
+            this.globals = globals;
+            this.slot = slot;
+        }
+
+        long asLong(Frame f) {
+            return globals.longs[slot];
+        }
+    }
+
+    static final class GlobalDouble extends Expr {
+        final Frame globals;
+        final int slot;
+
+        GlobalDouble(Kind kind, Frame globals, int slot) {
+            super(kind);
+            this.globals = globals;
+            this.slot = slot;
+        }
+
+        double asDouble(Frame f) {
+            return globals.doubles[slot];
+        }
+    }
+
+    static final class GlobalRef extends Expr {
+        final Frame globals;
+        final int slot;
+
+        GlobalRef(Frame globals, int slot) {
+            super(Kind.REF);
+            this.globals = globals;
+            this.slot = slot;
+        }
+
+        Object asRef(Frame f) {
+            return globals.refs[slot];
+        }
+    }
+
+    // Reads through a cell, the cell itself comes from a local, a global or another dereference
+    static final class Deref extends Expr {
+        final Expr cell;
+
+        Deref(Kind kind, Expr cell) {
+            super(kind);
+            this.cell = cell;
+        }
+
+        long asLong(Frame f) {
+            return ((Cell) cell.asRef(f)).l;
+        }
+
+        double asDouble(Frame f) {
+            return ((Cell) cell.asRef(f)).d;
+        }
+
+        Object asRef(Frame f) {
+            return ((Cell) cell.asRef(f)).ref;
+        }
+    }
+
+    // -----------------------------------------
+    // |              CONVERSIONS              |
+    // -----------------------------------------
+
+    // int64 -> int32, truncating like trunc
+    static final class Narrow extends Expr {
+        final Expr value;
+
+        Narrow(Expr value) {
+            super(Kind.I32);
+            this.value = value;
+        }
+
+        long asLong(Frame f) {
+            return (int) value.asLong(f);
+        }
+    }
+
+    // int32 -> int64 and fp32 -> fp64, the slot already holds the wider value so only the kind changes
+    static final class Widen extends Expr {
+        final Expr value;
+
+        Widen(Kind kind, Expr value) {
+            super(kind);
+            this.value = value;
+        }
+
+        long asLong(Frame f) {
+            return value.asLong(f);
+        }
+
+        double asDouble(Frame f) {
+            return value.asDouble(f);
+        }
+    }
+
+    // fp64 -> fp32, rounding like fptrunc
+    static final class RoundFloat extends Expr {
+        final Expr value;
+
+        RoundFloat(Expr value) {
+            super(Kind.F32);
+            this.value = value;
+        }
+
+        double asDouble(Frame f) {
+            return (float) value.asDouble(f);
+        }
+    }
+
+    // sitofp
+    static final class IntToFloat extends Expr {
+        final Expr value;
+
+        IntToFloat(Kind kind, Expr value) {
+            super(kind);
+            this.value = value;
+        }
+
+        double asDouble(Frame f) {
+            long v = value.asLong(f);
+            return kind == Kind.F32 ? (float) v : (double) v;
+        }
+    }
+
+    // fptosi
+    static final class FloatToInt extends Expr {
+        final Expr value;
+
+        FloatToInt(Kind kind, Expr value) {
+            super(kind);
+            this.value = value;
+        }
+
+        long asLong(Frame f) {
+            double v = value.asDouble(f);
+            return kind == Kind.I32 ? (int) v : (long) v;
+        }
+    }
+
+    // Struct values are copied when they are assigned or passed
+    static final class CopyStruct extends Expr {
+        final Expr value;
+
+        CopyStruct(Expr value) {
+            super(Kind.REF);
+            this.value = value;
+        }
+
+        Object asRef(Frame f) {
+            return ((StructValue) value.asRef(f)).copy();
+        }
+    }
+
+    // -----------------------------------------
+    // |               OPERATORS               |
+    // -----------------------------------------
+
+    static final class LongBinary extends Expr {
+        final NodeType op;
+        final Expr lhs;
+        final Expr rhs;
+
+        LongBinary(Kind kind, NodeType op, Expr lhs, Expr rhs) {
+            super(kind);
+            this.op = op;
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        long asLong(Frame f) {
+            long a = lhs.asLong(f);
+            long b = rhs.asLong(f);
+            long r = switch(op) {
+                case ADD -> a + b;
+                case SUB -> a - b;
+                case MUL -> a * b;
+                case DIV -> {
+                    if(b == 0) throw new Interpreter.Fault("integer division by zero");
+                    yield a / b;
+                }
+                case MODULO -> {
+                    if(b == 0) throw new Interpreter.Fault("integer division by zero");
+                    yield a % b;
+                }
+                case BITAND -> a & b;
+                case BITOR -> a | b;
+                case BITXOR -> a ^ b;
+                case ARITHLEFTSHIFT -> a << b;
+                case ARITHRIGHTSHIFT -> a >> b;
+                case LOGICRIGHTSHIFT -> kind == Kind.I32 ? (int) a >>> b : a >>> b;
+                default -> throw new IllegalStateException(op.toString());
+            };
+            return kind == Kind.I32 ? (int) r : r;
+        }
+    }
+
+    static final class DoubleBinary extends Expr {
+        final NodeType op;
+        final Expr lhs;
+        final Expr rhs;
+
+        DoubleBinary(Kind kind, NodeType op, Expr lhs, Expr rhs) {
+            super(kind);
+            this.op = op;
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        double asDouble(Frame f) {
+            double a = lhs.asDouble(f);
+            double b = rhs.asDouble(f);
+            double r = switch(op) {
+                case ADD -> a + b;
+                case SUB -> a - b;
+                case MUL -> a * b;
+                case DIV -> a / b;
+                case MODULO -> a % b;
+                default -> throw new IllegalStateException(op.toString());
+            };
+            return kind == Kind.F32 ? (float) r : r;
+        }
+    }
+
+    // Comparisons give 0 or 1, operands are already converted to a common kind
+    static final class Compare extends Expr {
+        final NodeType op;
+        final Expr lhs;
+        final Expr rhs;
+        final boolean floating;
+
+        Compare(NodeType op, Expr lhs, Expr rhs) {
+            super(Kind.I32);
+            this.op = op;
+            this.lhs = lhs;
+            this.rhs = rhs;
+            this.floating = lhs.kind.isDouble();
+        }
+
+        long asLong(Frame f) {
+            return isTrue(f) ? 1 : 0;
+        }
+
+        boolean isTrue(Frame f) {
+            if(floating) {
+                double a = lhs.asDouble(f);
+                double b = rhs.asDouble(f);
+                return switch(op) {
+                    case EQ -> a == b;
+                    case NEQ -> a != b;
+                    case LT -> a < b;
+                    case LTE -> a <= b;
+                    case GT -> a > b;
+                    case GTE -> a >= b;
+                    default -> throw new IllegalStateException(op.toString());
+                };
+            }
+            long a = lhs.asLong(f);
+            long b = rhs.asLong(f);
+            return switch(op) {
+                case EQ -> a == b;
+                case NEQ -> a != b;
+                case LT -> a < b;
+                case LTE -> a <= b;
+                case GT -> a > b;
+                case GTE -> a >= b;
+                default -> throw new IllegalStateException(op.toString());
+            };
+        }
+    }
+
+    static final class Logic extends Expr {
+        final boolean and;
+        final Expr lhs;
+        final Expr rhs;
+
+        Logic(boolean and, Expr lhs, Expr rhs) {
+            super(Kind.I32);
+            this.and = and;
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        long asLong(Frame f) {
+            return isTrue(f) ? 1 : 0;
+        }
+
+        boolean isTrue(Frame f) {
+            return and ? lhs.isTrue(f) && rhs.isTrue(f) : lhs.isTrue(f) || rhs.isTrue(f);
+        }
+    }
+
+    static final class Unary extends Expr {
+        final NodeType op;
+        final Expr value;
+
+        Unary(Kind kind, NodeType op, Expr value) {
+            super(kind);
+            this.op = op;
+            this.value = value;
+        }
+
+        long asLong(Frame f) {
+            long v = value.asLong(f);
+            long r = switch(op) {
+                case SWITCHSIGN -> -v;
+                case BITNEGATE -> ~v;
+                default -> throw new IllegalStateException(op.toString());
+            };
+            return kind == Kind.I32 ? (int) r : r;
+        }
+
+        double asDouble(Frame f) {
+            return -value.asDouble(f);
+        }
+    }
+
+    // -----------------------------------------
+    // |           ARRAYS AND STRUCTS          |
+    // -----------------------------------------
+
+    static final class ArrayLoad extends Expr {
+        final NodeType element;
+        final Expr array;
+        final Expr index;
+
+        ArrayLoad(Kind kind, NodeType element, Expr array, Expr index) {
+            super(kind);
+            this.element = element;
+            this.array = array;
+            this.index = index;
+        }
+
+        long asLong(Frame f) {
+            Object a = array.asRef(f);
+            int i = (int) index.asLong(f);
+            if(a instanceof int[] ints) return ints[i];
+            if(a instanceof long[] longs) return longs[i];
+            return ((byte[]) a)[i];
+        }
+
+        double asDouble(Frame f) {
+            Object a = array.asRef(f);
+            int i = (int) index.asLong(f);
+            if(a instanceof float[] floats) return floats[i];
+            return ((double[]) a)[i];
+        }
+
+        Object asRef(Frame f) {
+            return ((Object[]) array.asRef(f))[(int) index.asLong(f)];
+        }
+    }
+
+    static final class NewStruct extends Expr {
+        final Values.Layout layout;
+
+        NewStruct(Values.Layout layout) {
+            super(Kind.REF);
+            this.layout = layout;
+        }
+
+        Object asRef(Frame f) {
+            return new StructValue(layout);
+        }
+    }
+
+    // char arrays are bytes like in the generated IR, anything without a primitive kind holds references
+    static final class NewArray extends Expr {
+        final NodeType element;
+        final Expr size;
+
+        NewArray(NodeType element, Expr size) {
+            super(Kind.REF);
+            this.element = element;
+            this.size = size;
+        }
+
+        Object asRef(Frame f) {
+            int n = (int) size.asLong(f);
+            return switch(element) {
+                case INT32_T, BOOL_T -> new int[n];
+                case INT64_T -> new long[n];
+                case FP32_T -> new float[n];
+                case FP64_T -> new double[n];
+                case CHAR_T -> new byte[n];
+                default -> new Object[n];
+            };
+        }
+    }
+
+    static final class MemberLoad extends Expr {
+        final Expr struct;
+        final int index;
+
+        MemberLoad(Kind kind, Expr struct, int index) {
+            super(kind);
+            this.struct = struct;
+            this.index = index;
+        }
+
+        long asLong(Frame f) {
+            return ((StructValue) struct.asRef(f)).fields[index];
+        }
+
+        double asDouble(Frame f) {
+            return Double.longBitsToDouble(((StructValue) struct.asRef(f)).fields[index]);
+        }
+
+        Object asRef(Frame f) {
+            return ((StructValue) struct.asRef(f)).refs[index];
+        }
+    }
+
+    // -----------------------------------------
+    // |                 CALLS                 |
+    // -----------------------------------------
+
+    // Nvy function, the target is resolved once while lowering
+    static final class Call extends Expr {
+        final Interpreter.Function target;
+        final Expr[] args;
+
+        Call(Interpreter.Function target, Expr[] args) {
+            super(target.returnKind());
+            this.target = target;
+            this.args = args;
+        }
+
+        private Frame invoke(Frame f) {
+            Interpreter.Function t = target;
+            Frame callee = new Frame(t.longs, t.doubles, t.refs);
+            for(int i = 0; i < args.length; i++) {
+                int slot = t.paramSlots[i];
+                switch(args[i].kind) {
+                    case I32, I64 -> callee.longs[slot] = args[i].asLong(f);
+                    case F32, F64 -> callee.doubles[slot] = args[i].asDouble(f);
+                    default -> callee.refs[slot] = args[i].asRef(f);
+                }
+            }
+            t.body.exec(callee);
+            return callee;
+        }
+
+        long asLong(Frame f) {
+            return invoke(f).returnLong;
+        }
+
+        double asDouble(Frame f) {
+            return invoke(f).returnDouble;
+        }
+
+        Object asRef(Frame f) {
+            return invoke(f).returnRef;
+        }
+
+        void run(Frame f) {
+            invoke(f);
+        }
+    }
+
+    // Native function bound by Natives, arguments are boxed like a varargs call
+    static final class NativeCall extends Expr {
+        final Natives.Binding binding;
+        final Expr[] args;
+
+        NativeCall(Kind kind, Natives.Binding binding, Expr[] args) {
+            super(kind);
+            this.binding = binding;
+            this.args = args;
+        }
+
+        private Object invoke(Frame f) {
+            Object[] values = new Object[args.length];
+            for(int i = 0; i < args.length; i++) {
+                values[i] = switch(args[i].kind) {
+                    case I32 -> (int) args[i].asLong(f);
+                    case I64 -> args[i].asLong(f);
+                    case F32, F64 -> args[i].asDouble(f);
+                    default -> args[i].asRef(f);
+                };
+            }
+            return binding.call(values);
+        }
+
+        long asLong(Frame f) {
+            return ((Number) invoke(f)).longValue();
+        }
+
+        double asDouble(Frame f) {
+            return ((Number) invoke(f)).doubleValue();
+        }
+
+        Object asRef(Frame f) {
+            return invoke(f);
+        }
+
+        void run(Frame f) {
+            invoke(f);
+        }
+    }
+
+    // -----------------------------------------
+    // |              STATEMENTS               |
+    // -----------------------------------------
+
+    abstract static class Stmt {
+        abstract int exec(Frame f);
+    }
+
+    static final class Block extends Stmt {
+        final Stmt[] body;
+
+        Block(Stmt[] body) {
+            this.body = body;
+        }
+
+        int exec(Frame f) {
+            for(Stmt s : body) {
+                if(s.exec(f) == RETURN) return RETURN;
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class Eval extends Stmt {
+        final Expr value;
+
+        Eval(Expr value) {
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            value.run(f);
+            return NORMAL;
+        }
+    }
+
+    static final class StoreLong extends Stmt {
+        final int slot;
+        final Expr value;
+
+        StoreLong(int slot, Expr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            f.longs[slot] = value.asLong(f);
+            return NORMAL;
+        }
+    }
+
+    static final class StoreDouble extends Stmt {
+        final int slot;
+        final Expr value;
+
+        StoreDouble(int slot, Expr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            f.doubles[slot] = value.asDouble(f);
+            return NORMAL;
+        }
+    }
+
+    static final class StoreRef extends Stmt {
+        final int slot;
+        final Expr value;
+
+        StoreRef(int slot, Expr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            f.refs[slot] = value.asRef(f);
+            return NORMAL;
+        }
+    }
+
+    // Stores into the frame of the module, the value is still evaluated in the current frame
+    static final class StoreGlobal extends Stmt {
+        final Frame globals;
+        final int slot;
+        final Expr value;
+
+        StoreGlobal(Frame globals, int slot, Expr value) {
+            this.globals = globals;
+            this.slot = slot;
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            switch(value.kind) {
+                case I32, I64 -> globals.longs[slot] = value.asLong(f);
+                case F32, F64 -> globals.doubles[slot] = value.asDouble(f);
+                default -> globals.refs[slot] = value.asRef(f);
+            }
+            return NORMAL;
+        }
+    }
+
+    // *p = value and stores to address taken variables
+    static final class StoreCell extends Stmt {
+        final Expr cell;
+        final Expr value;
+
+        StoreCell(Expr cell, Expr value) {
+            this.cell = cell;
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            Cell c = (Cell) cell.asRef(f);
+            switch(value.kind) {
+                case I32, I64 -> c.l = value.asLong(f);
+                case F32, F64 -> c.d = value.asDouble(f);
+                default -> c.ref = value.asRef(f);
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class NewCell extends Stmt {
+        final int slot;
+
+        NewCell(int slot) {
+            this.slot = slot;
+        }
+
+        int exec(Frame f) {
+            f.refs[slot] = new Cell();
+            return NORMAL;
+        }
+    }
+
+    static final class ArrayStore extends Stmt {
+        final NodeType element;
+        final Expr array;
+        final Expr index;
+        final Expr value;
+
+        ArrayStore(NodeType element, Expr array, Expr index, Expr value) {
+            this.element = element;
+            this.array = array;
+            this.index = index;
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            Object a = array.asRef(f);
+            int i = (int) index.asLong(f);
+            if(a instanceof int[] ints) ints[i] = (int) value.asLong(f);
+            else if(a instanceof long[] longs) longs[i] = value.asLong(f);
+            else if(a instanceof double[] doubles) doubles[i] = value.asDouble(f);
+            else if(a instanceof float[] floats) floats[i] = (float) value.asDouble(f);
+            else if(a instanceof byte[] bytes) bytes[i] = (byte) value.asLong(f);
+            else ((Object[]) a)[i] = value.asRef(f);
+            return NORMAL;
+        }
+    }
+
+    static final class MemberStore extends Stmt {
+        final Expr struct;
+        final int index;
+        final Expr value;
+
+        MemberStore(Expr struct, int index, Expr value) {
+            this.struct = struct;
+            this.index = index;
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            StructValue s = (StructValue) struct.asRef(f);
+            switch(value.kind) {
+                case I32, I64 -> s.fields[index] = value.asLong(f);
+                case F32, F64 -> s.fields[index] = Double.doubleToRawLongBits(value.asDouble(f));
+                default -> s.refs[index] = value.asRef(f);
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class If extends Stmt {
+        final Expr condition;
+        final Stmt then;
+        final Stmt otherwise;
+
+        If(Expr condition, Stmt then, Stmt otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        int exec(Frame f) {
+            return condition.isTrue(f) ? then.exec(f) : otherwise.exec(f);
+        }
+    }
+
+    static final class For extends Stmt {
+        final Stmt init;
+        final Expr condition;
+        final Stmt body;
+        final Stmt step;
+
+        For(Stmt init, Expr condition, Stmt body, Stmt step) {
+            this.init = init;
+            this.condition = condition;
+            this.body = body;
+            this.step = step;
+        }
+
+        int exec(Frame f) {
+            init.exec(f);
+            while(condition.isTrue(f)) {
+                if(body.exec(f) == RETURN) return RETURN;
+                step.exec(f);
+            }
+            return NORMAL;
+        }
+    }
+
+    static final class Return extends Stmt {
+        final Expr value;
+
+        Return(Expr value) {
+            this.value = value;
+        }
+
+        int exec(Frame f) {
+            if(value != null) {
+                switch(value.kind) {
+                    case I32, I64 -> f.returnLong = value.asLong(f);
+                    case F32, F64 -> f.returnDouble = value.asDouble(f);
+                    default -> f.returnRef = value.asRef(f);
+                }
+            }
+            return RETURN;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package nvyc.interpreter;
+
+import nvyc.data.NodeType;
+
+import java.util.Map;
+
+/*
+
+    Runtime values that don't fit a primitive slot.
+
+ */
+final class Values {
+
+    private Values() {}
+
+    // Home of an address taken variable, &x evaluates to the cell and *p reads through it
+    static final class Cell {
+        long l;
+        double d;
+        Object ref;
+    }
+
+    // Member types and positions of a struct, from the layout the parser registered in VariableData
+    static final class Layout {
+        final String name;
+        final NodeType[] types;
+        final Map<String, Integer> index;
+
+        Layout(String name, NodeType[] types, Map<String, Integer> index) {
+            this.name = name;
+            this.types = types;
+            this.index = index;
+        }
+    }
+
+    // Structs are values like in the generated IR, copied on assignment. fp members are stored as raw bits
+    static final class StructValue {
+        final Layout layout;
+        final long[] fields;
+        final Object[] refs;
+
+        StructValue(Layout layout) {
+            this.layout = layout;
+            this.fields = new long[layout.types.length];
+            this.refs = new Object[layout.types.length];
+        }
+
+        private StructValue(StructValue other) {
+            this.layout = other.layout;
+            this.fields = other.fields.clone();
+            this.refs = other.refs.clone();
+        }
+
+        StructValue copy() {
+            return new StructValue(this);
+        }
+    }
+}
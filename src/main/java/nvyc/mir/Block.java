@@ -0,0 +1,55 @@
+package nvyc.mir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Block {
+
+    // A basic block: phis first, one terminator last. preds and succs are kept by MirFunction.buildCfg
+
+    String name;
+    final List<Instruction> instructions = new ArrayList<>();
+    final List<Block> preds = new ArrayList<>();
+    final List<Block> succs = new ArrayList<>();
+
+    Block(String name) {
+        this.name = name;
+    }
+
+    // Null for an entry block without a label
+    public String getName() {
+        return name;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public List<Block> getPreds() {
+        return preds;
+    }
+
+    public List<Block> getSuccs() {
+        return succs;
+    }
+
+    public Instruction terminator() {
+        return instructions.get(instructions.size() - 1);
+    }
+
+    public List<Instruction> phis() {
+        int count = 0;
+        while(count < instructions.size() && instructions.get(count).isPhi()) count++;
+        return instructions.subList(0, count);
+    }
+
+    // Where code can be added before the terminator
+    int end() {
+        return instructions.size() - 1;
+    }
+
+    @Override
+    public String toString() {
+        return name == null ? "<entry>" : name;
+    }
+}
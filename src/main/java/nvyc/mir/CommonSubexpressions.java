@@ -0,0 +1,120 @@
+package nvyc.mir;
+
+import java.util.*;
+
+public class CommonSubexpressions implements MirPass {
+
+    /*
+
+        Value numbering over the dominator tree. An instruction computing what a dominating one already
+        computed is removed and its uses read the earlier register, so a.x * a.x + a.x extracts a.x once
+        and arr[i] read twice is one getelementptr.
+
+            pure        arithmetic, compares, casts, getelementptr, extractvalue: available in every block
+                        the first one dominates. Operands of add, mul, and, or, xor, fadd and fmul are unordered
+            loads       available until a store or a call, which may write any memory. A store makes the
+                        value it wrote available to a load of the same type through the same pointer.
+                        Loads only carry over into a block whose single predecessor is its dominator,
+                        anything else may have come through a store on the way
+
+        Pure instructions and loads nothing uses are removed afterwards, codegen leaves a few of those
+        and reusing a value leaves the instructions that computed the operands of the copy.
+        Divisions are only removed when the divisor is a non zero literal, so a program that traps still traps.
+
+     */
+
+    private static final Set<String> COMMUTATIVE = Set.of("add", "mul", "and", "or", "xor", "fadd", "fmul");
+
+    private int changes;
+
+    @Override
+    public String getName() {
+        return "cse";
+    }
+
+    @Override
+    public int run(MirFunction function) {
+        changes = 0;
+        DominatorTree dominators = new DominatorTree(function);
+        Map<String, String> replaced = new HashMap<>();
+        number(function.getEntry(), dominators, new HashMap<>(), new HashMap<>(), replaced);
+        function.replaceAllUses(replaced);
+        removeUnused(function);
+        return changes;
+    }
+
+    private void number(Block block, DominatorTree dominators, Map<String, String> pure, Map<String, String> memory,
+                        Map<String, String> replaced) {
+        Iterator<Instruction> instructions = block.instructions.iterator();
+        while(instructions.hasNext()) {
+            Instruction instruction = instructions.next();
+            instruction.replaceOperands(value -> MirFunction.resolve(value, replaced));
+
+            if(instruction.opcode.equals("store") && instruction.pointerType != null) {
+                memory.clear();
+                if(instruction.type.equals(instruction.pointerType)) memory.put(loadKey(instruction.type, instruction.operands.get(1)), instruction.operands.get(0));
+                continue;
+            }
+            if(instruction.writesMemory()) {
+                memory.clear();
+                continue;
+            }
+            if(instruction.result == null) continue;
+
+            Map<String, String> available;
+            String key;
+            if(instruction.isPure()) {
+                available = pure;
+                key = key(instruction);
+            } else if(instruction.opcode.equals("load") && instruction.pointerType != null && instruction.type.equals(instruction.pointerType)) {
+                available = memory;
+                key = loadKey(instruction.type, instruction.operands.get(0));
+            } else {
+                continue;
+            }
+
+            String previous = available.get(key);
+            if(previous != null) {
+                replaced.put(instruction.result, previous);
+                instructions.remove();
+                changes++;
+            } else {
+                available.put(key, instruction.result);
+            }
+        }
+
+        for(Block child : dominators.children(block)) {
+            boolean straight = child.preds.size() == 1 && child.preds.get(0) == block;
+            number(child, dominators, new HashMap<>(pure), straight ? new HashMap<>(memory) : new HashMap<>(), replaced);
+        }
+    }
+
+    private static String key(Instruction instruction) {
+        if(!COMMUTATIVE.contains(instruction.opcode) || instruction.operands.size() != 2) return instruction.key();
+        List<String> operands = new ArrayList<>(instruction.operands);
+        Collections.sort(operands);
+        return instruction.opcode + " " + instruction.type + " " + operands;
+    }
+
+    private static String loadKey(String type, String pointer) {
+        return type + "* " + pointer;
+    }
+
+    private void removeUnused(MirFunction function) {
+        int before;
+        do {
+            before = changes;
+            Map<String, Integer> uses = function.uses();
+            for(Block block : function.blocks) {
+                Iterator<Instruction> instructions = block.instructions.iterator();
+                while(instructions.hasNext()) {
+                    Instruction instruction = instructions.next();
+                    if(instruction.result == null || uses.containsKey(instruction.result)) continue;
+                    if(!instruction.isRemovable() && !instruction.opcode.equals("load")) continue;
+                    instructions.remove();
+                    changes++;
+                }
+            }
+        } while(changes > before);
+    }
+}
@@ -0,0 +1,123 @@
+package nvyc.mir;
+
+import java.util.*;
+
+public class DominatorTree {
+
+    /*
+
+        Dominators of a MirFunction, computed with Cooper, Harvey and Kennedy over the reverse postorder.
+        Blocks the entry can't reach have no dominator and dominate nothing.
+        Built from the current CFG, a pass that changes it builds a new tree.
+
+     */
+
+    private final List<Block> order = new ArrayList<>();
+    private final Map<Block, Integer> index = new HashMap<>();
+    private final Map<Block, Block> idom = new HashMap<>();
+    private final Map<Block, List<Block>> children = new HashMap<>();
+
+    public DominatorTree(MirFunction function) {
+        Block entry = function.getEntry();
+        List<Block> postorder = new ArrayList<>();
+        Set<Block> visited = new HashSet<>();
+        Deque<Iterator<Block>> stack = new ArrayDeque<>();
+        Deque<Block> path = new ArrayDeque<>();
+        visited.add(entry);
+        stack.push(entry.succs.iterator());
+        path.push(entry);
+        while(!stack.isEmpty()) {
+            Iterator<Block> succs = stack.peek();
+            if(succs.hasNext()) {
+                Block next = succs.next();
+                if(visited.add(next)) {
+                    stack.push(next.succs.iterator());
+                    path.push(next);
+                }
+            } else {
+                stack.pop();
+                postorder.add(path.pop());
+            }
+        }
+
+        for(int i = postorder.size() - 1; i >= 0; i--) {
+            index.put(postorder.get(i), order.size());
+            order.add(postorder.get(i));
+        }
+
+        idom.put(entry, entry);
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(Block block : order.subList(1, order.size())) {
+                Block dominator = null;
+                for(Block pred : block.preds) {
+                    if(!idom.containsKey(pred)) continue;
+                    dominator = dominator == null ? pred : intersect(pred, dominator);
+                }
+                if(idom.get(block) != dominator) {
+                    idom.put(block, dominator);
+                    changed = true;
+                }
+            }
+        }
+
+        for(Block block : order) children.put(block, new ArrayList<>());
+        for(Block block : order.subList(1, order.size())) children.get(idom.get(block)).add(block);
+    }
+
+    private Block intersect(Block a, Block b) {
+        while(a != b) {
+            while(index.get(a) > index.get(b)) a = idom.get(a);
+            while(index.get(b) > index.get(a)) b = idom.get(b);
+        }
+        return a;
+    }
+
+    // Reachable blocks, each after its dominator
+    public List<Block> reversePostorder() {
+        return order;
+    }
+
+    public boolean reachable(Block block) {
+        return index.containsKey(block);
+    }
+
+    // The entry is its own immediate dominator, unreachable blocks have none
+    public Block idom(Block block) {
+        return idom.get(block);
+    }
+
+    public List<Block> children(Block block) {
+        return children.getOrDefault(block, List.of());
+    }
+
+    public boolean dominates(Block a, Block b) {
+        if(!reachable(a) || !reachable(b)) return false;
+        while(b != a) {
+            Block up = idom.get(b);
+            if(up == b) return false;
+            b = up;
+        }
+        return true;
+    }
+
+    // Blocks where the dominance of each block ends, where phis for a value defined in it go
+    public Map<Block, Set<Block>> frontiers() {
+        Map<Block, Set<Block>> frontiers = new HashMap<>();
+        for(Block block : order) frontiers.put(block, new LinkedHashSet<>());
+
+        for(Block block : order) {
+            if(block.preds.size() < 2) continue;
+            for(Block pred : block.preds) {
+                if(!reachable(pred)) continue;
+                Block runner = pred;
+                while(runner != idom.get(block)) {
+                    frontiers.get(runner).add(block);
+                    runner = idom.get(runner);
+                }
+            }
+        }
+        return frontiers;
+    }
+}
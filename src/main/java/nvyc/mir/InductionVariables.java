@@ -0,0 +1,181 @@
+package nvyc.mir;
+
+import java.util.*;
+
+public class InductionVariables implements MirPass {
+
+    /*
+
+        Finds the counted loops of a function and records them in its LoopInfo, see there for the shape.
+        SSA already turned the loop variable of a for loop into a phi in the loop_condition header, this
+        pass recognises it as an induction variable: the phi, the add of a constant step on the back edge
+        and the signed compare against an invariant bound that leaves the loop.
+
+        The trip count is worked out when start and bound are constants:
+            slt, sle    with a positive step
+            sgt, sge    with a negative step
+            ne          when the bound is hit exactly
+        A loop whose last increment would wrap around, or that never ends, gets no trip count.
+
+        Nothing is rewritten, the table is for the passes after this one.
+
+     */
+
+    private static final Map<String, String> SWAPPED = Map.of(
+            "slt", "sgt", "sle", "sge", "sgt", "slt", "sge", "sle", "eq", "eq", "ne", "ne");
+
+    @Override
+    public String getName() {
+        return "indvars";
+    }
+
+    @Override
+    public int run(MirFunction function) {
+        LoopInfo info = new LoopInfo();
+        DominatorTree dominators = new DominatorTree(function);
+        LoopNest loops = new LoopNest(function, dominators);
+
+        Map<String, Instruction> definitions = new HashMap<>();
+        Map<String, Block> blocks = new HashMap<>();
+        for(Block block : function.blocks) {
+            for(Instruction instruction : block.instructions) {
+                if(instruction.result == null) continue;
+                definitions.put(instruction.result, instruction);
+                blocks.put(instruction.result, block);
+            }
+        }
+
+        for(LoopNest.Loop loop : loops.getLoops()) {
+            LoopInfo.CountedLoop counted = counted(loop, definitions, blocks);
+            if(counted != null) info.add(counted);
+        }
+        function.loopInfo = info;
+        return 0;
+    }
+
+    private static LoopInfo.CountedLoop counted(LoopNest.Loop loop, Map<String, Instruction> definitions, Map<String, Block> blocks) {
+        Block header = loop.header;
+        Block preheader = loop.preheader();
+        if(preheader == null || loop.latches.size() != 1 || header.name == null) return null;
+        Block latch = loop.latches.get(0);
+
+        // The header decides alone whether another iteration runs
+        Instruction branch = header.terminator();
+        if(!branch.opcode.equals("br") || branch.targets.size() != 2 || loop.exits().size() != 1) return null;
+        for(Block block : loop.blocks) {
+            if(block != header && block.succs.contains(loop.exits().get(0))) return null;
+        }
+        Block body = header.succs.get(0);
+        Block exit = header.succs.get(1);
+        if(loop.contains(exit) == loop.contains(body)) return null;
+        boolean inverted = !loop.contains(body);
+        if(inverted) {
+            Block swap = body;
+            body = exit;
+            exit = swap;
+        }
+
+        Instruction compare = definitions.get(branch.operands.get(0));
+        if(compare == null || !compare.opcode.equals("icmp") || blocks.get(compare.result) != header) return null;
+        if(!SWAPPED.containsKey(compare.predicate)) return null;
+
+        for(Instruction phi : header.phis()) {
+            if(phi.operands.size() != 2 || !phi.type.matches("i\\d+")) continue;
+            int fromPreheader = phi.targets.indexOf(preheader.name);
+            int fromLatch = phi.targets.indexOf(latch.name);
+            if(fromPreheader < 0 || fromLatch < 0) continue;
+
+            Instruction increment = definitions.get(phi.operands.get(fromLatch));
+            Long step = step(increment, phi.result);
+            if(step == null || step == 0 || !loop.contains(blocks.get(increment.result))) continue;
+
+            String predicate;
+            String bound;
+            if(compare.operands.get(0).equals(phi.result)) {
+                predicate = compare.predicate;
+                bound = compare.operands.get(1);
+            } else if(compare.operands.get(1).equals(phi.result)) {
+                predicate = SWAPPED.get(compare.predicate);
+                bound = compare.operands.get(0);
+            } else {
+                continue;
+            }
+            if(predicate == null || (blocks.containsKey(bound) && loop.contains(blocks.get(bound)))) continue;
+
+            // Leaving on true means staying while the opposite holds
+            if(inverted) predicate = inverse(predicate);
+            if(predicate == null) continue;
+
+            String start = phi.operands.get(fromPreheader);
+            Long trips = tripCount(constant(start), step, constant(bound), predicate, Integer.parseInt(phi.type.substring(1)));
+            return new LoopInfo.CountedLoop(loop, preheader, latch, body, exit, phi, increment, compare,
+                    phi.type, start, step, bound, predicate, trips);
+        }
+        return null;
+    }
+
+    // The constant the increment adds to iv, null when it isn't iv plus or minus a constant
+    private static Long step(Instruction increment, String iv) {
+        if(increment == null || increment.operands.size() != 2) return null;
+        List<String> operands = increment.operands;
+        switch(increment.opcode) {
+            case "add" -> {
+                if(operands.get(0).equals(iv)) return constant(operands.get(1));
+                if(operands.get(1).equals(iv)) return constant(operands.get(0));
+            }
+            case "sub" -> {
+                Long step = operands.get(0).equals(iv) ? constant(operands.get(1)) : null;
+                return step == null ? null : -step;
+            }
+            default -> {}
+        }
+        return null;
+    }
+
+    private static String inverse(String predicate) {
+        return switch(predicate) {
+            case "slt" -> "sge";
+            case "sle" -> "sgt";
+            case "sgt" -> "sle";
+            case "sge" -> "slt";
+            case "eq" -> "ne";
+            case "ne" -> "eq";
+            default -> null;
+        };
+    }
+
+    static Long constant(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Iterations of a loop running while iv pred bound, iv going from start by step. Null when unknown
+    static Long tripCount(Long start, long step, Long bound, String predicate, int bits) {
+        if(start == null || bound == null || bits > 64) return null;
+        long max = bits == 64 ? Long.MAX_VALUE : (1L << (bits - 1)) - 1;
+        long min = bits == 64 ? Long.MIN_VALUE : -(1L << (bits - 1));
+
+        try {
+            long distance = Math.subtractExact(bound, start);
+            long trips = switch(predicate) {
+                case "slt" -> step < 0 ? -1 : distance <= 0 ? 0 : Math.addExact(distance, step - 1) / step;
+                case "sle" -> step < 0 ? -1 : distance < 0 ? 0 : distance / step + 1;
+                case "sgt" -> step > 0 ? -1 : distance >= 0 ? 0 : Math.addExact(-distance, -step - 1) / -step;
+                case "sge" -> step > 0 ? -1 : distance > 0 ? 0 : -distance / -step + 1;
+                case "ne" -> distance % step != 0 || distance / step < 0 ? -1 : distance / step;
+                default -> -1;
+            };
+            if(trips < 0) return null;
+
+            // The value the last increment leaves in iv has to fit, or the loop wraps around instead of ending
+            long last = Math.addExact(start, Math.multiplyExact(trips, step));
+            if(last > max || last < min) return null;
+            return trips;
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package nvyc.mir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class Instruction {
+
+    /*
+
+        One instruction of a MirFunction. The text codegen wrote is split into operands, which passes rewrite,
+        and the fixed text around them (pieces), so an untouched instruction prints exactly as it was emitted.
+
+        Operands are values: registers, constants, globals or undef. Blocks named by br and phi are targets.
+        Known forms get an opcode and a type:
+            binary      %r = add i32 a, b               operands a, b
+            compare     %r = icmp slt i32 a, b          operands a, b, type is the operand type
+            cast        %r = sext i32 a to i64          operands a, type is the source type
+            alloca      %r = alloca T
+            load        %r = load T, T* p               operands p
+            store       store T v, T* p                 operands v, p
+            phi         %r = phi T [ a, %x ], ...       operands a..., targets x...
+            br          br label %x, br i1 c, ...       operands c, targets x...
+            ret         ret T v                         operands v
+        Anything else (call, getelementptr, extractvalue...) has the first word as opcode and its registers as operands.
+
+        A word where a value belongs that is none of these (a variable name codegen left unresolved) can't be
+        modelled, the line isn't parsed at all and the function isn't lifted.
+
+     */
+
+    static final Set<String> BINARY = Set.of("add", "sub", "mul", "sdiv", "srem", "udiv", "urem", "shl", "lshr", "ashr",
+            "and", "or", "xor", "fadd", "fsub", "fmul", "fdiv", "frem");
+    static final Set<String> CASTS = Set.of("sext", "zext", "trunc", "sitofp", "uitofp", "fptosi", "fptoui",
+            "fpext", "fptrunc", "bitcast", "ptrtoint", "inttoptr");
+
+    // Division traps on zero, it can be reused but never moved where it didn't run
+    private static final Set<String> TRAPS = Set.of("sdiv", "srem", "udiv", "urem");
+    private static final Set<String> PURE = Set.of("icmp", "fcmp", "getelementptr", "extractvalue", "insertvalue", "select");
+
+    private static final Pattern RESULT = Pattern.compile("\t(%[\\w.$]+) = (.*)");
+    private static final Pattern PHI = Pattern.compile("phi (\\S+) (.*)");
+    private static final Pattern INCOMING = Pattern.compile("\\[ ([^,\\s]+), %([\\w.$]+) \\]");
+    private static final Pattern JUMP = Pattern.compile("br label %([\\w.$]+)");
+    private static final Pattern BRANCH = Pattern.compile("br i1 ([^,\\s]+), label %([\\w.$]+), label %([\\w.$]+)");
+    private static final Pattern BINARY_FORM = Pattern.compile("(\\w+) (\\S+) ([^,\\s]+), ([^,\\s]+)");
+    private static final Pattern COMPARE_FORM = Pattern.compile("([if]cmp) (\\w+) (\\S+) ([^,\\s]+), ([^,\\s]+)");
+    private static final Pattern CAST_FORM = Pattern.compile("(\\w+) (\\S+) ([^,\\s]+) to (\\S+)");
+    private static final Pattern ALLOCA_FORM = Pattern.compile("alloca (.+)");
+    private static final Pattern LOAD_FORM = Pattern.compile("load ([^,]+), ([^,]+)\\* ([^,\\s]+)");
+    private static final Pattern STORE_FORM = Pattern.compile("store (\\S+) ([^,\\s]+), ([^,]+)\\* ([^,\\s]+)");
+    private static final Pattern RET_FORM = Pattern.compile("ret (\\S+) ([^,\\s]+)");
+    private static final Pattern REGISTER = Pattern.compile("%[\\w.$]+");
+    private static final Pattern VALUE = Pattern.compile(
+            "[%@][\\w.$]+|-?\\d+(?:\\.\\d+)?(?:e[+-]?\\d+)?|0x[0-9A-Fa-f]+|true|false|null|undef|zeroinitializer");
+
+    String result;
+    String opcode;
+    String type;
+    String predicate;
+    String pointerType;
+    final List<String> operands = new ArrayList<>();
+    final List<String> targets = new ArrayList<>();
+    List<String> pieces;
+    String comment = "";
+
+    private Instruction() {}
+
+    // Null when an operand isn't a value, see above
+    static Instruction parse(String line, Set<String> typeNames) {
+        Instruction instruction = new Instruction();
+        int semicolon = line.indexOf(';');
+        String code = semicolon < 0 ? line : line.substring(0, semicolon);
+        String stripped = code.stripTrailing();
+        instruction.comment = code.substring(stripped.length()) + (semicolon < 0 ? "" : line.substring(semicolon));
+
+        String body;
+        Matcher result = RESULT.matcher(stripped);
+        if(result.matches()) {
+            instruction.result = result.group(1);
+            body = result.group(2);
+        } else {
+            body = stripped.substring(1);
+        }
+
+        if(!instruction.structured(body)) instruction.generic(body, typeNames);
+        return instruction.values(body) ? instruction : null;
+    }
+
+    private boolean structured(String body) {
+        Matcher m;
+        if((m = PHI.matcher(body)).matches()) {
+            opcode = "phi";
+            type = m.group(1);
+            Matcher incoming = INCOMING.matcher(m.group(2));
+            StringJoiner check = new StringJoiner(", ");
+            while(incoming.find()) {
+                operands.add(incoming.group(1));
+                targets.add(incoming.group(2));
+                check.add(incoming.group());
+            }
+            return check.toString().equals(m.group(2)) || reset();
+        }
+        if((m = JUMP.matcher(body)).matches()) {
+            opcode = "br";
+            targets.add(m.group(1));
+            return true;
+        }
+        if((m = BRANCH.matcher(body)).matches()) {
+            opcode = "br";
+            operands.add(m.group(1));
+            targets.add(m.group(2));
+            targets.add(m.group(3));
+            return true;
+        }
+        if((m = COMPARE_FORM.matcher(body)).matches()) {
+            opcode = m.group(1);
+            predicate = m.group(2);
+            type = m.group(3);
+            return form(body, m, 4, 5);
+        }
+        if((m = BINARY_FORM.matcher(body)).matches() && BINARY.contains(m.group(1))) {
+            opcode = m.group(1);
+            type = m.group(2);
+            return form(body, m, 3, 4);
+        }
+        if((m = CAST_FORM.matcher(body)).matches() && CASTS.contains(m.group(1))) {
+            opcode = m.group(1);
+            type = m.group(2);
+            return form(body, m, 3);
+        }
+        if((m = ALLOCA_FORM.matcher(body)).matches()) {
+            opcode = "alloca";
+            type = m.group(1);
+            return form(body, m);
+        }
+        if((m = LOAD_FORM.matcher(body)).matches()) {
+            opcode = "load";
+            type = m.group(1);
+            pointerType = m.group(2);
+            return form(body, m, 3);
+        }
+        if((m = STORE_FORM.matcher(body)).matches()) {
+            opcode = "store";
+            type = m.group(1);
+            pointerType = m.group(3);
+            return form(body, m, 2, 4);
+        }
+        if(body.equals("ret void") || body.equals("unreachable")) {
+            opcode = body.substring(0, body.indexOf(' ') < 0 ? body.length() : body.indexOf(' '));
+            return form(body, null);
+        }
+        if((m = RET_FORM.matcher(body)).matches()) {
+            opcode = "ret";
+            type = m.group(1);
+            return form(body, m, 2);
+        }
+        return false;
+    }
+
+    private boolean reset() {
+        operands.clear();
+        targets.clear();
+        return false;
+    }
+
+    // Splits body around the given groups of m, which become the operands
+    private boolean form(String body, Matcher m, int... groups) {
+        pieces = new ArrayList<>();
+        int from = 0;
+        for(int group : groups) {
+            pieces.add(body.substring(from, m.start(group)));
+            operands.add(m.group(group));
+            from = m.end(group);
+        }
+        pieces.add(body.substring(from));
+        return true;
+    }
+
+    private void generic(String body, Set<String> typeNames) {
+        int space = body.indexOf(' ');
+        opcode = space < 0 ? body : body.substring(0, space);
+        pieces = new ArrayList<>();
+
+        Matcher registers = REGISTER.matcher(body);
+        int from = 0;
+        while(registers.find()) {
+            String register = registers.group();
+            if(typeNames.contains(register) || body.startsWith("label ", Math.max(0, registers.start() - 6))) continue;
+            pieces.add(body.substring(from, registers.start()));
+            operands.add(register);
+            from = registers.end();
+        }
+        pieces.add(body.substring(from));
+    }
+
+    // Whether every operand is a value. Only the registers of a generic form are operands, the others are
+    // checked in the text: the last word of each argument, after the source type of a getelementptr
+    private boolean values(String body) {
+        for(String operand : operands) {
+            if(!VALUE.matcher(operand).matches()) return false;
+        }
+        if(!isPure() || isBinary() || CASTS.contains(opcode) || opcode.endsWith("cmp")) return true;
+
+        List<String> arguments = arguments(body.substring(opcode.length()).replaceFirst("^ inbounds", ""));
+        for(int i = opcode.equals("getelementptr") ? 1 : 0; i < arguments.size(); i++) {
+            String argument = arguments.get(i);
+            if(!VALUE.matcher(argument.substring(argument.lastIndexOf(' ') + 1)).matches()) return false;
+        }
+        return true;
+    }
+
+    // The comma separated arguments of an instruction, commas inside aggregate types left alone
+    private static List<String> arguments(String text) {
+        List<String> arguments = new ArrayList<>();
+        int depth = 0;
+        int from = 0;
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '[' || c == '{' || c == '(' || c == '<') depth++;
+            else if(c == ']' || c == '}' || c == ')' || c == '>') depth--;
+            else if(c == ',' && depth == 0) {
+                arguments.add(text.substring(from, i).strip());
+                from = i + 1;
+            }
+        }
+        arguments.add(text.substring(from).strip());
+        return arguments;
+    }
+
+    // -----------------------------------------
+    // |                 KINDS                 |
+    // -----------------------------------------
+
+    public String getResult() {
+        return result;
+    }
+
+    public String getOpcode() {
+        return opcode;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public List<String> getOperands() {
+        return operands;
+    }
+
+    public boolean isTerminator() {
+        return opcode.equals("br") || opcode.equals("ret") || opcode.equals("unreachable") || opcode.equals("switch");
+    }
+
+    public boolean isPhi() {
+        return opcode.equals("phi");
+    }
+
+    public boolean isBinary() {
+        return BINARY.contains(opcode);
+    }
+
+    // Computes a value from its operands only, so two with the same operands are the same value
+    public boolean isPure() {
+        return isBinary() || CASTS.contains(opcode) || PURE.contains(opcode);
+    }
+
+    // Pure and can't trap, so it may run where it wouldn't have before
+    public boolean isSpeculatable() {
+        return isPure() && !TRAPS.contains(opcode);
+    }
+
+    // Pure and can't trap where it is, so nothing changes if it doesn't run. A division only when it divides by a non zero literal
+    public boolean isRemovable() {
+        if(!TRAPS.contains(opcode)) return isPure();
+        Long divisor = InductionVariables.constant(operands.get(1));
+        return divisor != null && divisor != 0;
+    }
+
+    public boolean readsMemory() {
+        return opcode.equals("load") || opcode.equals("call");
+    }
+
+    // Anything that isn't known to leave memory alone, calls included
+    public boolean writesMemory() {
+        return !isPure() && !readsMemory() && !opcode.equals("alloca") && !opcode.equals("phi") && !isTerminator()
+                || opcode.equals("call");
+    }
+
+    // -----------------------------------------
+    // |                 TEXT                  |
+    // -----------------------------------------
+
+    public void replaceOperands(UnaryOperator<String> replacement) {
+        operands.replaceAll(replacement);
+    }
+
+    // Same opcode, types and operands, the result and comment aside
+    public String key() {
+        return body();
+    }
+
+    public Instruction copy() {
+        Instruction copy = new Instruction();
+        copy.result = result;
+        copy.opcode = opcode;
+        copy.type = type;
+        copy.predicate = predicate;
+        copy.pointerType = pointerType;
+        copy.operands.addAll(operands);
+        copy.targets.addAll(targets);
+        copy.pieces = pieces;
+        copy.comment = comment;
+        return copy;
+    }
+
+    static Instruction phi(String result, String type) {
+        Instruction phi = new Instruction();
+        phi.result = result;
+        phi.opcode = "phi";
+        phi.type = type;
+        return phi;
+    }
+
+    static Instruction jump(String target) {
+        Instruction jump = new Instruction();
+        jump.opcode = "br";
+        jump.targets.add(target);
+        return jump;
+    }
+
+    String body() {
+        if(isPhi()) {
+            StringJoiner incoming = new StringJoiner(", ");
+            for(int i = 0; i < operands.size(); i++) incoming.add("[ " + operands.get(i) + ", %" + targets.get(i) + " ]");
+            return "phi " + type + " " + incoming;
+        }
+        if(opcode.equals("br")) {
+            if(operands.isEmpty()) return "br label %" + targets.get(0);
+            return "br i1 " + operands.get(0) + ", label %" + targets.get(0) + ", label %" + targets.get(1);
+        }
+
+        StringBuilder body = new StringBuilder(pieces.get(0));
+        for(int i = 0; i < operands.size(); i++) body.append(operands.get(i)).append(pieces.get(i + 1));
+        return body.toString();
+    }
+
+    public String print() {
+        return "\t" + (result != null ? result + " = " : "") + body() + comment;
+    }
+
+    @Override
+    public String toString() {
+        return print();
+    }
+}
@@ -0,0 +1,71 @@
+package nvyc.mir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LoopInfo {
+
+    /*
+
+        The counted loops of a function, filled in by InductionVariables for the passes after it.
+        Only valid until the CFG of the function changes, a pass that changes it clears the table.
+        How many loops were found and how many had a trip count is kept through that, for --stats.
+
+        A counted loop has the shape codegen gives a for loop once SSA is built:
+            preheader:  br label %header
+            header:     %iv = phi T [ start, %preheader ], [ %next, %latch ]
+                        %c = icmp pred T %iv, bound
+                        br i1 %c, label %body, label %exit
+            ...
+            latch:      %next = add T %iv, step
+                        br label %header
+        with start and step constants or, for start, a value from outside the loop, and bound invariant.
+        The header is the only way out of the loop.
+
+     */
+
+    // tripCount is null when start or bound is only known at runtime
+    public record CountedLoop(LoopNest.Loop loop, Block preheader, Block latch, Block body, Block exit,
+                              Instruction iv, Instruction increment, Instruction compare,
+                              String type, String start, long step, String bound, String predicate, Long tripCount) {
+
+        public Block header() {
+            return loop.getHeader();
+        }
+    }
+
+    private final List<CountedLoop> loops = new ArrayList<>();
+    private int counted;
+    private int known;
+
+    void add(CountedLoop loop) {
+        loops.add(loop);
+        counted++;
+        if(loop.tripCount() != null) known++;
+    }
+
+    // The loops no longer match the CFG, the counts stay
+    void clear() {
+        loops.clear();
+    }
+
+    public List<CountedLoop> getCountedLoops() {
+        return loops;
+    }
+
+    public CountedLoop get(Block header) {
+        for(CountedLoop loop : loops) {
+            if(loop.header() == header) return loop;
+        }
+        return null;
+    }
+
+    // Counted loops InductionVariables found, also after the table was cleared
+    public int countedLoops() {
+        return counted;
+    }
+
+    public int knownTripCounts() {
+        return known;
+    }
+}
@@ -0,0 +1,151 @@
+package nvyc.mir;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LoopInvariantMotion implements MirPass {
+
+    /*
+
+        Moves computations that give the same value on every iteration out of loops, into the preheader
+        codegen jumps to the loop_condition header from. Inner loops go first, so something invariant in
+        the outer loop too keeps moving out.
+
+        An instruction is invariant when none of its operands is computed in the loop. What moves:
+            pure        arithmetic, compares, casts, getelementptr, extractvalue. Divisions stay, hoisting
+                        one could trap in a loop that never runs
+            loads       from a global or an alloca, or a member of one at constant indices, when no call in
+                        the loop and no store to the same global or alloca could change it. These can't
+                        fault, so moving them before a loop that runs no iteration is harmless
+
+        A loop entered from a block that also branches elsewhere gets a preheader of its own.
+
+     */
+
+    private static final Pattern GEP_BASE = Pattern.compile("getelementptr (?:inbounds )?[^,]+, [^,]+\\* ([%@][\\w.$]+)");
+
+    @Override
+    public String getName() {
+        return "licm";
+    }
+
+    @Override
+    public int run(MirFunction function) {
+        int changes = 0;
+        if(preheaders(function)) {
+            function.buildCfg();
+            changes++;
+        }
+
+        DominatorTree dominators = new DominatorTree(function);
+        LoopNest loops = new LoopNest(function, dominators);
+        Map<String, Instruction> definitions = new HashMap<>();
+        Set<String> allocas = new HashSet<>();
+        for(Block block : function.blocks) {
+            for(Instruction instruction : block.instructions) {
+                if(instruction.result != null) definitions.put(instruction.result, instruction);
+                if(instruction.opcode.equals("alloca")) allocas.add(instruction.result);
+            }
+        }
+
+        for(LoopNest.Loop loop : loops.innermostFirst()) {
+            Block preheader = loop.preheader();
+            if(preheader == null) continue;
+            changes += hoist(loop, preheader, dominators, definitions, allocas);
+        }
+        return changes;
+    }
+
+    // Gives every loop with a single entering edge a block of its own on that edge
+    private static boolean preheaders(MirFunction function) {
+        LoopNest loops = new LoopNest(function, new DominatorTree(function));
+        boolean split = false;
+        for(LoopNest.Loop loop : loops.getLoops()) {
+            List<Block> outside = new ArrayList<>();
+            for(Block pred : loop.header.preds) {
+                if(!loop.contains(pred)) outside.add(pred);
+            }
+            if(outside.size() != 1 || outside.get(0).succs.size() == 1) continue;
+
+            Block pred = outside.get(0);
+            if(pred == function.getEntry()) function.nameEntry();
+            Block preheader = function.newBlock(loop.header.name + ".preheader", function.blocks.indexOf(loop.header));
+            preheader.instructions.add(Instruction.jump(loop.header.name));
+            pred.terminator().targets.replaceAll(target -> target.equals(loop.header.name) ? preheader.name : target);
+            for(Instruction phi : loop.header.phis()) {
+                phi.targets.replaceAll(target -> target.equals(pred.name) ? preheader.name : target);
+            }
+            split = true;
+        }
+        return split;
+    }
+
+    private int hoist(LoopNest.Loop loop, Block preheader, DominatorTree dominators,
+                      Map<String, Instruction> definitions, Set<String> allocas) {
+        Set<String> defined = new HashSet<>();
+        Set<String> stored = new HashSet<>();
+        boolean calls = false;
+        for(Block block : loop.blocks) {
+            for(Instruction instruction : block.instructions) {
+                if(instruction.result != null) defined.add(instruction.result);
+                if(instruction.opcode.equals("store") && instruction.pointerType != null) {
+                    stored.add(object(instruction.operands.get(1), definitions, allocas));
+                } else if(instruction.writesMemory()) {
+                    calls = true;
+                }
+            }
+        }
+
+        int hoisted = 0;
+        for(Block block : dominators.reversePostorder()) {
+            if(!loop.contains(block)) continue;
+            Iterator<Instruction> instructions = block.instructions.iterator();
+            while(instructions.hasNext()) {
+                Instruction instruction = instructions.next();
+                if(instruction.result == null || !invariant(instruction, defined)) continue;
+
+                boolean movable = instruction.isSpeculatable();
+                if(instruction.opcode.equals("load") && instruction.pointerType != null && !calls) {
+                    String pointer = instruction.operands.get(0);
+                    String object = object(pointer, definitions, allocas);
+                    movable = object != null && !stored.contains(object) && !stored.contains(null)
+                            && dereferenceable(pointer, definitions, allocas);
+                }
+                if(!movable) continue;
+
+                instructions.remove();
+                preheader.instructions.add(preheader.end(), instruction);
+                defined.remove(instruction.result);
+                hoisted++;
+            }
+        }
+        return hoisted;
+    }
+
+    private static boolean invariant(Instruction instruction, Set<String> defined) {
+        for(String operand : instruction.operands) {
+            if(defined.contains(operand)) return false;
+        }
+        return true;
+    }
+
+    private static boolean dereferenceable(String pointer, Map<String, Instruction> definitions, Set<String> allocas) {
+        if(pointer.startsWith("@") || allocas.contains(pointer)) return true;
+        Instruction definition = definitions.get(pointer);
+        return definition != null && definition.opcode.equals("getelementptr") && allocas.containsAll(definition.operands);
+    }
+
+    // The global or alloca pointer points into, through getelementptr. Null when it isn't known
+    private static String object(String pointer, Map<String, Instruction> definitions, Set<String> allocas) {
+        for(int depth = 0; depth < 16; depth++) {
+            if(pointer.startsWith("@") || allocas.contains(pointer)) return pointer;
+            Instruction definition = definitions.get(pointer);
+            if(definition == null || !definition.opcode.equals("getelementptr")) return null;
+            Matcher base = GEP_BASE.matcher(definition.body());
+            if(!base.find()) return null;
+            pointer = base.group(1);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,144 @@
+package nvyc.mir;
+
+import java.util.*;
+
+public class LoopNest {
+
+    /*
+
+        Natural loops of a MirFunction and how they nest. A loop is found from its back edges, edges to a
+        header that dominates their source, and holds every block that reaches one of them without going
+        through the header. Back edges to the same header make one loop.
+
+        Codegen's for and while loops come out as
+            preheader -> loop_conditionN -> loop_bodyN ... -> loop_conditionN
+                                         -> loop_exitN
+        with the condition block as header and the last block of the body as the latch.
+
+     */
+
+    public static class Loop {
+        final Block header;
+        final Set<Block> blocks = new LinkedHashSet<>();
+        final List<Block> latches = new ArrayList<>();
+        final List<Loop> children = new ArrayList<>();
+        Loop parent;
+
+        Loop(Block header) {
+            this.header = header;
+        }
+
+        public Block getHeader() {
+            return header;
+        }
+
+        public Set<Block> getBlocks() {
+            return blocks;
+        }
+
+        public List<Block> getLatches() {
+            return latches;
+        }
+
+        public Loop getParent() {
+            return parent;
+        }
+
+        public List<Loop> getChildren() {
+            return children;
+        }
+
+        public boolean contains(Block block) {
+            return blocks.contains(block);
+        }
+
+        public int depth() {
+            return parent == null ? 1 : parent.depth() + 1;
+        }
+
+        // The single block entering the loop, when it does nothing but jump to the header
+        public Block preheader() {
+            Block preheader = null;
+            for(Block pred : header.preds) {
+                if(contains(pred)) continue;
+                if(preheader != null) return null;
+                preheader = pred;
+            }
+            return preheader != null && preheader.succs.size() == 1 ? preheader : null;
+        }
+
+        // Blocks outside the loop that a block inside branches to
+        public List<Block> exits() {
+            List<Block> exits = new ArrayList<>();
+            for(Block block : blocks) {
+                for(Block succ : block.succs) {
+                    if(!contains(succ) && !exits.contains(succ)) exits.add(succ);
+                }
+            }
+            return exits;
+        }
+
+        @Override
+        public String toString() {
+            return "loop " + header + " " + blocks;
+        }
+    }
+
+    private final List<Loop> loops = new ArrayList<>();
+
+    public LoopNest(MirFunction function, DominatorTree dominators) {
+        Map<Block, Loop> byHeader = new LinkedHashMap<>();
+        for(Block block : dominators.reversePostorder()) {
+            for(Block pred : block.preds) {
+                if(!dominators.dominates(block, pred)) continue;
+                Loop loop = byHeader.computeIfAbsent(block, Loop::new);
+                loop.latches.add(pred);
+            }
+        }
+
+        for(Loop loop : byHeader.values()) {
+            loop.blocks.add(loop.header);
+            Deque<Block> worklist = new ArrayDeque<>(loop.latches);
+            while(!worklist.isEmpty()) {
+                Block block = worklist.pop();
+                if(!loop.blocks.add(block)) continue;
+                for(Block pred : block.preds) {
+                    if(dominators.reachable(pred)) worklist.push(pred);
+                }
+            }
+            loops.add(loop);
+        }
+
+        // Loops either nest or don't share blocks, the parent is the smallest loop around the header
+        for(Loop loop : loops) {
+            for(Loop other : loops) {
+                if(other == loop || !other.contains(loop.header) || other.blocks.size() <= loop.blocks.size()) continue;
+                if(loop.parent == null || other.blocks.size() < loop.parent.blocks.size()) loop.parent = other;
+            }
+        }
+        for(Loop loop : loops) {
+            if(loop.parent != null) loop.parent.children.add(loop);
+        }
+    }
+
+    // Outer loops before the loops they contain
+    public List<Loop> getLoops() {
+        return loops;
+    }
+
+    // Inner loops before the loops around them, the order to transform them in
+    public List<Loop> innermostFirst() {
+        List<Loop> inner = new ArrayList<>(loops);
+        inner.sort(Comparator.comparingInt(Loop::depth).reversed());
+        return inner;
+    }
+
+    // The innermost loop holding block, null outside of loops
+    public Loop loopOf(Block block) {
+        Loop innermost = null;
+        for(Loop loop : loops) {
+            if(loop.contains(block) && (innermost == null || loop.blocks.size() < innermost.blocks.size())) innermost = loop;
+        }
+        return innermost;
+    }
+}
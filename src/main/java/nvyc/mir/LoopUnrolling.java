@@ -0,0 +1,287 @@
+package nvyc.mir;
+
+import java.util.*;
+
+public class LoopUnrolling implements MirPass {
+
+    /*
+
+        Unrolls innermost counted loops with a known trip count, see InductionVariables.
+
+            full        at most FULL_TRIPS iterations and FULL_SIZE instructions in all copies together:
+                        the body is copied once per iteration, one after the other, and the loop is gone
+            partial     at least 2 * FACTOR iterations and FACTOR copies of the body within PARTIAL_SIZE:
+                        the loop runs its body FACTOR times per iteration and tests the induction variable
+                        against a bound it reaches after trips / FACTOR iterations.
+                        The trips % FACTOR iterations left over run as copies after the loop
+
+        Each copy reads the values the previous one left in the header phis, so the induction variable of a
+        copy is the one of its iteration. Values of the header used after the loop read what the last copy left.
+
+        Only loops whose header holds nothing but its phis, the compare and the branch are unrolled,
+        with an exit reached from the header alone.
+
+     */
+
+    public static final int FULL_TRIPS = 16;
+    public static final int FULL_SIZE = 128;
+    public static final int FACTOR = 4;
+    public static final int PARTIAL_SIZE = 64;
+
+    @Override
+    public String getName() {
+        return "unroll";
+    }
+
+    @Override
+    public int run(MirFunction function) {
+        int changes = 0;
+        for(LoopInfo.CountedLoop loop : function.loopInfo.getCountedLoops()) {
+            if(loop.tripCount() == null || !loop.loop().getChildren().isEmpty() || !simple(loop)) continue;
+            long trips = loop.tripCount();
+            int size = size(loop);
+
+            if(trips <= FULL_TRIPS && trips * size <= FULL_SIZE) {
+                full(function, loop, (int) trips);
+                changes++;
+            } else if(trips >= 2L * FACTOR && size * FACTOR <= PARTIAL_SIZE) {
+                partial(function, loop, trips);
+                changes++;
+            }
+        }
+
+        if(changes > 0) {
+            function.buildCfg();
+            function.loopInfo.clear();
+        }
+        return changes;
+    }
+
+    private static boolean simple(LoopInfo.CountedLoop loop) {
+        Block header = loop.header();
+        if(header.instructions.size() != header.phis().size() + 2) return false;
+        if(loop.exit().preds.size() != 1 || !loop.exit().phis().isEmpty() || !loop.body().phis().isEmpty()) return false;
+
+        // The compare only feeds the branch
+        int reads = 0;
+        for(Block block : loop.loop().getBlocks()) {
+            for(Instruction instruction : block.instructions) reads += Collections.frequency(instruction.operands, loop.compare().result);
+        }
+        return reads == 1;
+    }
+
+    // Instructions of one iteration besides the header
+    private static int size(LoopInfo.CountedLoop loop) {
+        int size = 0;
+        for(Block block : loop.loop().getBlocks()) {
+            if(block != loop.header()) size += block.instructions.size();
+        }
+        return size;
+    }
+
+    // -----------------------------------------
+    // |               UNROLLING               |
+    // -----------------------------------------
+
+    private static void full(MirFunction function, LoopInfo.CountedLoop loop, int trips) {
+        Block header = loop.header();
+        int index = function.blocks.indexOf(header);
+
+        // The header phis hold their start values, after the last copy what it left in them
+        Map<String, String> values = entering(loop);
+        List<Block> copies = new ArrayList<>();
+        Block last = loop.preheader();
+        for(int i = 0; i < trips; i++) {
+            List<Block> copy = copy(function, loop, values);
+            retarget(last, header.name, copy.get(0).name);
+            last = latch(loop, copy);
+            values = leaving(loop, values);
+            copies.addAll(copy);
+        }
+        retarget(last, header.name, loop.exit().name);
+
+        function.blocks.removeAll(loop.loop().getBlocks());
+        function.blocks.addAll(Math.min(index, function.blocks.size()), copies);
+        function.replaceAllUses(values);
+        fold(function, copies);
+    }
+
+    // The induction variable is a constant in every copy, so is the arithmetic on it
+    private static void fold(MirFunction function, List<Block> copies) {
+        Map<String, String> constants = new HashMap<>();
+        for(Block block : copies) {
+            Iterator<Instruction> instructions = block.instructions.iterator();
+            while(instructions.hasNext()) {
+                Instruction instruction = instructions.next();
+                instruction.replaceOperands(value -> constants.getOrDefault(value, value));
+                if(!instruction.isBinary() || !instruction.type.matches("i\\d+")) continue;
+                Long left = InductionVariables.constant(instruction.operands.get(0));
+                Long right = InductionVariables.constant(instruction.operands.get(1));
+                if(left == null || right == null) continue;
+
+                Long value = switch(instruction.opcode) {
+                    case "add" -> left + right;
+                    case "sub" -> left - right;
+                    case "mul" -> left * right;
+                    default -> null;
+                };
+                if(value == null) continue;
+                int bits = Integer.parseInt(instruction.type.substring(1));
+                if(bits < 64) value = value << (64 - bits) >> (64 - bits);
+                constants.put(instruction.result, String.valueOf(value));
+                instructions.remove();
+            }
+        }
+        function.replaceAllUses(constants);
+    }
+
+    private static void partial(MirFunction function, LoopInfo.CountedLoop loop, long trips) {
+        Block header = loop.header();
+        long iterations = trips / FACTOR;
+        long end = Long.parseLong(loop.start()) + iterations * FACTOR * loop.step();
+
+        // All copies are taken before any branch of the original is retargeted
+        Map<String, String> values = leaving(loop, identity(loop));
+        List<List<Block>> unrolled = new ArrayList<>();
+        for(int i = 1; i < FACTOR; i++) {
+            unrolled.add(copy(function, loop, values));
+            values = leaving(loop, values);
+        }
+        Map<String, String> back = values;
+        values = identity(loop);
+        List<List<Block>> remainder = new ArrayList<>();
+        for(long i = 0; i < trips % FACTOR; i++) {
+            remainder.add(copy(function, loop, values));
+            values = leaving(loop, values);
+        }
+        Map<String, String> left = values;
+
+        // The copies of the body run after the original one, the last jumps back to the header
+        Set<Block> inside = new HashSet<>(loop.loop().getBlocks());
+        Block last = loop.latch();
+        int index = function.blocks.indexOf(last) + 1;
+        for(List<Block> copy : unrolled) {
+            retarget(last, header.name, copy.get(0).name);
+            last = latch(loop, copy);
+            function.blocks.addAll(index, copy);
+            inside.addAll(copy);
+            index += copy.size();
+        }
+        for(Instruction phi : header.phis()) {
+            int latch = phi.targets.indexOf(loop.latch().name);
+            phi.operands.set(latch, back.get(phi.result));
+            phi.targets.set(latch, last.name);
+        }
+
+        Instruction compare = loop.compare();
+        compare.predicate = loop.step() > 0 ? "slt" : "sgt";
+        compare.pieces = List.of("icmp " + compare.predicate + " " + loop.type() + " ", ", ", "");
+        compare.operands.clear();
+        compare.operands.add(loop.iv().result);
+        compare.operands.add(String.valueOf(end));
+
+        Instruction branch = header.terminator();
+        branch.targets.clear();
+        branch.targets.add(loop.body().name);
+        branch.targets.add(loop.exit().name);
+
+        // What is left over runs straight after the loop, from the values in the header phis
+        Set<Block> skip = new HashSet<>(inside);
+        Block exiting = header;
+        index = function.blocks.indexOf(loop.exit());
+        for(List<Block> copy : remainder) {
+            retarget(exiting, loop.exit().name, copy.get(0).name);
+            exiting = latch(loop, copy);
+            retarget(exiting, header.name, loop.exit().name);
+            function.blocks.addAll(index, copy);
+            skip.addAll(copy);
+            index += copy.size();
+        }
+        if(remainder.isEmpty()) return;
+
+        // Past the loop the header values are what the last copy left
+        for(Block block : function.blocks) {
+            if(skip.contains(block)) continue;
+            for(Instruction instruction : block.instructions) {
+                instruction.replaceOperands(value -> left.getOrDefault(value, value));
+            }
+        }
+    }
+
+    // -----------------------------------------
+    // |                COPIES                 |
+    // -----------------------------------------
+
+    // Header phi to the value it enters the loop with
+    private static Map<String, String> entering(LoopInfo.CountedLoop loop) {
+        Map<String, String> values = new HashMap<>();
+        for(Instruction phi : loop.header().phis()) {
+            values.put(phi.result, phi.operands.get(phi.targets.indexOf(loop.preheader().name)));
+        }
+        return values;
+    }
+
+    private static Map<String, String> identity(LoopInfo.CountedLoop loop) {
+        Map<String, String> values = new HashMap<>();
+        for(Instruction phi : loop.header().phis()) values.put(phi.result, phi.result);
+        return values;
+    }
+
+    // Header phi to the value an iteration that started with values leaves for the next, through the copy's names
+    private static Map<String, String> leaving(LoopInfo.CountedLoop loop, Map<String, String> values) {
+        Map<String, String> next = new HashMap<>();
+        for(Instruction phi : loop.header().phis()) {
+            String back = phi.operands.get(phi.targets.indexOf(loop.latch().name));
+            next.put(phi.result, values.getOrDefault(back, back));
+        }
+        return next;
+    }
+
+    // Copies the blocks of one iteration. values maps the header phis in, the copied results are added to it
+    private static List<Block> copy(MirFunction function, LoopInfo.CountedLoop loop, Map<String, String> values) {
+        List<Block> originals = new ArrayList<>(loop.loop().getBlocks());
+        originals.remove(loop.header());
+        originals.sort(Comparator.comparingInt(function.blocks::indexOf));
+
+        Map<String, String> labels = new HashMap<>();
+        List<Block> blocks = new ArrayList<>();
+        for(Block block : originals) {
+            Block copy = new Block(function.newLabel(block.name + ".u"));
+            labels.put(block.name, copy.name);
+            blocks.add(copy);
+        }
+
+        // Results are named first, a phi of the body may read a value from a block after it
+        for(Block block : originals) {
+            for(Instruction instruction : block.instructions) {
+                if(instruction.result != null) values.put(instruction.result, function.copyName(instruction.result));
+            }
+        }
+        for(int b = 0; b < originals.size(); b++) {
+            for(Instruction instruction : originals.get(b).instructions) {
+                Instruction copy = instruction.copy();
+                if(copy.result != null) copy.result = values.get(copy.result);
+                copy.replaceOperands(value -> values.getOrDefault(value, value));
+                copy.targets.replaceAll(target -> labels.getOrDefault(target, target));
+                blocks.get(b).instructions.add(copy);
+            }
+        }
+
+        // The entry of the copy goes first
+        Block entry = blocks.get(originals.indexOf(loop.body()));
+        blocks.remove(entry);
+        blocks.add(0, entry);
+        return blocks;
+    }
+
+    private static Block latch(LoopInfo.CountedLoop loop, List<Block> copy) {
+        for(Block block : copy) {
+            if(block.terminator().targets.contains(loop.header().name)) return block;
+        }
+        throw new IllegalStateException("Copy of " + loop.header() + " has no latch");
+    }
+
+    private static void retarget(Block block, String from, String to) {
+        block.terminator().targets.replaceAll(target -> target.equals(from) ? to : target);
+    }
+}
@@ -0,0 +1,246 @@
+package nvyc.mir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MirFunction {
+
+    /*
+
+        A function of the mid-level IR: its blocks in the order codegen emitted them and the CFG between them.
+
+        Functions whose shape isn't understood aren't lifted at all (see parse) and go out as codegen wrote them,
+        MirModule keeps why so --verify-passes can fail on them.
+        A function no pass changed prints its original text too, so lifting is invisible at -O0.
+        A changed one gets its unnamed registers renumbered, they have to count up without gaps.
+
+     */
+
+    private static final Pattern LABEL = Pattern.compile("([\\w.$]+):");
+    private static final Pattern NUMBERED = Pattern.compile("%\\d+");
+    private static final Pattern NAME = Pattern.compile("@([\\w.$]+)\\(");
+
+    public static final String UNDEF = "undef";
+
+    final String header;
+    final List<Block> blocks = new ArrayList<>();
+    private final List<String> text;
+    private final Set<String> labels = new HashSet<>();
+    private final Set<String> registers = new HashSet<>();
+    private int values;
+    LoopInfo loopInfo = new LoopInfo();
+    boolean changed;
+
+    // Why codegen's text of a function can't be lifted
+    static final class Unliftable extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final String function;
+
+        Unliftable(String function, String reason) {
+            super(reason, null, false, false);
+            this.function = function;
+        }
+    }
+
+    private MirFunction(List<String> text) {
+        this.header = text.get(0);
+        this.text = new ArrayList<>(text);
+    }
+
+    // Throws Unliftable when the function has code after a terminator, a block without one, unnamed parameters,
+    // an operand that isn't a value, a branch to an unknown label or the same successor twice,
+    // or a branch back to its entry
+    static MirFunction parse(List<String> text, Set<String> typeNames) {
+        MirFunction function = new MirFunction(text);
+        if(NUMBERED.matcher(function.header).find()) throw function.unliftable("unnamed parameters");
+
+        for(String line : text.subList(1, text.size() - 1)) {
+            if(line.isBlank()) continue;
+            Matcher label = LABEL.matcher(line);
+            if(label.matches()) {
+                function.blocks.add(new Block(label.group(1)));
+                function.labels.add(label.group(1));
+                continue;
+            }
+            if(!line.startsWith("\t")) throw function.unliftable("'" + line.strip() + "' isn't an instruction or a label");
+            if(function.blocks.isEmpty()) function.blocks.add(new Block(null));
+            Block block = function.blocks.get(function.blocks.size() - 1);
+            if(!block.instructions.isEmpty() && block.terminator().isTerminator()) throw function.unliftable("code after the terminator of " + block);
+
+            Instruction instruction = Instruction.parse(line, typeNames);
+            if(instruction == null) throw function.unliftable("an operand of '" + line.strip() + "' isn't a value");
+            if(instruction.result != null) function.registers.add(instruction.result);
+            block.instructions.add(instruction);
+        }
+        if(function.blocks.isEmpty()) throw function.unliftable("no blocks");
+        for(Block block : function.blocks) {
+            if(block.instructions.isEmpty() || !block.terminator().isTerminator()) throw function.unliftable(block + " doesn't end in a terminator");
+        }
+
+        if(!function.buildCfg()) throw function.unliftable("a branch to an unknown block, or to the same block twice");
+        if(!function.blocks.get(0).preds.isEmpty()) throw function.unliftable("a branch back to the entry block");
+        return function;
+    }
+
+    private Unliftable unliftable(String reason) {
+        return new Unliftable(getName(), reason);
+    }
+
+    // Recomputes preds and succs from the terminators, false when one names an unknown block or one twice
+    public boolean buildCfg() {
+        Map<String, Block> labels = new HashMap<>();
+        for(Block block : blocks) {
+            block.preds.clear();
+            block.succs.clear();
+            if(block.name != null) labels.put(block.name, block);
+        }
+
+        for(Block block : blocks) {
+            for(String target : block.terminator().targets) {
+                Block succ = labels.get(target);
+                if(succ == null || block.succs.contains(succ)) return false;
+                block.succs.add(succ);
+                succ.preds.add(block);
+            }
+        }
+        return true;
+    }
+
+    // -----------------------------------------
+    // |                ACCESS                 |
+    // -----------------------------------------
+
+    public String getName() {
+        Matcher name = NAME.matcher(header);
+        return name.find() ? name.group(1) : header;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    // Counted loops found by InductionVariables, empty before it ran
+    public LoopInfo getLoopInfo() {
+        return loopInfo;
+    }
+
+    public Block getEntry() {
+        return blocks.get(0);
+    }
+
+    public Block getBlock(String name) {
+        for(Block block : blocks) {
+            if(name.equals(block.name)) return block;
+        }
+        return null;
+    }
+
+    // The entry block becomes a predecessor as soon as phis or a preheader follow it, which needs a label
+    public void nameEntry() {
+        if(blocks.get(0).name == null) blocks.get(0).name = newLabel("entry");
+    }
+
+    // A label nothing in the function uses yet, base itself when it's free
+    public String newLabel(String base) {
+        String name = base;
+        for(int i = 1; !labels.add(name); i++) name = base + "." + i;
+        return name;
+    }
+
+    // Same for a register, base without the %
+    public String newRegister(String base) {
+        String name = "%" + base;
+        for(int i = 1; !registers.add(name); i++) name = "%" + base + "." + i;
+        return name;
+    }
+
+    // A fresh unnamed register, print numbers it in order with the others
+    public String newValue() {
+        String name;
+        do {
+            name = "%" + values++;
+        } while(!registers.add(name));
+        return name;
+    }
+
+    // A fresh register for a copy of the instruction defining result
+    public String copyName(String result) {
+        return NUMBERED.matcher(result).matches() ? newValue() : newRegister(result.substring(1));
+    }
+
+    public Block newBlock(String base, int index) {
+        Block block = new Block(newLabel(base));
+        blocks.add(index, block);
+        return block;
+    }
+
+    // Follows a chain of replacements, a value replaced by a value that was replaced as well
+    public static String resolve(String value, Map<String, String> replaced) {
+        String next = replaced.get(value);
+        while(next != null && !next.equals(value)) {
+            value = next;
+            next = replaced.get(value);
+        }
+        return value;
+    }
+
+    public void replaceAllUses(Map<String, String> replaced) {
+        if(replaced.isEmpty()) return;
+        for(Block block : blocks) {
+            for(Instruction instruction : block.instructions) {
+                instruction.replaceOperands(value -> resolve(value, replaced));
+            }
+        }
+    }
+
+    // How many times each register is used as an operand
+    public Map<String, Integer> uses() {
+        Map<String, Integer> uses = new HashMap<>();
+        for(Block block : blocks) {
+            for(Instruction instruction : block.instructions) {
+                for(String operand : instruction.operands) uses.merge(operand, 1, Integer::sum);
+            }
+        }
+        return uses;
+    }
+
+    // -----------------------------------------
+    // |                OUTPUT                 |
+    // -----------------------------------------
+
+    public List<String> print() {
+        if(!changed) return text;
+
+        // An unnamed entry block takes %0
+        Map<String, String> numbers = new HashMap<>();
+        int next = blocks.get(0).name == null ? 1 : 0;
+        for(Block block : blocks) {
+            for(Instruction instruction : block.instructions) {
+                if(instruction.result != null && NUMBERED.matcher(instruction.result).matches()) {
+                    numbers.put(instruction.result, "%" + next++);
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        result.add(header);
+        for(Block block : blocks) {
+            if(block.name != null) result.add(block.name + ":");
+            for(Instruction instruction : block.instructions) {
+                Instruction renumbered = instruction.copy();
+                if(renumbered.result != null) renumbered.result = numbers.getOrDefault(renumbered.result, renumbered.result);
+                renumbered.replaceOperands(value -> numbers.getOrDefault(value, value));
+                result.add(renumbered.print());
+            }
+        }
+        result.add("}");
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+package nvyc.mir;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MirModule {
+
+    /*
+
+        The module codegen emitted, lifted into the mid-level IR. Functions become MirFunctions,
+        everything around them (types, declarations, metadata) stays text and goes out as it came in.
+        A function that can't be lifted stays text as well, no mir pass sees it. getSkipped says which and why.
+
+            LLVMGenerator -> lift -> MirPipeline -> lower -> .ll
+
+     */
+
+    private static final Pattern TYPE = Pattern.compile("(%[\\w.$]+) = type .*");
+
+    // Module text in order, null where the next lifted function goes
+    private final List<String> text = new ArrayList<>();
+    private final List<MirFunction> functions = new ArrayList<>();
+    private final Map<String, String> skipped = new LinkedHashMap<>();
+
+    public static MirModule lift(List<String> ll) {
+        MirModule module = new MirModule();
+        String[] lines = String.join("", ll).split("\n", -1);
+
+        Set<String> typeNames = new HashSet<>();
+        for(String line : lines) {
+            Matcher type = TYPE.matcher(line);
+            if(type.matches()) typeNames.add(type.group(1));
+        }
+
+        List<String> function = new ArrayList<>();
+        for(int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if(line.startsWith("define ") && line.endsWith("{")) {
+                function.clear();
+                function.add(line);
+            } else if(!function.isEmpty()) {
+                function.add(line);
+                if(line.equals("}")) {
+                    module.add(function, typeNames);
+                    function.clear();
+                }
+            } else if(i < lines.length - 1 || !line.isEmpty()) {
+                module.text.add(line);
+            }
+        }
+        module.text.addAll(function);
+        return module;
+    }
+
+    private void add(List<String> function, Set<String> typeNames) {
+        try {
+            functions.add(MirFunction.parse(function, typeNames));
+            text.add(null);
+        } catch (MirFunction.Unliftable e) {
+            skipped.put(e.function, e.getMessage());
+            text.addAll(function);
+        }
+    }
+
+    public List<MirFunction> getFunctions() {
+        return functions;
+    }
+
+    // Functions left as codegen wrote them, with why they couldn't be lifted
+    public Map<String, String> getSkipped() {
+        return skipped;
+    }
+
+    public List<String> lower() {
+        List<String> ll = new ArrayList<>();
+        int next = 0;
+        for(String line : text) {
+            if(line != null) {
+                ll.add(line + "\n");
+                continue;
+            }
+            for(String s : functions.get(next++).print()) ll.add(s + "\n");
+        }
+        return ll;
+    }
+}
@@ -0,0 +1,16 @@
+package nvyc.mir;
+
+/*
+
+    A transformation of one function of the mid-level IR, run by the MirPipeline after codegen.
+    Passes rewrite the function in place, a pass that changes the CFG rebuilds it with buildCfg.
+
+ */
+public interface MirPass {
+
+    // Used by --mir-passes= and in reports
+    String getName();
+
+    // Returns the number of changes made, 0 means the function is untouched
+    int run(MirFunction function);
+}
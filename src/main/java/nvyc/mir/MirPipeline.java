@@ -0,0 +1,114 @@
+package nvyc.mir;
+
+import nvyc.utils.NvyError;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class MirPipeline {
+
+    /*
+
+        Runs the passes on the mid-level IR, after codegen and before the module is written.
+        The pipeline comes from the -O level, or from --mir-passes=a,b,c which replaces it like --passes does
+        for the tree.
+            -O0     nothing
+            -O1     ssa, cse
+            -O2     the -O1 passes, licm, indvars, unroll
+        ssa is off at -O0 and with --no-ssa, asking for it there is an error.
+        Every pass runs on every lifted function in turn, timed and with its changes counted like the
+        tree passes of PassManager. With --verify-passes every function is checked by MirVerifier after
+        each pass, and a function that couldn't be lifted fails the compilation, since no pass would see it.
+
+     */
+
+    private static final Map<String, Supplier<MirPass>> PASSES = new LinkedHashMap<>();
+
+    static {
+        PASSES.put("ssa", SSABuilder::new);
+        PASSES.put("cse", CommonSubexpressions::new);
+        PASSES.put("licm", LoopInvariantMotion::new);
+        PASSES.put("indvars", InductionVariables::new);
+        PASSES.put("unroll", LoopUnrolling::new);
+    }
+
+    public record Result(String pass, long nanos, int changes) {}
+
+    private final NvyError err = new NvyError();
+    private final MirVerifier verifier = new MirVerifier();
+    private final List<MirPass> pipeline = new ArrayList<>();
+    private final List<Result> results = new ArrayList<>();
+
+    public MirPipeline(int level, String passes) {
+        List<String> names = passes != null ? List.of(passes.split(",")) : preset(level);
+        for(String name : names) {
+            if(name.isBlank()) continue;
+            if(!PASSES.containsKey(name)) {
+                err.NV_STDERRF("Unknown mir pass %s, available passes are %s%n", name, PASSES.keySet());
+                err.NV_EXIT(1);
+            }
+            if(name.equals("ssa") && !NvyError.BUILD_SSA) {
+                err.NV_STDERRF("The ssa pass needs -O1 or above without --no-ssa%n");
+                err.NV_EXIT(1);
+            }
+            pipeline.add(PASSES.get(name).get());
+        }
+    }
+
+    // Passes given directly, for tools that drive the pipeline themselves
+    public MirPipeline(List<MirPass> passes) {
+        pipeline.addAll(passes);
+    }
+
+    private static List<String> preset(int level) {
+        List<String> names = new ArrayList<>();
+        if(level >= 1 && NvyError.BUILD_SSA) names.add("ssa");
+        if(level >= 1) names.add("cse");
+        if(level >= 2) names.addAll(List.of("licm", "indvars", "unroll"));
+        return names;
+    }
+
+    public static List<String> getAvailablePasses() {
+        return new ArrayList<>(PASSES.keySet());
+    }
+
+    public void run(MirModule module) {
+        if(NvyError.VERIFY_PASSES && !module.getSkipped().isEmpty()) {
+            for(Map.Entry<String, String> skipped : module.getSkipped().entrySet()) {
+                err.NV_STDERRF("%s couldn't be lifted into the mid-level IR: %s%n", skipped.getKey(), skipped.getValue());
+            }
+            err.NV_EXIT(1);
+        }
+        if(NvyError.VERIFY_PASSES) verify(module, "Input of the mir pipeline");
+
+        for(MirPass pass : pipeline) {
+            long start = System.nanoTime();
+            int changes = 0;
+            for(MirFunction function : module.getFunctions()) {
+                int changed = pass.run(function);
+                if(changed > 0) function.changed = true;
+                changes += changed;
+            }
+            results.add(new Result(pass.getName(), System.nanoTime() - start, changes));
+
+            if(NvyError.VERIFY_PASSES) verify(module, "Mir pass " + pass.getName());
+        }
+    }
+
+    private void verify(MirModule module, String stage) {
+        for(MirFunction function : module.getFunctions()) {
+            String problem = verifier.verify(function);
+            if(problem != null) {
+                err.NV_STDERRF("%s left invalid IR in %s: %s%n", stage, function.getName(), problem);
+                err.NV_EXIT(1);
+            }
+        }
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+}
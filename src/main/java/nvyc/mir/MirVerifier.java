@@ -0,0 +1,108 @@
+package nvyc.mir;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MirVerifier {
+
+    /*
+
+        Checks a MirFunction the way TreeVerifier checks the tree, after each pass with --verify-passes.
+            blocks      a single terminator at the end, phis only at the start
+            cfg         succs and preds match the branches, a phi has one value for each pred and no other
+            values      every register is defined once, and every use is dominated by its definition
+                        (a phi's by the end of the pred it comes from)
+        Blocks the entry can't reach aren't checked for dominance, nothing runs them.
+
+     */
+
+    private static final Pattern PARAMETER = Pattern.compile("(%[\\w.$]+)(?=[,)])");
+
+    // Null if the function is well formed, otherwise what is wrong with it
+    public String verify(MirFunction function) {
+        if(function.blocks.isEmpty()) return "no blocks";
+
+        Map<String, Block> labels = new HashMap<>();
+        for(Block block : function.blocks) {
+            if(block.name != null && labels.put(block.name, block) != null) return "block " + block.name + " defined twice";
+        }
+
+        Map<String, Block> blocks = new HashMap<>();
+        Map<String, Integer> positions = new HashMap<>();
+        Matcher parameters = PARAMETER.matcher(function.header);
+        while(parameters.find()) positions.put(parameters.group(1), -1);
+
+        for(Block block : function.blocks) {
+            String problem = shape(block, labels);
+            if(problem != null) return problem;
+
+            for(int i = 0; i < block.instructions.size(); i++) {
+                String result = block.instructions.get(i).result;
+                if(result == null) continue;
+                if(positions.containsKey(result)) return result + " defined twice";
+                positions.put(result, i);
+                blocks.put(result, block);
+            }
+        }
+        if(!function.getEntry().preds.isEmpty()) return "branch back to the entry block";
+
+        DominatorTree dominators = new DominatorTree(function);
+        for(Block block : function.blocks) {
+            if(!dominators.reachable(block)) continue;
+            for(int i = 0; i < block.instructions.size(); i++) {
+                Instruction instruction = block.instructions.get(i);
+                for(int o = 0; o < instruction.operands.size(); o++) {
+                    String operand = instruction.operands.get(o);
+                    if(!operand.startsWith("%")) continue;
+                    if(!positions.containsKey(operand)) return operand + " used in " + block + " but never defined";
+
+                    Block definition = blocks.get(operand);
+                    if(definition == null) continue;
+                    boolean dominated = instruction.isPhi()
+                            ? dominators.dominates(definition, labels.get(instruction.targets.get(o)))
+                            : definition == block ? positions.get(operand) < i : dominators.dominates(definition, block);
+                    if(!dominated) return operand + " used in " + block + " where its definition in " + definition + " doesn't dominate";
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String shape(Block block, Map<String, Block> labels) {
+        List<Instruction> instructions = block.instructions;
+        if(instructions.isEmpty() || !block.terminator().isTerminator()) return block + " doesn't end in a terminator";
+
+        boolean phis = true;
+        for(int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            if(i < instructions.size() - 1 && instruction.isTerminator()) return "code after the terminator of " + block;
+            if(instruction.isPhi() && !phis) return "phi after other instructions in " + block;
+            phis &= instruction.isPhi();
+        }
+
+        List<Block> succs = new ArrayList<>();
+        for(String target : block.terminator().targets) {
+            Block succ = labels.get(target);
+            if(succ == null) return block + " branches to unknown " + target;
+            succs.add(succ);
+        }
+        if(!succs.equals(block.succs)) return "succs of " + block + " don't match its branch";
+
+        for(Block succ : succs) {
+            if(Collections.frequency(succ.preds, block) != 1) return "preds of " + succ + " don't match the branch of " + block;
+        }
+        for(Block pred : block.preds) {
+            if(!pred.succs.contains(block)) return block + " has " + pred + " as pred without a branch from it";
+        }
+
+        Set<String> preds = new HashSet<>();
+        for(Block pred : block.preds) preds.add(pred.name);
+        for(Instruction phi : block.phis()) {
+            if(phi.targets.size() != preds.size() || !preds.equals(new HashSet<>(phi.targets))) {
+                return "phi " + phi.result + " in " + block + " doesn't have one value for each pred";
+            }
+        }
+        return null;
+    }
+}
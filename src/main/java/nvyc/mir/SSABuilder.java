@@ -0,0 +1,231 @@
+package nvyc.mir;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class SSABuilder implements MirPass {
+
+    /*
+
+        Builds SSA form out of the generated IR, so scalar locals live in registers instead of an alloca
+        with a load for every use and a store for every assignment. Runs from -O1, see --no-ssa.
+
+        A local is promoted when its alloca has an integer, floating point or pointer type and every use is a
+        load or a store of that type through it. Anything else, like taking its address with ref/&, passing it
+        to a call or indexing it, keeps it in memory.
+
+        Phi nodes are placed on the iterated dominance frontier of the blocks that store to the local, which are
+        the iffalse joins and the loop_condition headers codegen emits. Loads are then renamed to the value that
+        reaches them walking the dominator tree, a load nothing reaches becomes undef.
+        Phis with a single incoming value and phis nothing uses are dropped.
+
+        Codegen reuses loaded registers (VariableData.isLoaded) across blocks they don't dominate. When building
+        SSA, LLVMGenerator forgets them at every label, so each block loads what it needs and this pass removes
+        the loads again.
+
+     */
+
+    private static final Pattern SCALAR = Pattern.compile("(?:i\\d+|float|double)\\**");
+
+    @Override
+    public String getName() {
+        return "ssa";
+    }
+
+    @Override
+    public int run(MirFunction function) {
+        Map<Instruction, String> accesses = new HashMap<>();
+        Map<String, String> locals = promotable(function, accesses);
+        if(locals.isEmpty()) return 0;
+
+        // An entry block with phis after it needs a name to be their predecessor
+        if(function.blocks.size() > 1) function.nameEntry();
+
+        DominatorTree dominators = new DominatorTree(function);
+        Map<Instruction, String> phis = placePhis(function, dominators, locals, accesses);
+        Map<Instruction, Map<Block, String>> incoming = new HashMap<>();
+        Map<String, String> replaced = new HashMap<>();
+        rename(function.getEntry(), dominators, new HashMap<>(), phis, accesses, incoming, replaced);
+
+        for(Block block : function.blocks) {
+            // Loads in unreachable blocks go too, nothing reaches them
+            for(Instruction instruction : block.instructions) {
+                if(!dominators.reachable(block) && accesses.containsKey(instruction) && instruction.opcode.equals("load")) {
+                    replaced.put(instruction.result, MirFunction.UNDEF);
+                }
+            }
+            block.instructions.removeIf(accesses::containsKey);
+
+            for(Instruction phi : block.phis()) {
+                Map<Block, String> values = incoming.getOrDefault(phi, Map.of());
+                for(Block pred : block.preds) {
+                    phi.operands.add(values.getOrDefault(pred, MirFunction.UNDEF));
+                    phi.targets.add(pred.name);
+                }
+            }
+        }
+
+        simplifyPhis(function, phis.keySet(), replaced);
+        function.replaceAllUses(replaced);
+        return locals.size();
+    }
+
+    // Locals whose every use is a load or store of their own type, with that type. Their accesses go in accesses
+    private static Map<String, String> promotable(MirFunction function, Map<Instruction, String> accesses) {
+        Map<String, String> types = new LinkedHashMap<>();
+        Set<String> invalid = new HashSet<>();
+        for(Block block : function.blocks) {
+            for(Instruction instruction : block.instructions) {
+                if(!instruction.opcode.equals("alloca") || !SCALAR.matcher(instruction.type).matches()) continue;
+                if(types.put(instruction.result, instruction.type) != null) invalid.add(instruction.result);
+            }
+        }
+
+        Map<String, Integer> expected = new HashMap<>();
+        for(Block block : function.blocks) {
+            for(Instruction instruction : block.instructions) {
+                String var = switch(instruction.opcode) {
+                    case "alloca" -> instruction.result;
+                    case "load" -> instruction.pointerType != null ? instruction.operands.get(0) : null;
+                    case "store" -> instruction.pointerType != null ? instruction.operands.get(1) : null;
+                    default -> null;
+                };
+                if(var == null || !types.containsKey(var)) continue;
+                if(!instruction.opcode.equals("alloca")) {
+                    if(!instruction.type.equals(instruction.pointerType) || !instruction.type.equals(types.get(var))) continue;
+                    expected.merge(var, 1, Integer::sum);
+                }
+                accesses.put(instruction, var);
+            }
+        }
+
+        Map<String, Integer> uses = function.uses();
+        Map<String, String> locals = new LinkedHashMap<>();
+        for(Map.Entry<String, String> entry : types.entrySet()) {
+            String var = entry.getKey();
+            if(!invalid.contains(var) && uses.getOrDefault(var, 0).equals(expected.getOrDefault(var, 0))) {
+                locals.put(var, entry.getValue());
+            }
+        }
+        accesses.values().removeIf(var -> !locals.containsKey(var));
+        return locals;
+    }
+
+    // -----------------------------------------
+    // |               SSA FORM                |
+    // -----------------------------------------
+
+    // Empty phis at the start of the blocks where a local needs one, with the local each one merges
+    private static Map<Instruction, String> placePhis(MirFunction function, DominatorTree dominators,
+                                                      Map<String, String> locals, Map<Instruction, String> accesses) {
+        Map<Block, Set<Block>> frontiers = dominators.frontiers();
+        Map<Instruction, String> phis = new HashMap<>();
+
+        for(Map.Entry<String, String> local : locals.entrySet()) {
+            String var = local.getKey();
+            Set<Block> definitions = new LinkedHashSet<>();
+            for(Block block : dominators.reversePostorder()) {
+                for(Instruction instruction : block.instructions) {
+                    if(var.equals(accesses.get(instruction)) && instruction.opcode.equals("store")) definitions.add(block);
+                }
+            }
+
+            Set<Block> placed = new HashSet<>();
+            Deque<Block> worklist = new ArrayDeque<>(definitions);
+            while(!worklist.isEmpty()) {
+                for(Block frontier : frontiers.get(worklist.pop())) {
+                    if(!placed.add(frontier)) continue;
+                    Instruction phi = Instruction.phi(function.newRegister(var.substring(1) + "." + frontier.name), local.getValue());
+                    frontier.instructions.add(frontier.phis().size(), phi);
+                    phis.put(phi, var);
+                    if(definitions.add(frontier)) worklist.push(frontier);
+                }
+            }
+        }
+        return phis;
+    }
+
+    // Walks the dominator tree with the value each local holds, every load is replaced by it
+    private static void rename(Block block, DominatorTree dominators, Map<String, Deque<String>> values,
+                               Map<Instruction, String> phis, Map<Instruction, String> accesses,
+                               Map<Instruction, Map<Block, String>> incoming, Map<String, String> replaced) {
+        List<String> pushed = new ArrayList<>();
+
+        for(Instruction instruction : block.instructions) {
+            String var = phis.containsKey(instruction) ? phis.get(instruction) : accesses.get(instruction);
+            if(var == null || instruction.opcode.equals("alloca")) continue;
+
+            switch(instruction.opcode) {
+                case "phi" -> values.computeIfAbsent(var, v -> new ArrayDeque<>()).push(instruction.result);
+                case "store" -> values.computeIfAbsent(var, v -> new ArrayDeque<>()).push(MirFunction.resolve(instruction.operands.get(0), replaced));
+                default -> {
+                    replaced.put(instruction.result, current(values, var));
+                    continue;
+                }
+            }
+            pushed.add(var);
+        }
+
+        for(Block succ : block.succs) {
+            for(Instruction phi : succ.phis()) {
+                if(phis.containsKey(phi)) incoming.computeIfAbsent(phi, p -> new HashMap<>()).put(block, current(values, phis.get(phi)));
+            }
+        }
+
+        for(Block child : dominators.children(block)) rename(child, dominators, values, phis, accesses, incoming, replaced);
+        for(String var : pushed) values.get(var).pop();
+    }
+
+    private static String current(Map<String, Deque<String>> values, String var) {
+        Deque<String> stack = values.get(var);
+        return stack == null || stack.isEmpty() ? MirFunction.UNDEF : stack.peek();
+    }
+
+    // Removes phis that merge a single value and phis nothing reads
+    private static void simplifyPhis(MirFunction function, Set<Instruction> phis, Map<String, String> replaced) {
+        Set<Instruction> removed = new HashSet<>();
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(Instruction phi : phis) {
+                if(removed.contains(phi)) continue;
+                Set<String> incoming = new HashSet<>();
+                for(String value : phi.operands) incoming.add(MirFunction.resolve(value, replaced));
+                incoming.remove(phi.result);
+                if(incoming.size() > 1) continue;
+
+                replaced.put(phi.result, incoming.isEmpty() ? MirFunction.UNDEF : incoming.iterator().next());
+                removed.add(phi);
+                changed = true;
+            }
+        }
+
+        Map<String, Instruction> byName = new HashMap<>();
+        for(Instruction phi : phis) {
+            if(!removed.contains(phi)) byName.put(phi.result, phi);
+        }
+
+        Set<String> live = new HashSet<>();
+        Deque<String> worklist = new ArrayDeque<>();
+        for(Block block : function.blocks) {
+            for(Instruction instruction : block.instructions) {
+                if(phis.contains(instruction)) continue;
+                for(String operand : instruction.operands) {
+                    String value = MirFunction.resolve(operand, replaced);
+                    if(byName.containsKey(value) && live.add(value)) worklist.push(value);
+                }
+            }
+        }
+        while(!worklist.isEmpty()) {
+            for(String operand : byName.get(worklist.pop()).operands) {
+                String value = MirFunction.resolve(operand, replaced);
+                if(byName.containsKey(value) && live.add(value)) worklist.push(value);
+            }
+        }
+
+        for(Instruction phi : byName.values()) {
+            if(!live.contains(phi.result)) removed.add(phi);
+        }
+        for(Block block : function.blocks) block.instructions.removeIf(removed::contains);
+    }
+}
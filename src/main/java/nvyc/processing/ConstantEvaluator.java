@@ -0,0 +1,528 @@
+package nvyc.processing;
+
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+import nvyc.data.VariableData;
+import nvyc.utils.LLVMUtils;
+import nvyc.utils.NvyError;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ConstantEvaluator {
+
+    /*
+
+        Computes global initializers at compile time, run after validation and before dead declaration elimination.
+
+        Initializers are evaluated over the tree in declaration order, with the values of the globals before them.
+        Calls to Nvy functions are executed too, as long as they only compute: reading a global that isn't known,
+        writing any global, calling a native, or touching pointers, arrays and structs stops the evaluation.
+        So does running out of steps (NvyError.EVALUATION_BUDGET nodes per initializer) and anything LLVM
+        would leave undefined, like integer division by zero.
+
+        An initializer that evaluates is replaced by its literal, so the global is emitted with its value
+        instead of code. Arithmetic follows codegen: LLVMUtils.nvTypePrecedence for mixed operands,
+        two's complement wrap around for integers and fp32 rounding after every fp32 operation.
+
+        Globals declared constant or final must not be assigned. They are emitted as LLVM constants
+        (see VariableData.isConstant) so their loads fold, unless their address is taken or their
+        initializer couldn't be computed.
+
+     */
+
+    private final NvyError err = new NvyError();
+    private final VariableData vardata = VariableData.getInstance();
+    private final LLVMUtils utils = new LLVMUtils();
+
+    private static final int MAX_CALL_DEPTH = 256;
+
+    // Why an initializer isn't a compile time constant
+    static final class NotConstant extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotConstant(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    // type is one of INT32, INT64, FP32 or FP64, integers are kept in l and floating point in d
+    record Value(NodeType type, long l, double d) {
+        boolean isFloating() {
+            return type == NodeType.FP32 || type == NodeType.FP64;
+        }
+
+        boolean isTrue() {
+            return isFloating() ? d != 0 : l != 0;
+        }
+    }
+
+    private final Map<String, NASTNode> functions = new HashMap<>();
+    private final Map<String, Value> globals = new HashMap<>();
+    private int steps;
+    private int depth;
+    private int folded;
+
+    public int getFolded() {
+        return folded;
+    }
+
+    public void evaluate(List<NASTNode> nodes) {
+        functions.clear();
+        globals.clear();
+        folded = 0;
+
+        for(NASTNode node : nodes) {
+            if(node.getType() == NodeType.FUNCTION) functions.put(node.getValueString(), node);
+            else if(node.getType() == NodeType.EXTERNAL) functions.put(node.getSubnode(0).getValueString(), node.getSubnode(0));
+        }
+
+        for(NASTNode node : nodes) {
+            if(node.getType() != NodeType.VARDEF || node.getAllSubnodes().isEmpty()) continue;
+            String name = node.getValueString();
+
+            steps = 0;
+            depth = 0;
+            try {
+                Value value = initializer(node);
+                globals.put(name, value);
+            } catch (NotConstant e) {
+                if(vardata.isConstant(name)) {
+                    err.NV_STDERRF("nvc > Constant %s is not known at compile time (%s), it stays a global%n", name, e.getMessage());
+                    vardata.removeConstant(name);
+                }
+            }
+        }
+
+        for(NASTNode node : nodes) {
+            NASTNode function = node.getType() == NodeType.EXTERNAL ? node.getSubnode(0) : node;
+            if(function.getType() != NodeType.FUNCTION || function.getAllSubnodes().size() < 3) continue;
+
+            Deque<Set<String>> scopes = new ArrayDeque<>();
+            scopes.push(new HashSet<>());
+            for(NASTNode param : function.getSubnode(0).getAllSubnodes()) {
+                scopes.peek().add(param.getValueString());
+            }
+            checkConstants(function.getSubnode(2), function.getValueString(), scopes);
+        }
+    }
+
+    // Evaluates a top level VARDEF and replaces its initializer with the literal
+    private Value initializer(NASTNode node) {
+        NASTNode first = node.getSubnode(0);
+        if(first.getType() == NodeType.CAST) {
+            if(first.getValueString().equals("STRUCT") || node.getAllSubnodes().size() < 2) throw new NotConstant("not a number");
+            NodeType type = typeOf(NodeType.valueOf(first.getValueString()));
+            NASTNode source = node.getSubnode(1);
+            Value value = convert(expression(source, null), type);
+            if(!isLiteral(source)) {
+                node.removeNode(1);
+                node.addNode(literal(value), NASTNode.TAIL);
+                folded++;
+            }
+            return value;
+        }
+
+        Value value = expression(first, null);
+        if(!isLiteral(first)) {
+            node.removeAllSubnodes();
+            node.addNode(literal(value), NASTNode.TAIL);
+            folded++;
+        }
+        return value;
+    }
+
+    private boolean isLiteral(NASTNode node) {
+        return utils.isLiteral(node) || node.getType() == NodeType.BOOL_TR || node.getType() == NodeType.BOOL_FA;
+    }
+
+    static NASTNode literal(Value value) {
+        String text = switch(value.type()) {
+            case INT32 -> String.valueOf((int) value.l());
+            case INT64 -> String.valueOf(value.l());
+            case FP32 -> String.valueOf((float) value.d());
+            default -> String.valueOf(value.d());
+        };
+        return new NASTNode(value.type(), text);
+    }
+
+    // -----------------------------------------
+    // |              STATEMENTS               |
+    // -----------------------------------------
+
+    // Locals of one call, the innermost scope first. returned is set by RETURN
+    private static final class Frame {
+        final Deque<Map<String, Value>> scopes = new ArrayDeque<>();
+        final NodeType returns;
+        Value returned;
+        boolean done;
+
+        Frame(NodeType returns) {
+            this.returns = returns;
+            scopes.push(new HashMap<>());
+        }
+    }
+
+    private Value call(NASTNode call, Frame caller) {
+        NASTNode function = functions.get(call.getValueString());
+        if(function == null) throw new NotConstant("calls native " + call.getValueString());
+        if(function.getAllSubnodes().size() < 3) throw new NotConstant(call.getValueString() + " has no body");
+        if(++depth > MAX_CALL_DEPTH) throw new NotConstant("recursion deeper than " + MAX_CALL_DEPTH);
+
+        List<NASTNode> params = function.getSubnode(0).getAllSubnodes();
+        List<NASTNode> args = call.getAllSubnodes();
+        if(params.size() != args.size()) throw new NotConstant("wrong number of arguments to " + call.getValueString());
+
+        NodeType returns = function.getSubnode(1).getSubnode(0).getType();
+        Frame frame = new Frame(returns == NodeType.VOID || returns == NodeType.VOID_T ? null : typeOf(returns));
+        for(int i = 0; i < params.size(); i++) {
+            Value arg = convert(expression(args.get(i), caller), typeOf(params.get(i).getType()));
+            frame.scopes.peek().put(params.get(i).getValueString(), arg);
+        }
+
+        block(function.getSubnode(2), frame);
+        depth--;
+        if(frame.returns == null) return null;
+        if(frame.returned == null) throw new NotConstant(call.getValueString() + " ends without returning a value");
+        return frame.returned;
+    }
+
+    private void block(NASTNode body, Frame frame) {
+        frame.scopes.push(new HashMap<>());
+        for(NASTNode statement : body.getAllSubnodes()) {
+            statement(statement, frame);
+            if(frame.done) break;
+        }
+        frame.scopes.pop();
+    }
+
+    private void statement(NASTNode node, Frame frame) {
+        step();
+        switch(node.getType()) {
+            case VARDEF -> frame.scopes.peek().put(node.getValueString(), vardef(node, frame));
+            case ASSIGN -> assign(node, frame);
+            case FUNCTIONBODY, ELSE -> block(node, frame);
+            case IF -> {
+                if(expression(node.getSubnode(0).getSubnode(0), frame).isTrue()) block(node.getSubnode(1), frame);
+                else if(node.getAllSubnodes().size() > 2) block(node.getSubnode(2), frame);
+            }
+            case FORLOOP -> {
+                frame.scopes.push(new HashMap<>());
+                NASTNode def = node.getSubnode(0).getSubnode(0);
+                statement(def, frame);
+                NASTNode iteration = node.getSubnode(2).getSubnode(0);
+                while(!frame.done && expression(node.getSubnode(1).getSubnode(0), frame).isTrue()) {
+                    block(node.getSubnode(3), frame);
+                    if(frame.done) break;
+                    switch(iteration.getType()) {
+                        case ASSIGN, VARDEF -> statement(iteration, frame);
+                        default -> store(def.getValueString(), expression(iteration, frame), frame);
+                    }
+                }
+                frame.scopes.pop();
+            }
+            case RETURN -> {
+                if(!node.getAllSubnodes().isEmpty()) {
+                    Value value = expression(node.getSubnode(0), frame);
+                    if(frame.returns != null) frame.returned = convert(value, frame.returns);
+                }
+                frame.done = true;
+            }
+            case FUNCTIONCALL -> {
+                if(functions.containsKey(node.getValueString())) call(node, frame);
+                else throw new NotConstant("calls native " + node.getValueString());
+            }
+            default -> throw new NotConstant(node.getType() + " is not evaluated at compile time");
+        }
+    }
+
+    private Value vardef(NASTNode node, Frame frame) {
+        if(node.getAllSubnodes().isEmpty()) throw new NotConstant("declaration of " + node.getValueString() + " without a value");
+        NASTNode first = node.getSubnode(0);
+        if(first.getType() == NodeType.CAST) {
+            if(first.getValueString().equals("STRUCT")) throw new NotConstant("uses a struct");
+            NodeType type = typeOf(NodeType.valueOf(first.getValueString()));
+            return node.getAllSubnodes().size() > 1 ? convert(expression(node.getSubnode(1), frame), type) : new Value(type, 0, 0);
+        }
+        if(first.getType() == NodeType.ARRAY) throw new NotConstant("uses an array");
+        return expression(first, frame);
+    }
+
+    private void assign(NASTNode node, Frame frame) {
+        NASTNode target = node.getSubnode(0);
+        NASTNode source = node.getSubnode(1);
+        if(target.getType() != NodeType.VARIABLE || member(target)) throw new NotConstant("assigns to " + target.getType());
+
+        Value value = source.getType() == NodeType.CAST && node.getAllSubnodes().size() > 2
+                ? convert(expression(node.getSubnode(2), frame), typeOf(NodeType.valueOf(source.getValueString())))
+                : expression(source, frame);
+        store(target.getValueString(), value, frame);
+    }
+
+    private void store(String name, Value value, Frame frame) {
+        for(Map<String, Value> scope : frame.scopes) {
+            Value old = scope.get(name);
+            if(old != null) {
+                scope.put(name, convert(value, old.type()));
+                return;
+            }
+        }
+        throw new NotConstant("writes global " + name);
+    }
+
+    // -----------------------------------------
+    // |              EXPRESSIONS              |
+    // -----------------------------------------
+
+    // frame is null for a top level initializer
+    private Value expression(NASTNode node, Frame frame) {
+        step();
+        NodeType type = node.getType();
+        switch(type) {
+            case INT32, INT64, BOOL_TR, BOOL_FA, CHAR, FP32, FP64 -> {
+                return constant(node);
+            }
+            case VARIABLE -> {
+                if(member(node)) throw new NotConstant("reads a struct member");
+                return variable(node.getValueString(), frame);
+            }
+            case ADD, SUB, MUL, DIV, MODULO, BITAND, BITOR, BITXOR, ARITHLEFTSHIFT, ARITHRIGHTSHIFT, LOGICRIGHTSHIFT,
+                 EQ, NEQ, LT, LTE, GT, GTE -> {
+                return binary(type, expression(node.getSubnode(0), frame), expression(node.getSubnode(1), frame));
+            }
+            case LOGICAND -> {
+                return bool(expression(node.getSubnode(0), frame).isTrue() && expression(node.getSubnode(1), frame).isTrue());
+            }
+            case LOGICOR -> {
+                return bool(expression(node.getSubnode(0), frame).isTrue() || expression(node.getSubnode(1), frame).isTrue());
+            }
+            case NOT, SWITCHSIGN, BITNEGATE -> {
+                return unary(type, expression(node.getSubnode(0), frame));
+            }
+            case CAST -> {
+                if(node.getAllSubnodes().isEmpty()) throw new NotConstant("cast without a value");
+                return convert(expression(node.getSubnode(0), frame), typeOf(NodeType.valueOf(node.getValueString())));
+            }
+            case FUNCTIONCALL -> {
+                Value result = call(node, frame == null ? new Frame(null) : frame);
+                if(result == null) throw new NotConstant(node.getValueString() + " returns nothing");
+                return result;
+            }
+            default -> throw new NotConstant(type + " is not evaluated at compile time");
+        }
+    }
+
+    // The value of a literal node, null for anything else
+    static Value constant(NASTNode node) {
+        NodeType type = node.getType();
+        return switch(type) {
+            case INT32 -> new Value(NodeType.INT32, (int) Long.parseLong(node.getValueString()), 0);
+            case INT64 -> new Value(NodeType.INT64, Long.parseLong(node.getValueString().replaceAll("[lL]$", "")), 0);
+            case BOOL_TR, BOOL_FA -> new Value(NodeType.INT32, type == NodeType.BOOL_TR ? 1 : 0, 0);
+            case CHAR -> new Value(NodeType.INT32, node.getValueString().charAt(1), 0);
+            case FP32, FP64 -> {
+                double v = Double.parseDouble(node.getValueString().replaceAll("[fFdD]$", ""));
+                yield new Value(type, 0, type == NodeType.FP32 ? (float) v : v);
+            }
+            default -> null;
+        };
+    }
+
+    // Arithmetic, bitwise, shift, comparison and logic operators, operands are promoted like codegen does
+    Value binary(NodeType op, Value lhs, Value rhs) {
+        if(op == NodeType.LOGICAND) return bool(lhs.isTrue() && rhs.isTrue());
+        if(op == NodeType.LOGICOR) return bool(lhs.isTrue() || rhs.isTrue());
+
+        NodeType result = utils.nvTypePrecedence(lhs.type(), rhs.type());
+        return switch(op) {
+            case EQ, NEQ, LT, LTE, GT, GTE -> bool(compare(op, convert(lhs, result), convert(rhs, result)));
+            default -> arithmetic(op, convert(lhs, result), convert(rhs, result));
+        };
+    }
+
+    static Value unary(NodeType op, Value v) {
+        return switch(op) {
+            case NOT -> bool(!v.isTrue());
+            case SWITCHSIGN -> v.isFloating() ? floating(v.type(), -v.d()) : integer(v.type(), -v.l());
+            case BITNEGATE -> {
+                if(v.isFloating()) throw new NotConstant("bitwise negation of a floating point value");
+                yield integer(v.type(), ~v.l());
+            }
+            default -> throw new NotConstant(op + " is not a unary operator");
+        };
+    }
+
+    private Value variable(String name, Frame frame) {
+        if(frame != null) {
+            for(Map<String, Value> scope : frame.scopes) {
+                Value v = scope.get(name);
+                if(v != null) return v;
+            }
+        }
+        Value v = globals.get(name);
+        if(v == null) throw new NotConstant("reads " + name + ", which isn't known at compile time");
+        return v;
+    }
+
+    private static Value arithmetic(NodeType op, Value a, Value b) {
+        NodeType type = a.type();
+        if(a.isFloating()) {
+            double r = switch(op) {
+                case ADD -> a.d() + b.d();
+                case SUB -> a.d() - b.d();
+                case MUL -> a.d() * b.d();
+                case DIV -> a.d() / b.d();
+                case MODULO -> a.d() % b.d();
+                default -> throw new NotConstant(op + " of floating point values");
+            };
+            return floating(type, r);
+        }
+
+        long x = a.l();
+        long y = b.l();
+        int bits = type == NodeType.INT32 ? 32 : 64;
+        long min = type == NodeType.INT32 ? Integer.MIN_VALUE : Long.MIN_VALUE;
+        long r = switch(op) {
+            case ADD -> x + y;
+            case SUB -> x - y;
+            case MUL -> x * y;
+            case DIV, MODULO -> {
+                // Both are undefined in LLVM, the program decides at runtime what happens
+                if(y == 0) throw new NotConstant("divides by zero");
+                if(x == min && y == -1) throw new NotConstant("overflows a division");
+                yield op == NodeType.DIV ? x / y : x % y;
+            }
+            case BITAND -> x & y;
+            case BITOR -> x | y;
+            case BITXOR -> x ^ y;
+            case ARITHLEFTSHIFT, ARITHRIGHTSHIFT, LOGICRIGHTSHIFT -> {
+                if(y < 0 || y >= bits) throw new NotConstant("shifts by " + y);
+                if(op == NodeType.ARITHLEFTSHIFT) yield x << y;
+                if(op == NodeType.ARITHRIGHTSHIFT) yield x >> y;
+                yield bits == 32 ? (int) x >>> y : x >>> y;
+            }
+            default -> throw new NotConstant(op + " of integers");
+        };
+        return integer(type, r);
+    }
+
+    private static boolean compare(NodeType op, Value a, Value b) {
+        if(a.isFloating()) {
+            // NaN compares unequal and unordered, like fcmp oeq, une, olt...
+            double x = a.d();
+            double y = b.d();
+            return switch(op) {
+                case EQ -> x == y;
+                case NEQ -> x != y;
+                case LT -> x < y;
+                case LTE -> x <= y;
+                case GT -> x > y;
+                default -> x >= y;
+            };
+        }
+        int c = Long.compare(a.l(), b.l());
+        return switch(op) {
+            case EQ -> c == 0;
+            case NEQ -> c != 0;
+            case LT -> c < 0;
+            case LTE -> c <= 0;
+            case GT -> c > 0;
+            default -> c >= 0;
+        };
+    }
+
+    // -----------------------------------------
+    // |                 TYPES                 |
+    // -----------------------------------------
+
+    static NodeType typeOf(NodeType type) {
+        return switch(type) {
+            case INT32, INT32_T, CHAR, CHAR_T, BOOL, BOOL_T, BOOL_TR, BOOL_FA, SHORT -> NodeType.INT32;
+            case INT64, INT64_T -> NodeType.INT64;
+            case FP32, FP32_T -> NodeType.FP32;
+            case FP64, FP64_T -> NodeType.FP64;
+            default -> throw new NotConstant("uses a value of type " + type);
+        };
+    }
+
+    static Value convert(Value v, NodeType type) {
+        if(v.type() == type) return v;
+        boolean floating = type == NodeType.FP32 || type == NodeType.FP64;
+        if(!v.isFloating()) {
+            return floating ? floating(type, v.l()) : integer(type, v.l());
+        }
+        if(floating) return floating(type, v.d());
+
+        // fptosi of a value that doesn't fit is poison
+        double d = v.d();
+        double limit = type == NodeType.INT32 ? 0x1p31 : 0x1p63;
+        if(Double.isNaN(d) || d >= limit || d < -limit) throw new NotConstant("converts " + d + " to " + type);
+        return integer(type, (long) d);
+    }
+
+    private static Value integer(NodeType type, long v) {
+        return new Value(type, type == NodeType.INT32 ? (int) v : v, 0);
+    }
+
+    private static Value floating(NodeType type, double v) {
+        return new Value(type, 0, type == NodeType.FP32 ? (float) v : v);
+    }
+
+    private static Value bool(boolean b) {
+        return new Value(NodeType.INT32, b ? 1 : 0, 0);
+    }
+
+    private static boolean member(NASTNode node) {
+        return node.getValueString().contains(".") || (!node.getAllSubnodes().isEmpty() && node.getSubnode(0).getType() == NodeType.MEMBER);
+    }
+
+    private void step() {
+        if(++steps > NvyError.EVALUATION_BUDGET) throw new NotConstant("more than " + NvyError.EVALUATION_BUDGET + " steps");
+    }
+
+    // -----------------------------------------
+    // |            CONSTANT CHECKS            |
+    // -----------------------------------------
+
+    // Assigning a constant is an error, taking its address keeps it a mutable global
+    private void checkConstants(NASTNode node, String function, Deque<Set<String>> scopes) {
+        switch(node.getType()) {
+            case ASSIGN -> {
+                NASTNode target = node.getSubnode(0);
+                String name = target.getValueString();
+                if(name.contains(".")) name = name.substring(0, name.indexOf('.'));
+                if(target.getType() == NodeType.VARIABLE && vardata.isConstant(name) && !shadowed(name, scopes)) {
+                    err.NV_STDERRF("nvc > Cannot assign to constant %s in %s%n", name, function);
+                    err.NV_EXIT(1);
+                }
+            }
+            case FINDADDRESS -> {
+                NASTNode operand = node.getAllSubnodes().isEmpty() ? null : node.getSubnode(0);
+                if(operand != null && operand.getType() == NodeType.VARIABLE && !shadowed(operand.getValueString(), scopes)) {
+                    vardata.removeConstant(operand.getValueString());
+                }
+            }
+            case VARDEF -> scopes.peek().add(node.getValueString());
+            default -> {}
+        }
+
+        boolean scope = node.getType() == NodeType.FUNCTIONBODY || node.getType() == NodeType.ELSE || node.getType() == NodeType.FORLOOP;
+        if(scope) scopes.push(new HashSet<>());
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            checkConstants(subnode, function, scopes);
+        }
+        if(scope) scopes.pop();
+    }
+
+    private static boolean shadowed(String name, Deque<Set<String>> scopes) {
+        for(Set<String> scope : scopes) {
+            if(scope.contains(name)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,213 @@
+package nvyc.processing;
+
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+import nvyc.data.VariableData;
+import nvyc.processing.ConstantEvaluator.NotConstant;
+import nvyc.processing.ConstantEvaluator.Value;
+import nvyc.utils.NvyError;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ConstantFolding implements Pass {
+
+    /*
+
+        Folds operators with literal operands inside function bodies, so 2 * 3 + x reaches codegen as 6 + x
+        and if(1 < 2) as if(1), which llvmConditional turns into a direct jump.
+
+        Arithmetic, bitwise, shift, comparison and logic operators, negation and casts are folded with the
+        semantics of ConstantEvaluator (promotion through LLVMUtils.nvTypePrecedence, wrap around, fp32 rounding).
+        Anything LLVM leaves undefined, like a division by zero, is left for the program to do at runtime.
+        Comparisons fold to an int32 0 or 1.
+
+        Values are also propagated: a use of a let whose value is a literal becomes that literal, as long as the
+        variable is never assigned, incremented or has its address taken, and its name isn't declared twice
+        in the function. Loop variables are assigned by the iteration and never propagate.
+        Globals declared constant propagate the same way, see VariableData.isConstant.
+
+        Literals are only put where codegen takes them: operands, declared and assigned values, returns and
+        conditions. Arguments are left alone.
+
+     */
+
+    private final VariableData vardata = VariableData.getInstance();
+    private final ConstantEvaluator evaluator = new ConstantEvaluator();
+
+    private static final Set<NodeType> OPERATORS = Set.of(
+            NodeType.ADD, NodeType.SUB, NodeType.MUL, NodeType.DIV, NodeType.MODULO,
+            NodeType.BITAND, NodeType.BITOR, NodeType.BITXOR,
+            NodeType.ARITHLEFTSHIFT, NodeType.ARITHRIGHTSHIFT, NodeType.LOGICRIGHTSHIFT,
+            NodeType.EQ, NodeType.NEQ, NodeType.LT, NodeType.LTE, NodeType.GT, NodeType.GTE,
+            NodeType.LOGICAND, NodeType.LOGICOR);
+
+    private static final Set<NodeType> UNARY = Set.of(NodeType.NOT, NodeType.SWITCHSIGN, NodeType.BITNEGATE);
+
+    // Literals folding reads, chars are left out since codegen doesn't widen them like the evaluator does
+    private static final Set<NodeType> LITERALS = Set.of(
+            NodeType.INT32, NodeType.INT64, NodeType.FP32, NodeType.FP64, NodeType.BOOL_TR, NodeType.BOOL_FA);
+
+    // Literals that replace a variable
+    private static final Set<NodeType> NUMBERS = Set.of(NodeType.INT32, NodeType.INT64, NodeType.FP32, NodeType.FP64);
+
+    private int changes;
+
+    @Override
+    public String getName() {
+        return "fold";
+    }
+
+    @Override
+    public int run(List<NASTNode> nodes) {
+        if(!NvyError.FOLD_CONSTANTS) return 0;
+        changes = 0;
+
+        Map<String, NASTNode> globals = new HashMap<>();
+        for(NASTNode node : nodes) {
+            if(node.getType() == NodeType.VARDEF && vardata.isConstant(node.getValueString())) {
+                globals.put(node.getValueString(), value(node));
+            }
+        }
+
+        for(NASTNode node : nodes) {
+            NASTNode function = node.getType() == NodeType.EXTERNAL ? node.getSubnode(0) : node;
+            if(function.getType() != NodeType.FUNCTION || function.getAllSubnodes().size() < 3) continue;
+
+            Set<String> declared = new HashSet<>();
+            Set<String> written = new HashSet<>();
+            Deque<Map<String, NASTNode>> scopes = new ArrayDeque<>();
+            scopes.push(globals);
+            scopes.push(new HashMap<>());
+            for(NASTNode param : function.getSubnode(0).getAllSubnodes()) {
+                scopes.peek().put(param.getValueString(), null);
+                declared.add(param.getValueString());
+            }
+            writes(function.getSubnode(2), declared, written);
+
+            fold(function.getSubnode(2), null, scopes, written);
+        }
+        return changes;
+    }
+
+    // The literal a VARDEF declares, converted to the declared type, null if it has none
+    private static NASTNode value(NASTNode node) {
+        List<NASTNode> subnodes = node.getAllSubnodes();
+        if(subnodes.size() == 1 && NUMBERS.contains(subnodes.get(0).getType())) return subnodes.get(0);
+        if(subnodes.size() != 2 || subnodes.get(0).getType() != NodeType.CAST || !NUMBERS.contains(subnodes.get(1).getType())) return null;
+
+        try {
+            NodeType type = ConstantEvaluator.typeOf(NodeType.valueOf(subnodes.get(0).getValueString()));
+            return ConstantEvaluator.literal(ConstantEvaluator.convert(ConstantEvaluator.constant(subnodes.get(1)), type));
+        } catch (NotConstant | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Names that can't propagate: declared twice, assigned, incremented or with their address taken
+    private static void writes(NASTNode node, Set<String> declared, Set<String> written) {
+        switch(node.getType()) {
+            case VARDEF -> {
+                if(!declared.add(node.getValueString())) written.add(node.getValueString());
+            }
+            case ASSIGN, INC, DEC, FINDADDRESS -> {
+                if(!node.getAllSubnodes().isEmpty()) written.add(root(node.getSubnode(0).getValueString()));
+            }
+            default -> {}
+        }
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            writes(subnode, declared, written);
+        }
+    }
+
+    private static String root(String name) {
+        return name.contains(".") ? name.substring(0, name.indexOf('.')) : name;
+    }
+
+    // Folds the subtrees of node first, then node itself. A null in scopes shadows without a value
+    private void fold(NASTNode node, NASTNode parent, Deque<Map<String, NASTNode>> scopes, Set<String> written) {
+        boolean scope = node.getType() == NodeType.FUNCTIONBODY || node.getType() == NodeType.ELSE || node.getType() == NodeType.FORLOOP;
+        if(scope) scopes.push(new HashMap<>());
+
+        List<NASTNode> subnodes = node.getAllSubnodes();
+        for(int i = 0; i < subnodes.size(); i++) {
+            NASTNode subnode = subnodes.get(i);
+            fold(subnode, node, scopes, written);
+            if(!takesLiteral(node, subnode)) continue;
+
+            NASTNode literal = simplify(subnode, scopes);
+            if(literal != null && !worthIt(node, subnode, literal)) literal = null;
+            if(literal != null) {
+                node.removeNode(i);
+                node.addNode(literal, i);
+                changes++;
+            }
+        }
+
+        if(node.getType() == NodeType.VARDEF) {
+            String name = node.getValueString();
+            boolean propagates = parent.getType() != NodeType.LOOPDEF && !written.contains(name);
+            scopes.peek().put(name, propagates ? value(node) : null);
+        }
+
+        if(scope) scopes.pop();
+    }
+
+    private boolean takesLiteral(NASTNode parent, NASTNode subnode) {
+        if(subnode.getType() == NodeType.CAST && subnode.getAllSubnodes().isEmpty()) return false;
+        return switch(parent.getType()) {
+            case VARDEF, RETURN, CONDITION, LOOPCOND, CAST -> true;
+            case ASSIGN -> parent.getSubnode(0) != subnode;
+            default -> OPERATORS.contains(parent.getType()) || UNARY.contains(parent.getType());
+        };
+    }
+
+    // Codegen loads every fp32 literal from a global, so an fp32 variable only propagates where it lets the operator fold
+    private static boolean worthIt(NASTNode parent, NASTNode subnode, NASTNode literal) {
+        if(subnode.getType() != NodeType.VARIABLE || literal.getType() != NodeType.FP32) return true;
+        if(!OPERATORS.contains(parent.getType())) return false;
+        for(NASTNode operand : parent.getAllSubnodes()) {
+            if(operand != subnode && !literal(operand)) return false;
+        }
+        return true;
+    }
+
+    // The literal node replaces, null when it stays as it is
+    private NASTNode simplify(NASTNode node, Deque<Map<String, NASTNode>> scopes) {
+        NodeType type = node.getType();
+        List<NASTNode> subnodes = node.getAllSubnodes();
+        try {
+            if(type == NodeType.VARIABLE && subnodes.isEmpty() && !node.getValueString().contains(".")) {
+                for(Map<String, NASTNode> scope : scopes) {
+                    if(!scope.containsKey(node.getValueString())) continue;
+                    NASTNode literal = scope.get(node.getValueString());
+                    return literal == null ? null : new NASTNode(literal.getType(), literal.getValueString());
+                }
+            }
+            else if(OPERATORS.contains(type) && subnodes.size() == 2 && literal(subnodes.get(0)) && literal(subnodes.get(1))) {
+                Value lhs = ConstantEvaluator.constant(subnodes.get(0));
+                Value rhs = ConstantEvaluator.constant(subnodes.get(1));
+                return ConstantEvaluator.literal(evaluator.binary(type, lhs, rhs));
+            }
+            else if(UNARY.contains(type) && subnodes.size() == 1 && literal(subnodes.get(0))) {
+                return ConstantEvaluator.literal(ConstantEvaluator.unary(type, ConstantEvaluator.constant(subnodes.get(0))));
+            }
+            else if(type == NodeType.CAST && subnodes.size() == 1 && literal(subnodes.get(0))) {
+                NodeType target = ConstantEvaluator.typeOf(NodeType.valueOf(node.getValueString()));
+                return ConstantEvaluator.literal(ConstantEvaluator.convert(ConstantEvaluator.constant(subnodes.get(0)), target));
+            }
+        } catch (NotConstant | IllegalArgumentException e) {
+            // Undefined at compile time or not a number, the program computes it
+        }
+        return null;
+    }
+
+    private static boolean literal(NASTNode node) {
+        return LITERALS.contains(node.getType());
+    }
+}
@@ -0,0 +1,259 @@
+package nvyc.processing;
+
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+import nvyc.utils.LLVMUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class DeadCodeElimination implements Pass {
+
+    /*
+
+        Removes code inside function bodies that never runs or whose result is never used.
+
+            unreachable     statements after a return in the same block
+            branches        an if with a literal condition is replaced by the branch it takes. The parser
+                            puts the rest of the enclosing block in the if's ELSE, so that always follows:
+                            if(1) becomes its body then the ELSE, if(0) only the ELSE
+            dead locals     lets that are never read, with the assignments to them.
+                            Values without side effects go with them, a call stays as a statement of its own
+
+        A variable is read by any use besides being the target of an assignment, taking its address
+        and indexing included.
+        Loop variables, and variables written anywhere but a statement of a block, always stay.
+        Divisions are only dropped when the divisor is a non zero literal, so a program that traps still traps.
+
+        A literal if is spliced into the enclosing block when that can't clash with a name of the block,
+        otherwise it stays an if and codegen jumps to the taken branch directly, the body of an if(0) is emptied.
+        Run after fold, which turns conditions into literals and leaves lets that nothing reads.
+
+     */
+
+    private final LLVMUtils utils = new LLVMUtils();
+
+    private static final Set<NodeType> PURE = Set.of(
+            NodeType.ADD, NodeType.SUB, NodeType.MUL, NodeType.BITAND, NodeType.BITOR, NodeType.BITXOR,
+            NodeType.ARITHLEFTSHIFT, NodeType.ARITHRIGHTSHIFT, NodeType.LOGICRIGHTSHIFT,
+            NodeType.EQ, NodeType.NEQ, NodeType.LT, NodeType.LTE, NodeType.GT, NodeType.GTE,
+            NodeType.LOGICAND, NodeType.LOGICOR, NodeType.NOT, NodeType.SWITCHSIGN, NodeType.BITNEGATE,
+            NodeType.CAST, NodeType.VARIABLE, NodeType.MEMBER, NodeType.STR, NodeType.BOOL_TR, NodeType.BOOL_FA,
+            NodeType.ARRAY, NodeType.ARRAY_SIZE, NodeType.INT32_T, NodeType.INT64_T, NodeType.FP32_T, NodeType.FP64_T,
+            NodeType.CHAR_T, NodeType.BOOL_T);
+
+    private int changes;
+
+    @Override
+    public String getName() {
+        return "dce";
+    }
+
+    @Override
+    public int run(List<NASTNode> nodes) {
+        changes = 0;
+        for(NASTNode node : nodes) {
+            NASTNode function = node.getType() == NodeType.EXTERNAL ? node.getSubnode(0) : node;
+            if(function.getType() != NodeType.FUNCTION || function.getAllSubnodes().size() < 3) continue;
+
+            NASTNode body = function.getSubnode(2);
+            Map<String, Integer> declarations = new HashMap<>();
+            for(NASTNode param : function.getSubnode(0).getAllSubnodes()) {
+                declarations.merge(param.getValueString(), 1, Integer::sum);
+            }
+            declarations(body, declarations);
+
+            blocks(body, declarations);
+            while(deadLocals(body)) {
+                // Dropping a let can leave the lets its value read unused
+            }
+        }
+        return changes;
+    }
+
+    private static void declarations(NASTNode node, Map<String, Integer> declarations) {
+        if(node.getType() == NodeType.VARDEF) declarations.merge(node.getValueString(), 1, Integer::sum);
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            declarations(subnode, declarations);
+        }
+    }
+
+    // -----------------------------------------
+    // |        UNREACHABLE AND BRANCHES       |
+    // -----------------------------------------
+
+    private void blocks(NASTNode node, Map<String, Integer> declarations) {
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            blocks(subnode, declarations);
+        }
+        if(node.getType() != NodeType.FUNCTIONBODY && node.getType() != NodeType.ELSE) return;
+
+        List<NASTNode> statements = node.getAllSubnodes();
+        for(int i = 0; i < statements.size(); i++) {
+            NASTNode statement = statements.get(i);
+
+            if(statement.getType() == NodeType.RETURN) {
+                while(statements.size() > i + 1) {
+                    node.removeNode(i + 1);
+                    changes++;
+                }
+                break;
+            }
+
+            if(statement.getType() != NodeType.IF || !utils.isLiteral(statement.getSubnode(0).getSubnode(0))) continue;
+            boolean taken = utils.isNonZeroLiteral(statement.getSubnode(0).getSubnode(0));
+
+            // What runs in place of the if, the body when it's taken and then the rest of the block
+            List<NASTNode> replacement = new ArrayList<>();
+            if(taken) replacement.addAll(statement.getSubnode(1).getAllSubnodes());
+            if(statement.getAllSubnodes().size() > 2) replacement.addAll(statement.getSubnode(2).getAllSubnodes());
+
+            if(splices(replacement, declarations)) {
+                node.removeNode(i);
+                for(int j = 0; j < replacement.size(); j++) {
+                    node.addNode(replacement.get(j), i + j);
+                }
+                i--;
+                changes++;
+            } else if(!taken && !statement.getSubnode(1).getAllSubnodes().isEmpty()) {
+                statement.getSubnode(1).removeAllSubnodes();
+                changes++;
+            }
+        }
+    }
+
+    // Statements can join the enclosing block when every name they declare is declared once in the function
+    private static boolean splices(List<NASTNode> statements, Map<String, Integer> declarations) {
+        for(NASTNode statement : statements) {
+            if(statement.getType() == NodeType.VARDEF && declarations.getOrDefault(statement.getValueString(), 0) > 1) return false;
+        }
+        return true;
+    }
+
+    // -----------------------------------------
+    // |              DEAD LOCALS              |
+    // -----------------------------------------
+
+    private boolean deadLocals(NASTNode body) {
+        Set<String> read = new HashSet<>();
+        Set<String> pinned = new HashSet<>();
+        uses(body, null, read, pinned);
+
+        Set<String> dead = new HashSet<>();
+        writes(body, read, pinned, dead);
+        dead.removeAll(pinned);
+        if(dead.isEmpty()) return false;
+
+        int before = changes;
+        remove(body, dead);
+        return changes > before;
+    }
+
+    // Names read anywhere, and names written where a statement can't be removed
+    private static void uses(NASTNode node, NASTNode parent, Set<String> read, Set<String> pinned) {
+        boolean statement = parent != null && (parent.getType() == NodeType.FUNCTIONBODY || parent.getType() == NodeType.ELSE);
+        List<NASTNode> subnodes = node.getAllSubnodes();
+
+        // Arrays and their indices carry the variable name as their value too, so any named node reads
+        switch(node.getType()) {
+            case VARDEF -> {
+                if(!statement) pinned.add(node.getValueString());
+            }
+            case ASSIGN -> {
+                NASTNode target = subnodes.get(0);
+                if(target.getType() == NodeType.VARIABLE) {
+                    if(!statement) pinned.add(root(target.getValueString()));
+                    for(int i = 1; i < subnodes.size(); i++) {
+                        uses(subnodes.get(i), node, read, pinned);
+                    }
+                    // Members of the target, like x.a, are written and not read
+                    return;
+                }
+            }
+            default -> {
+                if(node.getValue() != null) read.add(root(node.getValueString()));
+            }
+        }
+
+        for(NASTNode subnode : subnodes) {
+            uses(subnode, node, read, pinned);
+        }
+    }
+
+    // Locals nothing reads, pinned when one of their values can't be dropped or turned into a call
+    private void writes(NASTNode node, Set<String> read, Set<String> pinned, Set<String> dead) {
+        String name = switch(node.getType()) {
+            case VARDEF -> node.getValueString();
+            case ASSIGN -> node.getSubnode(0).getType() == NodeType.VARIABLE ? root(node.getSubnode(0).getValueString()) : null;
+            default -> null;
+        };
+        if(name != null && !read.contains(name)) {
+            NASTNode value = value(node);
+            if(value != null && value.getType() != NodeType.FUNCTIONCALL && !pure(value)) pinned.add(name);
+            else dead.add(name);
+        }
+
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            writes(subnode, read, pinned, dead);
+        }
+    }
+
+    private void remove(NASTNode node, Set<String> dead) {
+        boolean block = node.getType() == NodeType.FUNCTIONBODY || node.getType() == NodeType.ELSE;
+        List<NASTNode> statements = node.getAllSubnodes();
+
+        for(int i = 0; i < statements.size(); i++) {
+            NASTNode statement = statements.get(i);
+            String name = switch(statement.getType()) {
+                case VARDEF -> statement.getValueString();
+                case ASSIGN -> statement.getSubnode(0).getType() == NodeType.VARIABLE ? root(statement.getSubnode(0).getValueString()) : null;
+                default -> null;
+            };
+
+            if(!block || name == null || !dead.contains(name)) {
+                remove(statement, dead);
+                continue;
+            }
+
+            NASTNode value = value(statement);
+            node.removeNode(i);
+            if(value != null && value.getType() == NodeType.FUNCTIONCALL) node.addNode(value, i);
+            else i--;
+            changes++;
+        }
+    }
+
+    // The expression a VARDEF or ASSIGN stores, null for a declaration without one
+    private static NASTNode value(NASTNode node) {
+        List<NASTNode> subnodes = node.getAllSubnodes();
+        int first = node.getType() == NodeType.ASSIGN ? 1 : 0;
+        if(subnodes.size() <= first) return null;
+        if(subnodes.get(first).getType() == NodeType.CAST && subnodes.get(first).getAllSubnodes().isEmpty()) {
+            return subnodes.size() > first + 1 ? subnodes.get(first + 1) : null;
+        }
+        return subnodes.get(first);
+    }
+
+    private boolean pure(NASTNode node) {
+        NodeType type = node.getType();
+        if(type == NodeType.DIV || type == NodeType.MODULO) {
+            NASTNode divisor = node.getSubnode(1);
+            if(!utils.isLiteral(divisor) || !utils.isNonZeroLiteral(divisor)) return false;
+        } else if(!PURE.contains(type) && !utils.isLiteral(node)) {
+            return false;
+        }
+
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            if(!pure(subnode)) return false;
+        }
+        return true;
+    }
+
+    private static String root(String name) {
+        return name.contains(".") ? name.substring(0, name.indexOf('.')) : name;
+    }
+}
@@ -0,0 +1,131 @@
+package nvyc.processing;
+
+import nvyc.data.FunctionData;
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+public class DeadDeclarationElimination {
+
+    private FunctionData fundata = FunctionData.getInstance();
+
+    private List<String> removed = new ArrayList<>();
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /*
+
+        Whole program pass over the top level nodes, run after mangled names are resolved.
+
+        Roots are main and every global initializer that calls a function.
+        Edges are FUNCTIONCALLs, variables that name a function (address taken, see bitcastFunctionToPointer)
+        and variables that name a global, whose initializer is walked like a function body.
+
+        Anything not reached is dropped: functions, native declarations,
+        structs that no reached code casts to or returns, and globals no reached code reads or writes.
+
+        Without a main (libraries), nothing is removed.
+
+     */
+    public List<NASTNode> eliminate(List<NASTNode> nodes) {
+        removed.clear();
+
+        Map<String, NASTNode> functions = new HashMap<>();
+        Map<String, NASTNode> globals = new HashMap<>();
+        for(NASTNode node : nodes) {
+            if(node.getType() == NodeType.FUNCTION) functions.put(node.getValueString(), node);
+            else if(node.getType() == NodeType.NATIVE || node.getType() == NodeType.EXTERNAL) functions.put(node.getSubnode(0).getValueString(), node);
+            else if(node.getType() == NodeType.VARDEF || node.getType() == NodeType.GLOBALVARDEF) globals.put(node.getValueString(), node);
+        }
+
+        if(!functions.containsKey("main")) return nodes;
+
+        Set<String> reached = new HashSet<>();
+        Set<String> referenced = new HashSet<>();
+        Stack<NASTNode> worklist = new Stack<>();
+
+        worklist.push(functions.get("main"));
+        for(NASTNode node : nodes) {
+            if(node.getType() == NodeType.VARDEF && node.contains(NodeType.FUNCTIONCALL)) {
+                worklist.push(node);
+            }
+        }
+
+        while(!worklist.isEmpty()) {
+            NASTNode node = worklist.pop();
+            List<String> names = new ArrayList<>();
+            collectReferences(node, names);
+
+            for(String name : names) {
+                if(!referenced.add(name)) continue;
+                if(functions.containsKey(name) && reached.add(name)) {
+                    worklist.push(functions.get(name));
+                } else if(globals.containsKey(name)) {
+                    // A kept global is initialized from what its initializer reads
+                    worklist.push(globals.get(name));
+                }
+            }
+        }
+        reached.add("main");
+
+        // A parameter typed with a user type hides which struct it is, so every struct has to stay
+        boolean keepAllStructs = false;
+        for(String name : reached) {
+            NASTNode function = functions.get(name);
+            if(function.getType() != NodeType.FUNCTION) function = function.getSubnode(0);
+            for(NASTNode arg : function.getSubnode(0).getAllSubnodes()) {
+                if(arg.getType() == NodeType.VARIABLE) keepAllStructs = true;
+            }
+            if(fundata.hasLlvmType(name)) referenced.add(fundata.getLlvmReturnType(name));
+        }
+
+        List<NASTNode> result = new ArrayList<>();
+        for(NASTNode node : nodes) {
+            String name;
+            boolean keep = switch(node.getType()) {
+                case FUNCTION -> reached.contains(name = node.getValueString());
+                case NATIVE, EXTERNAL -> reached.contains(name = node.getSubnode(0).getValueString());
+                case STRUCT -> {
+                    name = node.getValueString();
+                    yield keepAllStructs || referenced.contains(name) || referenced.contains("%" + name);
+                }
+                case VARDEF, GLOBALVARDEF -> {
+                    name = node.getValueString();
+                    yield referenced.contains(name) || node.contains(NodeType.FUNCTIONCALL);
+                }
+                default -> {
+                    name = node.getValueString();
+                    yield true;
+                }
+            };
+
+            if(keep) result.add(node);
+            else removed.add(String.format("%s %s", node.getType() == NodeType.VARDEF || node.getType() == NodeType.GLOBALVARDEF ? "global" : node.getType().toString().toLowerCase(), name));
+        }
+
+        return result;
+    }
+
+    // Every name that can refer to a function, global or struct
+    private void collectReferences(NASTNode node, List<String> names) {
+        if(node == null) return;
+
+        switch(node.getType()) {
+            case FUNCTIONCALL, VARIABLE, ARRAY, PTRDEREF, STRUCT -> names.add(node.getValueString());
+            default -> {}
+        }
+
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            collectReferences(subnode, names);
+        }
+    }
+}
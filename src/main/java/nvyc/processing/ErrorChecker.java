@@ -3,6 +3,7 @@ package nvyc.processing;
 import nvyc.data.NASTNode;
 import nvyc.data.NodeType;
 import nvyc.generation.Parser;
+import nvyc.utils.NvyError;
 
 import java.util.HashMap;
 import java.util.List;
@@ -11,6 +12,7 @@ import java.util.Map;
 public class ErrorChecker {
 
     Parser parse = new Parser();
+    NvyError err = new NvyError();
 
     Map<String, NASTNode> functionmap = new HashMap<>();
 
@@ -33,7 +35,7 @@ public class ErrorChecker {
                     System.out.printf("ERROR > Function '%s' already exists!\n", name);
                     //System.out.printf("1st declaration at %s\n", parse.reconstruct(functionmap.get(name)).get(0));
                     //System.out.printf("2nd declaration at %s\n", parse.reconstruct(n).get(0));
-                    System.exit(1);
+                    err.NV_EXIT(1);
                 }
                 break;
             case VARDEF:
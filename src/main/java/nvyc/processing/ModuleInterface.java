@@ -0,0 +1,362 @@
+package nvyc.processing;
+
+import nvyc.data.FunctionData;
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+import nvyc.data.Symbols;
+import nvyc.data.VariableData;
+import nvyc.utils.CompilerEvents;
+import nvyc.utils.NvyError;
+import nvyc.utils.ParserUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ModuleInterface {
+
+    /*
+
+        Interface files (.nvyi) let a module be imported without pasting its source in.
+        One declaration per line, fields split by spaces
+
+        func    <mangled> <name> <return type> <llvm return type> <param types...>
+        struct  <name> <member>:<type>...
+        global  <name> <type>
+        body    <serialized function>
+
+        Importers turn funcs into declares, structs into type definitions and globals into external globals.
+        The module itself is compiled separately and linked in.
+
+        Small functions can also carry their body (--inline-threshold), which importers emit as
+        available_externally definitions so llvm can inline them across the module boundary.
+        Bodies are written in prefix form, (TYPE value children...), values being length prefixed: S5:hello
+
+     */
+
+    public static final String EXTENSION = ".nvyi";
+    public static final String LIBRARY = "nvylib";
+
+    private static final String FUNCTION = "func";
+    private static final String STRUCT = "struct";
+    private static final String GLOBAL = "global";
+    private static final String BODY = "body";
+
+    private FunctionData fundata = FunctionData.getInstance();
+    private VariableData vardata = VariableData.getInstance();
+    private ParserUtils utils = new ParserUtils();
+    private NvyError err = new NvyError();
+
+    /*
+        Name of the module a source file is, its functions are mangled with it.
+        The path below the library root without the extension, nvylib/io/file.nvy is io/file,
+        and just the file name for anything outside the library, so the directory nvyc runs from doesn't change it
+     */
+    public static String moduleName(String path) {
+        Path file = Path.of(path).toAbsolutePath().normalize();
+        Path root = file.getParent();
+        while(root != null && (root.getFileName() == null || !root.getFileName().toString().equals(LIBRARY))) {
+            root = root.getParent();
+        }
+
+        String name = (root == null ? file.getFileName() : root.relativize(file)).toString().replace(File.separatorChar, '/');
+        int extension = name.lastIndexOf('.');
+        return extension > name.lastIndexOf('/') ? name.substring(0, extension) : name;
+    }
+
+    public void write(String path, String module, List<NASTNode> nodes, Map<String, String> functionNameMap) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("module " + module);
+
+        for(NASTNode node : nodes) {
+            NodeType type = node.getType();
+
+            if(type == NodeType.NATIVE) {
+                node = node.getSubnode(0);
+                type = NodeType.FUNCTION;
+            }
+
+            switch(type) {
+                case FUNCTION -> {
+                    String name = node.getValueString();
+                    if(name.equals("main")) continue;
+                    lines.add(functionLine(name, originalName(name, functionNameMap), node));
+                    if(isInlinable(node)) {
+                        StringBuilder body = new StringBuilder(BODY + " ");
+                        if(serialize(node, body)) lines.add(body.toString());
+                    }
+                }
+                case STRUCT -> lines.add(structLine(node));
+                case VARDEF -> {
+                    String name = node.getValueString();
+                    NodeType globalType = vardata.getType("@global_" + name);
+                    if(globalType != null) lines.add(String.join(" ", GLOBAL, name, globalType.toString()));
+                }
+                default -> {}
+            }
+        }
+
+        try(BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
+            for(String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    private String functionLine(String name, String original, NASTNode function) {
+        StringBuilder builder = new StringBuilder();
+        NodeType returnType = fundata.getReturnType(name);
+        String llvmReturnType = fundata.hasLlvmType(name) ? fundata.getLlvmReturnType(name) : Symbols.nativeTypeToLLVM(returnType);
+
+        builder
+                .append(FUNCTION).append(" ")
+                .append(name).append(" ")
+                .append(original).append(" ")
+                .append(returnType).append(" ")
+                .append(llvmReturnType);
+
+        for(NASTNode arg : function.getSubnode(0).getAllSubnodes()) {
+            builder.append(" ").append(arg.getType());
+        }
+
+        return builder.toString();
+    }
+
+    private String structLine(NASTNode struct) {
+        StringBuilder builder = new StringBuilder();
+        String name = struct.getValueString();
+
+        builder.append(STRUCT).append(" ").append(name);
+        for(int i = 0; i < struct.getAllSubnodes().size(); i++) {
+            builder
+                    .append(" ")
+                    .append(vardata.getStructMemberFromPos("%" + name, i))
+                    .append(":")
+                    .append(struct.getSubnode(i).getType());
+        }
+
+        return builder.toString();
+    }
+
+    private boolean isInlinable(NASTNode function) {
+        if(NvyError.INLINE_BODY_THRESHOLD <= 0) return false;
+        NASTNode body = function.getSubnode(2);
+        return !body.getAllSubnodes().isEmpty() && body.flattenNodes().size() <= NvyError.INLINE_BODY_THRESHOLD;
+    }
+
+    // False when a value can't be written, the function is then only declared
+    private boolean serialize(NASTNode node, StringBuilder builder) {
+        builder.append("(").append(node.getType()).append(" ");
+
+        Object value = node.getValue();
+        String tag;
+        if(value == null) tag = "N";
+        else if(value instanceof String) tag = "S";
+        else if(value instanceof NodeType) tag = "T";
+        else if(value instanceof Integer) tag = "I";
+        else if(value instanceof Long) tag = "L";
+        else if(value instanceof Double) tag = "D";
+        else if(value instanceof Float) tag = "F";
+        else if(value instanceof Boolean) tag = "B";
+        else return false;
+
+        String text = value == null ? "" : value.toString();
+        builder.append(tag).append(text.length()).append(":").append(text);
+
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            builder.append(" ");
+            if(!serialize(subnode, builder)) return false;
+        }
+
+        builder.append(")");
+        return true;
+    }
+
+    private NASTNode deserialize(String text, int[] pos) {
+        pos[0]++; // (
+        int space = text.indexOf(' ', pos[0]);
+        NodeType type = NodeType.valueOf(text.substring(pos[0], space));
+
+        char tag = text.charAt(space + 1);
+        int colon = text.indexOf(':', space);
+        int length = Integer.parseInt(text.substring(space + 2, colon));
+        String raw = text.substring(colon + 1, colon + 1 + length);
+        pos[0] = colon + 1 + length;
+
+        Object value = switch(tag) {
+            case 'S' -> raw;
+            case 'T' -> NodeType.valueOf(raw);
+            case 'I' -> Integer.parseInt(raw);
+            case 'L' -> Long.parseLong(raw);
+            case 'D' -> Double.parseDouble(raw);
+            case 'F' -> Float.parseFloat(raw);
+            case 'B' -> Boolean.parseBoolean(raw);
+            default -> null;
+        };
+
+        NASTNode node = new NASTNode(type, value);
+        while(text.charAt(pos[0]) == ' ') {
+            pos[0]++;
+            node.addNode(deserialize(text, pos), NASTNode.TAIL);
+        }
+        pos[0]++; // )
+        return node;
+    }
+
+    // Reverse lookup, only the unqualified name is needed
+    private String originalName(String mangled, Map<String, String> functionNameMap) {
+        String original = mangled;
+        for(Map.Entry<String, String> entry : functionNameMap.entrySet()) {
+            if(entry.getValue().equals(mangled) && (original.equals(mangled) || entry.getKey().length() < original.length())) {
+                original = entry.getKey();
+            }
+        }
+        return original;
+    }
+
+    /*
+        Reads an interface and registers everything it declares.
+        Returns the nodes that codegen needs to emit declarations for.
+     */
+    public List<NASTNode> read(String path, Map<String, String> functionNameMap) {
+        List<NASTNode> nodes = new ArrayList<>();
+        String module = "";
+
+        List<String> lines;
+        CompilerEvents.ImportEvent event = new CompilerEvents.ImportEvent();
+        event.begin();
+        try(BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            lines = reader.lines().toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        event.end();
+        if(event.shouldCommit()) {
+            event.path = path;
+            event.bytes = new File(path).length();
+            event.iface = true;
+            event.commit();
+        }
+
+        for(String line : lines) {
+            String[] fields = line.trim().split(" ");
+            switch(fields[0]) {
+                case "module" -> module = fields[1];
+                case FUNCTION -> nodes.add(readFunction(fields, module, functionNameMap));
+                case BODY -> {
+                    // Always follows the func line of the same function
+                    NASTNode declaration = nodes.get(nodes.size() - 1);
+                    NASTNode function = deserialize(line.trim().substring(BODY.length() + 1), new int[]{0});
+                    function.getSubnode(1).getSubnode(0).setValue(declaration.getSubnode(0).getSubnode(1).getSubnode(0).getValue());
+
+                    NASTNode external = new NASTNode(NodeType.EXTERNAL, NodeType.VOID);
+                    external.addNode(function, NASTNode.TAIL);
+                    nodes.set(nodes.size() - 1, external);
+                }
+                case STRUCT -> nodes.add(0, readStruct(fields));
+                case GLOBAL -> {
+                    NASTNode global = new NASTNode(NodeType.GLOBALVARDEF, fields[1]);
+                    global.addNode(new NASTNode(NodeType.valueOf(fields[2]), NodeType.VOID), NASTNode.TAIL);
+                    nodes.add(global);
+                }
+                case "" -> {}
+                default -> {
+                    err.NV_STDERRF("Malformed interface %s: %s%n", path, line);
+                    err.NV_EXIT(1);
+                }
+            }
+        }
+
+        return nodes;
+    }
+
+    /*
+        Imports can overlap, such as two modules re-exporting printf from nvio.
+        Keeps only the first declaration of each name, and nothing the module already declares itself.
+        Imported functions are registered here.
+     */
+    public List<NASTNode> withoutRedeclarations(List<NASTNode> imported, List<NASTNode> nodes) {
+        Set<String> declared = new HashSet<>();
+        for(NASTNode node : nodes) {
+            declared.add(declarationName(node));
+        }
+
+        List<NASTNode> result = new ArrayList<>();
+        for(NASTNode node : imported) {
+            if(!declared.add(declarationName(node))) continue;
+            if(node.getType() == NodeType.NATIVE || node.getType() == NodeType.EXTERNAL) registerFunction(node.getSubnode(0));
+            result.add(node);
+        }
+        return result;
+    }
+
+    private String declarationName(NASTNode node) {
+        return switch(node.getType()) {
+            case NATIVE, EXTERNAL -> node.getSubnode(0).getValueString();
+            case STRUCT -> "%" + node.getValueString();
+            case VARDEF, GLOBALVARDEF -> "@global_" + node.getValueString();
+            default -> node.getValueString();
+        };
+    }
+
+    private NASTNode readFunction(String[] fields, String module, Map<String, String> functionNameMap) {
+        String name = fields[1];
+        String original = fields[2];
+
+        NASTNode function = utils.createFunction(name);
+        utils.setReturnType(function, NodeType.valueOf(fields[3]));
+        function.getSubnode(1).getSubnode(0).setValue(fields[4]);
+
+        for(int i = 5; i < fields.length; i++) {
+            utils.addFunctionArg(function, utils.createArgument(NodeType.valueOf(fields[i]), "_nvyi_" + name + "_" + (i - 5)));
+        }
+
+        if(!original.equals(name)) {
+            functionNameMap.putIfAbsent(original, name);
+            functionNameMap.put(module + "_" + original, name);
+        }
+
+        // Only a declaration is emitted, same as a native function
+        NASTNode declaration = new NASTNode(NodeType.NATIVE, NodeType.VOID);
+        declaration.addNode(function, NASTNode.TAIL);
+        return declaration;
+    }
+
+    // Done once duplicates are gone, parameters would otherwise be added twice
+    private void registerFunction(NASTNode function) {
+        String name = function.getValueString();
+        NASTNode returnNode = function.getSubnode(1).getSubnode(0);
+
+        fundata.setReturnType(name, returnNode.getType());
+        fundata.setLlvmReturnType(name, returnNode.getValueString());
+
+        for(NASTNode arg : function.getSubnode(0).getAllSubnodes()) {
+            fundata.addParameter(name, arg.getType());
+            fundata.addNamedParam(name, "%" + arg.getValueString());
+        }
+    }
+
+    private NASTNode readStruct(String[] fields) {
+        String name = fields[1];
+        NASTNode struct = utils.createStruct(name);
+
+        for(int i = 2; i < fields.length; i++) {
+            String member = fields[i].substring(0, fields[i].indexOf(':'));
+            NodeType type = NodeType.valueOf(fields[i].substring(fields[i].indexOf(':') + 1));
+            utils.addStructNode(struct, new NASTNode(type, name));
+            vardata.addStructMember("%" + name, member, i - 2, type);
+        }
+
+        return struct;
+    }
+}
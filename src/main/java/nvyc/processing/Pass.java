@@ -0,0 +1,20 @@
+package nvyc.processing;
+
+import nvyc.data.NASTNode;
+
+import java.util.List;
+
+/*
+
+    A tree transformation run by the PassManager, after validation and before codegen.
+    Passes rewrite the top level nodes in place and may add or remove entries of the list.
+
+ */
+public interface Pass {
+
+    // Used by --passes= and in reports
+    String getName();
+
+    // Returns the number of changes made, 0 means the tree is untouched
+    int run(List<NASTNode> nodes);
+}
@@ -0,0 +1,106 @@
+package nvyc.processing;
+
+import nvyc.data.NASTNode;
+import nvyc.utils.NvyError;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class PassManager {
+
+    /*
+
+        Runs the optimization pipeline between validation and codegen.
+
+        The pipeline comes from the -O level, or from --passes=a,b,c which replaces it.
+            -O0     nothing, the tree goes to codegen as parsed
+            -O1     cheap local passes, run once
+            -O2     the -O1 passes plus the expensive ones, repeated until nothing changes (at most MAX_ROUNDS)
+
+        Every pass is timed and its changes counted, see getResults.
+        With --verify-passes the tree is checked after each pass and the first pass to break it is reported.
+
+        New passes go in PASSES and in the presets they belong to.
+
+     */
+
+    public static final int MAX_ROUNDS = 4;
+
+    private static final Map<String, Supplier<Pass>> PASSES = new LinkedHashMap<>();
+    private static final List<String> O1 = new ArrayList<>();
+    private static final List<String> O2 = new ArrayList<>();
+
+    static {
+        PASSES.put("fold", ConstantFolding::new);
+        PASSES.put("dce", DeadCodeElimination::new);
+
+        O1.add("fold");
+        O1.add("dce");
+        O2.addAll(O1);
+    }
+
+    public record Result(String pass, int round, long nanos, int changes) {}
+
+    private final NvyError err = new NvyError();
+    private final TreeVerifier verifier = new TreeVerifier();
+    private final List<Pass> pipeline = new ArrayList<>();
+    private final List<Result> results = new ArrayList<>();
+    private final boolean repeat;
+
+    public PassManager(int level, String passes) {
+        List<String> names = passes != null ? List.of(passes.split(",")) : preset(level);
+        for(String name : names) {
+            if(name.isBlank()) continue;
+            if(!PASSES.containsKey(name)) {
+                err.NV_STDERRF("Unknown pass %s, available passes are %s%n", name, PASSES.keySet());
+                err.NV_EXIT(1);
+            }
+            pipeline.add(PASSES.get(name).get());
+        }
+        repeat = passes == null && level >= 2;
+    }
+
+    private static List<String> preset(int level) {
+        return switch(level) {
+            case 0 -> List.of();
+            case 1 -> O1;
+            default -> O2;
+        };
+    }
+
+    public static List<String> getAvailablePasses() {
+        return new ArrayList<>(PASSES.keySet());
+    }
+
+    public void run(List<NASTNode> nodes) {
+        if(NvyError.VERIFY_PASSES) verify(nodes, "Input of the pipeline");
+
+        for(int round = 1; round <= (repeat ? MAX_ROUNDS : 1); round++) {
+            int changes = 0;
+            for(Pass pass : pipeline) {
+                long start = System.nanoTime();
+                int changed = pass.run(nodes);
+                results.add(new Result(pass.getName(), round, System.nanoTime() - start, changed));
+                changes += changed;
+
+                if(NvyError.VERIFY_PASSES) verify(nodes, String.format("Pass %s (round %d)", pass.getName(), round));
+            }
+            if(changes == 0) break;
+        }
+    }
+
+    private void verify(List<NASTNode> nodes, String stage) {
+        String problem = verifier.verify(nodes);
+        if(problem != null) {
+            err.NV_STDERRF("%s is an invalid tree: %s%n", stage, problem);
+            err.NV_EXIT(1);
+        }
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+}
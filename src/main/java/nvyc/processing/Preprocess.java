@@ -2,9 +2,11 @@ package nvyc.processing;
 
 import nvyc.data.NodeStream;
 import nvyc.data.NodeType;
+import nvyc.utils.CompilerEvents;
 import nvyc.utils.NvyError;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -17,33 +19,66 @@ public class Preprocess {
 
     NvyError err = new NvyError();
     Map<String, String> functionNameMap = new HashMap<>();
+    List<String> interfaceImports = new ArrayList<>();
+    List<String> sourceImports = new ArrayList<>();
 
     public Map<String, String> getFunctionNameMap() {
         return functionNameMap;
     }
 
-    public List<String> resolveImports(String module, List<String> init) {
-        module = module.substring(0, module.length() - 3);
-        init = mangleFunctions(module, init);
+    public List<String> getInterfaceImports() {
+        return interfaceImports;
+    }
+
+    public List<String> getSourceImports() {
+        return sourceImports;
+    }
+
+    private boolean isUpToDate(String interfacePath, String sourcePath) {
+        File iface = new File(interfacePath);
+        File source = new File(sourcePath);
+        return iface.exists() && (!source.exists() || iface.lastModified() >= source.lastModified());
+    }
+
+    // path is where the source was read from, see ModuleInterface.moduleName
+    public List<String> resolveImports(String path, List<String> init) {
+        init = mangleFunctions(ModuleInterface.moduleName(path), init);
         List<String> result = new ArrayList<>();
         for (String s : init) {
             if (s.startsWith("%import")) {
                 String lib = s.substring(8).trim();
-                String dir = "./nvylib/" + lib; // Hardcoded for testing
+                String dir = "./" + ModuleInterface.LIBRARY + "/" + lib; // Hardcoded for testing
+
+                // Prefer the interface if it's at least as new as the source, the module is linked in separately
+                String interfacePath = dir.substring(0, dir.length() - 4) + ModuleInterface.EXTENSION;
+                if(isUpToDate(interfacePath, dir)) {
+                    if(!interfaceImports.contains(interfacePath)) interfaceImports.add(interfacePath);
+                    continue;
+                }
 
                 List<String> importedLines;
                 if(!err.NV_FILE_EXISTS(dir)) {
                     // Create proper error handling eventually
                     err.NV_STDERRF("Error while importing: could not find %s%n", lib);
-                    System.exit(1);
+                    err.NV_EXIT(1);
                 }
+                CompilerEvents.ImportEvent event = new CompilerEvents.ImportEvent();
+                event.begin();
                 try (BufferedReader reader = new BufferedReader(new FileReader(dir))) {
-                    importedLines = reader.lines().toList();
+                    importedLines = new ArrayList<>(reader.lines().toList());
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
+                event.end();
+                if(event.shouldCommit()) {
+                    event.path = dir;
+                    event.bytes = new File(dir).length();
+                    event.commit();
+                }
+                removeInlineComments(importedLines);
+                if(!sourceImports.contains(dir)) sourceImports.add(dir);
 
-                result.addAll(resolveImports(lib, importedLines));
+                result.addAll(resolveImports(dir, importedLines));
             } else {
                 result.add(s);
             }
@@ -0,0 +1,82 @@
+package nvyc.processing;
+
+import nvyc.data.NASTNode;
+import nvyc.data.NodeType;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TreeVerifier {
+
+    /*
+
+        Structural checks on the tree codegen receives, run after each pass with --verify-passes.
+        Only shapes LLVMGenerator relies on are checked, a pass that breaks one would otherwise
+        surface as an exception deep in codegen instead of naming the pass at fault.
+
+     */
+
+    // Null if the tree is well formed, otherwise what is wrong with it
+    public String verify(List<NASTNode> nodes) {
+        Set<String> functions = new HashSet<>();
+        for(NASTNode node : nodes) {
+            if(node == null) return "null top level node";
+
+            switch(node.getType()) {
+                case FUNCTION -> {
+                    if(!functions.add(node.getValueString())) return "function " + node.getValueString() + " defined twice";
+                }
+                case NATIVE, EXTERNAL -> {
+                    if(node.getAllSubnodes().size() != 1 || node.getSubnode(0).getType() != NodeType.FUNCTION) {
+                        return node.getType() + " without a function";
+                    }
+                }
+                case STRUCT, VARDEF, GLOBALVARDEF -> {}
+                default -> {
+                    return "unexpected top level " + node.currentNode();
+                }
+            }
+
+            String problem = verifyNode(node);
+            if(problem != null) return problem;
+        }
+        return null;
+    }
+
+    private String verifyNode(NASTNode node) {
+        if(node.getType() == null || node.getValue() == null) return "incomplete node " + node.currentNode();
+
+        switch(node.getType()) {
+            case FUNCTION -> {
+                if(!hasShape(node, NodeType.FUNCTIONPARAM, NodeType.FUNCTIONRETURN, NodeType.FUNCTIONBODY)) {
+                    return "malformed function " + node.getValueString();
+                }
+            }
+            case FORLOOP -> {
+                if(!hasShape(node, NodeType.LOOPDEF, NodeType.LOOPCOND, NodeType.LOOPITERATION, NodeType.FUNCTIONBODY)) {
+                    return "malformed for loop";
+                }
+            }
+            case ADD, SUB, MUL, DIV, MODULO, LT, GT, GTE, LTE, EQ, NEQ -> {
+                if(node.getAllSubnodes().size() != 2) return node.getType() + " with " + node.getAllSubnodes().size() + " operands";
+            }
+            default -> {}
+        }
+
+        for(NASTNode subnode : node.getAllSubnodes()) {
+            if(subnode == null) return "null child of " + node.currentNode();
+            String problem = verifyNode(subnode);
+            if(problem != null) return problem;
+        }
+        return null;
+    }
+
+    private boolean hasShape(NASTNode node, NodeType... children) {
+        if(node.getAllSubnodes().size() != children.length) return false;
+        for(int i = 0; i < children.length; i++) {
+            if(node.getSubnode(i) == null || node.getSubnode(i).getType() != children[i]) return false;
+        }
+        return true;
+    }
+}
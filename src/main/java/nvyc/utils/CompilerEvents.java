@@ -0,0 +1,73 @@
+package nvyc.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+public class CompilerEvents {
+
+    /*
+
+        Java Flight Recorder events, recorded with
+            java -XX:StartFlightRecording:filename=nvyc.jfr ... nvyc.internal.Test <input> <output>
+        or attached to a running --watch compiler with jcmd <pid> JFR.start
+
+        Without a recording, an event is an allocation the JIT removes and a begin/commit that does nothing.
+        Fields that cost something to compute (AST size, instruction count) are only filled when shouldCommit() is true.
+
+     */
+
+    @Name("nvyc.Phase")
+    @Label("Compiler Phase")
+    @Category("nvyc")
+    @StackTrace(false)
+    public static class PhaseEvent extends Event {
+        @Label("Phase")
+        public String phase;
+
+        @Label("Input")
+        public String input;
+    }
+
+    @Name("nvyc.Function")
+    @Label("Function Codegen")
+    @Description("IR generation of one function by LLVMGenerator.llvmFunction")
+    @Category({"nvyc", "Codegen"})
+    @StackTrace(false)
+    public static class FunctionEvent extends Event {
+        @Label("Function")
+        public String function;
+
+        @Label("AST Size")
+        @Description("Nodes in the function tree")
+        public int astSize;
+
+        @Label("IR Instructions")
+        public int instructions;
+
+        @Label("Reused")
+        @Description("IR taken from the --incremental cache")
+        public boolean reused;
+    }
+
+    @Name("nvyc.Import")
+    @Label("Import Resolution")
+    @Category("nvyc")
+    @StackTrace(false)
+    public static class ImportEvent extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Bytes Read")
+        @DataAmount
+        public long bytes;
+
+        @Label("Interface")
+        @Description("Read from a .nvyi module interface instead of the source")
+        public boolean iface;
+    }
+}
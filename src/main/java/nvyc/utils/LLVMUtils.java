@@ -3,6 +3,7 @@ package nvyc.utils;
 import nvyc.data.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +33,7 @@ public class LLVMUtils {
 
     public static final String FUNCTION_DECLARATION = "declare";
     public static final String FUNCTION_DEFINITION = "define";
+    public static final String FUNCTION_AVAILABLE_EXTERNALLY = "define available_externally";
 
     private VariableData vardata = VariableData.getInstance();
     private ScopeData scopedata = ScopeData.getInstance();
@@ -40,6 +42,12 @@ public class LLVMUtils {
 
     private static int indexCounter = 1;
     private static int globalIndexCounter = 1;
+    private static int moduleIndexCounter = 1;
+    private static int moduleFloatTempValue = 0;
+
+    // Variadic promotions in the function being generated, the same value passed twice needs a second register
+    private static final Map<String, Integer> promotions = new HashMap<>();
+    private static String globalPrefix = "";
     private static int loopDepth = 0;
     private static int conditionalDepth = 0;
 
@@ -92,6 +100,54 @@ public class LLVMUtils {
         globalIndexCounter++;
     }
 
+    /*
+        Incremental builds number strings and float temporaries per function, @.str_main_1 instead of @.str_1.
+        A cached function body then never collides with globals numbered by the rest of the module.
+     */
+    public void beginFunctionNumbering(String function) {
+        moduleIndexCounter = globalIndexCounter;
+        moduleFloatTempValue = floatTempValue;
+        globalPrefix = function + "_";
+        globalIndexCounter = 1;
+        floatTempValue = 0;
+    }
+
+    // Counters back to their initial values for the next compilation
+    public void reset() {
+        LAST_RESULT = 0;
+        floatTempValue = 0;
+        indexCounter = 1;
+        globalIndexCounter = 1;
+        moduleIndexCounter = 1;
+        moduleFloatTempValue = 0;
+        globalPrefix = "";
+        loopDepth = 0;
+        conditionalDepth = 0;
+        promotions.clear();
+    }
+
+    public void endFunctionNumbering() {
+        globalPrefix = "";
+        globalIndexCounter = moduleIndexCounter;
+        floatTempValue = moduleFloatTempValue;
+    }
+
+    // Register holding the string last loaded by loadString
+    public String getLastString() {
+        return "%.str_" + globalPrefix + getLastResult();
+    }
+
+    // Instructions are the tab indented lines, labels and the define/} lines around a body are not
+    public int countInstructions(List<String> ir) {
+        int count = 0;
+        for(String s : ir) {
+            for(String line : s.split("\n")) {
+                if(line.startsWith("\t")) count++;
+            }
+        }
+        return count;
+    }
+
     public int getCounter() {
         return indexCounter;
     }
@@ -447,7 +503,7 @@ public class LLVMUtils {
         long starcount = type.chars().filter(c -> c == '*').count();
         if(starcount == 0) {
             err.NV_STDERRF("nvc > Internal error: Attempted to dereference %s but it is not a pointer (%s)\n", ptr, type);
-            System.exit(1);
+            err.NV_EXIT(1);
         }
 
         type = type.substring(0, type.length() - 1);
@@ -899,7 +955,7 @@ public class LLVMUtils {
                     .append(llvmType);
 
             // Only add the variable name if we're defining it. Declarations don't care about names
-            if(aux.equals(FUNCTION_DEFINITION)) {
+            if(aux.startsWith(FUNCTION_DEFINITION)) {
                 builder
                         .append(" ")
                         .append(variable);
@@ -925,6 +981,7 @@ public class LLVMUtils {
     }
 
     public String createFunction(String name, String aux) {
+        promotions.clear();
         StringBuilder builder = new StringBuilder();
         NodeType returnType = fundata.getReturnType(name);
         String llvmType = nativeTypeToLLVM(returnType);
@@ -939,7 +996,7 @@ public class LLVMUtils {
                 .append(" ")
                 .append(prototype);
 
-        if(aux.equals(FUNCTION_DEFINITION))
+        if(aux.startsWith(FUNCTION_DEFINITION))
             // [declare/define] llvmType @name(params) {
             builder.append(" {\n");
 
@@ -956,7 +1013,7 @@ public class LLVMUtils {
             case FP32 -> promotionType = "double";
             default -> {
                 err.NV_STDERR("nvc > Internal error: Attempted to promote " + type + " but it cannot be promoted\n");
-                System.exit(0);
+                err.NV_EXIT(0);
             }
         }
 
@@ -969,6 +1026,8 @@ public class LLVMUtils {
                 .append(promotionValue)
                 .append("_to_")
                 .append(promotionType);
+        int repeat = promotions.merge(builder.toString(), 1, Integer::sum) - 1;
+        if(repeat > 0) builder.append(".").append(repeat);
         String vpromotionValue = builder.toString();
         builder.setLength(0);
 
@@ -1004,7 +1063,7 @@ public class LLVMUtils {
         // TODO temporary
         if(type == null) {
             err.NV_STDERR("Function does not exist: " + name);
-            System.exit(0);
+            err.NV_EXIT(0);
         }
 
         //String llvmType = nativeTypeToLLVM(type);
@@ -1111,6 +1170,7 @@ public class LLVMUtils {
         // @.str_x = private constant [size x i8] c"value" ; value
         builder
                 .append("@.str_")
+                .append(globalPrefix)
                 .append(getGlobalCounter())
                 .append(" = private constant [")
                 .append(size)
@@ -1125,12 +1185,14 @@ public class LLVMUtils {
         // %.str_x = getelementptr [size x i8], [size xi8]* @.str_x, i32 0, i32 0   ; value
         builder
                 .append("\t%.str_")
+                .append(globalPrefix)
                 .append(getGlobalCounter())
                 .append(" = getelementptr [")
                 .append(size)
                 .append(" x i8], [")
                 .append(size)
                 .append(" x i8]* @.str_")
+                .append(globalPrefix)
                 .append(getAndIncrementGlobal())
                 .append(", i32 0, i32 0\t;")
                 .append(llvmString)
@@ -1318,7 +1380,7 @@ public class LLVMUtils {
                 case MODULO    -> arithop = "frem";
                 default -> {
                     err.NV_STDERR("ERROR > Invalid operation for a floating point: " + operation);
-                    System.exit(1);
+                    err.NV_EXIT(1);
                 }
             }
         }
@@ -1340,7 +1402,7 @@ public class LLVMUtils {
                 case EQ -> arithop = "icmp eq";
                 default -> {
                     err.NV_STDERR("ERROR > Invalid operation: " + operation);
-                    System.exit(1);
+                    err.NV_EXIT(1);
                 }
             }
         }
@@ -1375,7 +1437,7 @@ public class LLVMUtils {
                 case GTE -> logicop = "fcmp oge";
                 default -> {
                     err.NV_STDERR("ERROR > Invalid operation for a floating point: " + operation);
-                    System.exit(1);
+                    err.NV_EXIT(1);
                 }
             }
         }
@@ -1393,7 +1455,7 @@ public class LLVMUtils {
                 case GTE -> logicop = "icmp sge";
                 default -> {
                     err.NV_STDERR("ERROR > Invalid operation: " + operation);
-                    System.exit(1);
+                    err.NV_EXIT(1);
                 }
             }
         }
@@ -1535,13 +1597,28 @@ public class LLVMUtils {
     }
 
     public String allocateGlobal(String name, NodeType type, String value, String comment) {
+        return allocateGlobal(name, type, value, comment, "global");
+    }
+
+    public String allocateConstantGlobal(String name, NodeType type, String value, String comment) {
+        return allocateGlobal(name, type, value, comment, "constant");
+    }
+
+    // Compiler generated constants stay private so separately compiled modules don't clash when linked
+    public String allocatePrivateGlobal(String name, NodeType type, String value, String comment) {
+        return allocateGlobal(name, type, value, comment, "private global");
+    }
+
+    private String allocateGlobal(String name, NodeType type, String value, String comment, String linkage) {
         StringBuilder builder = new StringBuilder();
         String llvmType = nativeTypeToLLVM(type);
 
         builder
                 .append("@global_")
                 .append(name)
-                .append(" = global ")
+                .append(" = ")
+                .append(linkage)
+                .append(" ")
                 .append(llvmType)
                 .append(" ")
                 .append(value)
@@ -1553,10 +1630,25 @@ public class LLVMUtils {
     }
 
 
+    public String declareExternalGlobal(String name, NodeType type) {
+        StringBuilder builder = new StringBuilder();
+
+        // @global_name = external global type
+        builder
+                .append("@global_")
+                .append(name)
+                .append(" = external global ")
+                .append(nativeTypeToLLVM(type))
+                .append("\n");
+
+        return builder.toString();
+    }
+
     public String bitcastIntToFloat(String reg) {
         StringBuilder builder = new StringBuilder();
         builder
                 .append("\t%inttof32_")
+                .append(globalPrefix)
                 .append(floatTempValue++)
                 .append(" = bitcast i32 ")
                 .append(reg)
@@ -1566,7 +1658,7 @@ public class LLVMUtils {
     }
 
     public String bitcastVariableI32ToF32() {
-        return "inttof32_" + floatTempValue;
+        return "inttof32_" + globalPrefix + floatTempValue;
     }
 
     public String floatToHex(float f) {
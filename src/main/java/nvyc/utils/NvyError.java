@@ -8,10 +8,27 @@ import java.io.File;
 
 public class NvyError {
 
-    public static final boolean PROFILING = false;                // Show runtime for each compilation phase
+    public static boolean PROFILING = false;                // Show runtime for each compilation phase
     public static final boolean VERBOSE = false;                  // Show all steps
     public static boolean INIDE = false;                    // Runs inside the IDE
     public static boolean FINAL_TREE = false;               // Print the final parse tree before LLVM conversion
+    public static boolean LAZY_PARSING = true;              // Only parse function bodies reachable from main
+    public static boolean ELIMINATE_DECLARATIONS = true;    // Drop functions, natives, structs and globals unreachable from main
+    public static boolean REPORT_ELIMINATED = false;        // Print everything removed by dead declaration elimination
+    public static boolean EMIT_INTERFACE = false;           // Write a .nvyi module interface next to the output
+    public static boolean INCREMENTAL = false;              // Reuse the IR of functions unchanged since the last compilation
+    public static boolean WATCHING = false;                 // Compiler stays alive between rounds, errors abort the round instead of exiting
+    public static boolean STARTUP_TIME = false;             // Print the time from process start to the first byte of IR
+    public static boolean STATS = false;                    // Write per phase time, allocation and sizes to <output>_nvy_stats.json
+    public static int OPTIMIZATION_LEVEL = 0;               // -O0, -O1 or -O2, selects the PassManager preset
+    public static String PASSES = null;                     // Comma separated passes from --passes=, replaces the -O preset
+    public static String MIR_PASSES = null;                 // Comma separated passes from --mir-passes=, replaces the MirPipeline preset
+    public static boolean VERIFY_PASSES = false;            // Check the tree and the mid-level IR after every optimization pass
+    public static boolean INTERPRET = false;                // Run the program with the interpreter instead of writing IR
+    public static boolean JVM_BACKEND = false;              // With INTERPRET, compile the program to JVM bytecode and run that
+    public static boolean BUILD_SSA = true;                 // From -O1, promote scalar locals to registers with phi nodes (SSABuilder)
+    public static int EVALUATION_BUDGET = 1_000_000;        // Max nodes ConstantEvaluator visits for one global initializer
+    public static int INLINE_BODY_THRESHOLD = 0;            // Max body size (in nodes) serialized into interfaces for cross-module inlining
     public static final boolean FOLD_CONSTANTS = true;            // Fold constants, strictly for debugging and not production
     public static final boolean ENABLE_CHECKPOINTS = true;        // Checkpoints for debugging. See NV_CHECKPOINT and NV_RESET_CHECKPOINT
     private static int checkpoint = 0;                      // Counter for checkpoints
@@ -44,6 +61,20 @@ public class NvyError {
      */
 
 
+    // Thrown instead of exiting while watching, the watcher waits for the next change
+    public static class CompilationAborted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CompilationAborted(int code) {
+            super("Compilation aborted with code " + code);
+        }
+    }
+
+    public void NV_EXIT(int code) {
+        if(WATCHING) throw new CompilationAborted(code);
+        System.exit(code);
+    }
+
     public void NV_STDOUT(Object o) {
         System.out.println(o);
     }
@@ -54,7 +85,7 @@ public class NvyError {
                         "unknown error" :
                         msg
         );
-        System.exit(code);
+        NV_EXIT(code);
     }
 
     public void NV_TMP(String s) {
@@ -90,7 +121,7 @@ public class NvyError {
         System.out.println("nvc > Compilation failed");
         System.out.println(error.getMessage());
         if(aux != null) System.out.println(aux);
-        System.exit(0);
+        NV_EXIT(0);
         return -1;
     }
 
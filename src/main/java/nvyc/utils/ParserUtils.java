@@ -179,7 +179,7 @@ public class ParserUtils {
             default -> {
                 err.NV_STDERR("nvc > Internal error: Unknown body node header for type " + type);
                 err.NV_STDERR("nvc > Node: " + head + "\n\n" + bodyNode);
-                System.exit(1);
+                err.NV_EXIT(1);
             }
         }
     }
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Builds the compiler and src/bench into out/bench, then runs sample-programs and its kernels on each backend
+# and compares their output with the expected one.
+# Usage: backend-check.sh [--update], see nvyc.bench.BackendCheck
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+out="$root/out/bench"
+
+rm -rf "$out"
+mkdir -p "$out"
+javac -encoding UTF-8 -d "$out" $(find "$root/src/main/java" "$root/src/bench/java" -name '*.java')
+
+cd "$root"
+java -cp "$out" nvyc.bench.BackendCheck "$@"
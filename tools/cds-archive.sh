@@ -0,0 +1,26 @@
+#!/bin/sh
+# Builds out/nvyc.jar and an AppCDS archive for it, trained on sample-programs/.
+# The archive holds the parsed and verified nvyc.* and JDK classes a compilation loads,
+# so a launch maps them in instead of loading them from the jar. Use tools/nvyc to run with it.
+# The archive is only valid for the JDK that created it, run this again after upgrading.
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+out="$root/out"
+
+rm -rf "$out/classes"
+mkdir -p "$out/classes" "$out/train"
+javac -encoding UTF-8 -d "$out/classes" $(find "$root/src/main/java" -name '*.java')
+jar --create --file "$out/nvyc.jar" --manifest "$root/src/main/resources/META-INF/MANIFEST.MF" -C "$out/classes" .
+
+# Training run, one class list per sample, merged since each covers different code paths
+rm -f "$out/train"/*.lst
+cd "$root/sample-programs"
+for f in *.nvy; do
+    java -Xshare:off -XX:DumpLoadedClassList="$out/train/${f%.nvy}.lst" -jar "$out/nvyc.jar" "$f" "$out/train/${f%.nvy}" > /dev/null \
+        || echo "Training on $f failed, its classes are left out"
+done
+cat "$out/train"/*.lst | sort -u > "$out/nvyc.classlist"
+
+java -Xshare:dump -XX:SharedClassListFile="$out/nvyc.classlist" -XX:SharedArchiveFile="$out/nvyc.jsa" -cp "$out/nvyc.jar" > /dev/null
+echo "Wrote $out/nvyc.jsa ($(wc -l < "$out/nvyc.classlist") classes)"
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Builds the compiler and src/bench into out/bench, then times incremental re-analysis after small edits.
+# Usage: incremental-bench.sh [lines] [edits], see nvyc.bench.IncrementalBenchmark
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+out="$root/out/bench"
+
+rm -rf "$out"
+mkdir -p "$out"
+javac -encoding UTF-8 -d "$out" $(find "$root/src/main/java" "$root/src/bench/java" -name '*.java')
+
+java -cp "$out" nvyc.bench.IncrementalBenchmark "$@"
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Builds the compiler and src/bench into out/bench, then round trips sample-programs through the mid-level IR
+# and checks the kernels against their golden .ll after each pass.
+# Usage: mir-check.sh [--update], see nvyc.bench.MirCheck
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+out="$root/out/bench"
+
+rm -rf "$out"
+mkdir -p "$out"
+javac -encoding UTF-8 -d "$out" $(find "$root/src/main/java" "$root/src/bench/java" -name '*.java')
+
+cd "$root"
+java -cp "$out" nvyc.bench.MirCheck "$@"
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Builds the compiler and src/bench into out/bench, then runs the phase benchmark.
+# Usage: phase-bench.sh [--forks=<n>] [sizes...], see nvyc.bench.PhaseBenchmark
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+out="$root/out/bench"
+
+rm -rf "$out"
+mkdir -p "$out"
+javac -encoding UTF-8 -d "$out" $(find "$root/src/main/java" "$root/src/bench/java" -name '*.java')
+
+java -Xss16m -cp "$out" nvyc.bench.PhaseBenchmark "$@"
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Builds the compiler and src/bench into out/bench, then builds and times sample-programs/kernels with clang,
+# the interpreter (--run) and the JVM backend (--run=jvm).
+# Usage: runtime-bench.sh [--baseline=<csv>] [--threshold=<fraction>] [--runs=<n>] [--nvyc=<level>] [--update-baseline]
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+out="$root/out/bench"
+
+rm -rf "$out"
+mkdir -p "$out"
+javac -encoding UTF-8 -d "$out" $(find "$root/src/main/java" "$root/src/bench/java" -name '*.java')
+
+cd "$root"
+java -cp "$out" nvyc.bench.RuntimeBenchmark "$@"
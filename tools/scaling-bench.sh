@@ -0,0 +1,13 @@
+#!/bin/sh
+# Builds the compiler and src/bench into out/bench, then runs the end to end scaling benchmark.
+# Usage: scaling-bench.sh [sizes in lines...], see nvyc.bench.ScalingBenchmark
+set -e
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+out="$root/out/bench"
+
+rm -rf "$out"
+mkdir -p "$out"
+javac -encoding UTF-8 -d "$out" $(find "$root/src/main/java" "$root/src/bench/java" -name '*.java')
+
+java -cp "$out" nvyc.bench.ScalingBenchmark "$@"
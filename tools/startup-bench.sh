@@ -0,0 +1,37 @@
+#!/bin/sh
+# Cold start benchmark for every sample, median over a number of launches.
+# Compares a plain java -jar launch with tools/nvyc (AppCDS archive + startup flags).
+#   wall   whole process, from exec to exit
+#   ir     JVM start to the first byte of IR, as printed by --startup-time
+# Run tools/cds-archive.sh first. Usage: startup-bench.sh [runs per sample, default 10]
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+runs=${1:-10}
+tmp=$(mktemp -d)
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+# Prints "<wall ms> <ir ms>" for one launch
+launch() {
+    start=$(date +%s%N)
+    ir=$("$@" --startup-time 2>/dev/null | sed -n 's/.*after \([0-9]*\) ms/\1/p')
+    end=$(date +%s%N)
+    echo "$(( (end - start) / 1000000 )) ${ir:-0}"
+}
+
+measure() {
+    for i in $(seq "$runs"); do launch "$@"; done > "$tmp/runs"
+    echo "$(cut -d' ' -f1 "$tmp/runs" | median) $(cut -d' ' -f2 "$tmp/runs" | median)"
+}
+
+cd "$root/sample-programs"
+printf "%-14s %20s %20s\n" "" "java -jar" "tools/nvyc"
+printf "%-14s %10s %9s %10s %9s\n" "sample" "wall" "ir" "wall" "ir"
+for f in *.nvy; do
+    set -- $(measure java -jar "$root/out/nvyc.jar" "$f" "$tmp/out") $(measure "$root/tools/nvyc" "$f" "$tmp/out")
+    printf "%-14s %7s ms %6s ms %7s ms %6s ms\n" "$f" "$1" "$2" "$3" "$4"
+done
+
+rm -rf "$tmp"